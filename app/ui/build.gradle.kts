@@ -154,4 +154,6 @@ dependencies {
     implementation(project(":services:favorites"))
     implementation(project(":services:feed"))
     implementation(project(":core:devicepose"))
+
+    testImplementation(libs.bundles.tests)
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import de.mm20.launcher2.data.customattrs.CustomAttributesRepository
 import de.mm20.launcher2.data.customattrs.utils.withCustomLabels
+import de.mm20.launcher2.icons.IconService
+import de.mm20.launcher2.icons.LauncherIcon
 import de.mm20.launcher2.preferences.search.FavoritesSettings
 import de.mm20.launcher2.preferences.search.FavoritesSettingsData
 import de.mm20.launcher2.search.SavableSearchable
@@ -30,6 +32,7 @@ abstract class FavoritesVM : ViewModel(), KoinComponent {
     private val favoritesService: FavoritesService by inject()
     internal val widgetRepository: WidgetRepository by inject()
     private val customAttributesRepository: CustomAttributesRepository by inject()
+    private val iconService: IconService by inject()
     internal val settings: FavoritesSettings by inject()
 
     val selectedTag = MutableStateFlow<String?>(null)
@@ -103,6 +106,14 @@ abstract class FavoritesVM : ViewModel(), KoinComponent {
     }.shareIn(viewModelScope, SharingStarted.WhileSubscribed(), replay = 1)
 
 
+    /**
+     * Icons of all [items], resolved in a batch, so that the favorites grid needs a single
+     * subscription instead of one per item.
+     */
+    fun getIcons(items: List<SavableSearchable>, size: Int): Flow<Map<String, LauncherIcon?>> {
+        return iconService.getIcons(items, size)
+    }
+
     fun selectTag(tag: String?) {
         selectedTag.value = tag
     }
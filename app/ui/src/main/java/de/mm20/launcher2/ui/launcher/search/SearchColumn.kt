@@ -19,7 +19,6 @@ import androidx.compose.runtime.Composable
 import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.SideEffect
 import androidx.compose.runtime.collectAsState
-import androidx.compose.runtime.derivedStateOf
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableIntStateOf
 import androidx.compose.runtime.mutableStateOf
@@ -58,9 +57,11 @@ import de.mm20.launcher2.ui.launcher.search.website.WebsiteResults
 import de.mm20.launcher2.ui.launcher.search.wikipedia.ArticleResults
 import de.mm20.launcher2.ui.launcher.sheets.HiddenItemsSheet
 import de.mm20.launcher2.ui.launcher.sheets.LocalBottomSheetManager
+import de.mm20.launcher2.ui.ktx.toPixels
 import de.mm20.launcher2.ui.locals.LocalGridSettings
 import de.mm20.launcher2.ui.theme.transparency.transparency
 import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.zip
 
@@ -135,6 +136,26 @@ fun SearchColumn(
     var selectedArticleIndex: Int by remember(query) { mutableIntStateOf(-1) }
     var selectedWebsiteIndex: Int by remember(query) { mutableIntStateOf(-1) }
 
+    val showAppProfiles = isSearchEmpty && profiles.size > 1 && allAppsEnabled
+    val visibleProfiles = profiles.filter { profileStates[it.type]?.hidden == false }
+    val selectedProfile = visibleProfiles.getOrNull(selectedAppProfileIndex) ?: visibleProfiles.firstOrNull()
+    val gridApps = if (showAppProfiles) {
+        when (selectedProfile?.type) {
+            Profile.Type.Private -> privateApps
+            Profile.Type.Work -> workApps
+            else -> apps
+        }
+    } else apps
+
+    val gridIconSize = LocalGridSettings.current.iconSize.dp.toPixels().toInt()
+    val gridAppList = gridApps.toList()
+    val appIcons by remember(gridAppList, gridIconSize, showList) {
+        if (showList) flowOf(emptyMap()) else viewModel.getAppIcons(gridAppList, gridIconSize)
+    }.collectAsState(emptyMap())
+    val favoriteIcons by remember(favorites, gridIconSize) {
+        favoritesVM.getIcons(favorites, gridIconSize)
+    }.collectAsState(emptyMap())
+
     val showFilters by viewModel.showFilters
 
     LaunchedEffect(profiles) {
@@ -196,6 +217,7 @@ fun SearchColumn(
                 if (!hideFavs && favoritesEnabled) {
                     SearchFavorites(
                         favorites = favorites,
+                        icons = favoriteIcons,
                         selectedTag = selectedTag,
                         pinnedTags = pinnedTags,
                         tagsExpanded = favoritesTagsExpanded,
@@ -213,17 +235,10 @@ fun SearchColumn(
                     }
                 }
 
-                if (isSearchEmpty && profiles.size > 1 && allAppsEnabled) {
-                    val visibleProfiles by derivedStateOf {
-                        profiles.filter { profileStates[it.type]?.hidden == false }
-                    }
-                    val selectedProfile = visibleProfiles.getOrNull(selectedAppProfileIndex) ?: visibleProfiles.firstOrNull()
+                if (showAppProfiles) {
                     AppResults(
-                        apps = when (selectedProfile?.type) {
-                            Profile.Type.Private -> privateApps
-                            Profile.Type.Work -> workApps
-                            else -> apps
-                        },
+                        apps = gridApps,
+                        icons = appIcons,
                         highlightedItem = bestMatch as? Application,
                         profiles = visibleProfiles,
                         profileStates = profileStates,
@@ -245,6 +260,7 @@ fun SearchColumn(
                 } else if (!isSearchEmpty || allAppsEnabled) {
                     AppResults(
                         apps = apps,
+                        icons = appIcons,
                         highlightedItem = bestMatch as? Application,
                         columns = columns,
                         reverse = reverse,
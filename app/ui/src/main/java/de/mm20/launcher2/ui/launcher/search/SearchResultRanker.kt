@@ -0,0 +1,70 @@
+package de.mm20.launcher2.ui.launcher.search
+
+import de.mm20.launcher2.search.ResultScore
+import de.mm20.launcher2.search.SavableSearchable
+import de.mm20.launcher2.search.isUnspecified
+
+/**
+ * Sorts search results by their [ResultScore] and their launch weight.
+ *
+ * The weights of all results of an emission are loaded together by [loadWeights], and kept for
+ * the lifetime of the ranker, so that a search only has to query the weights of new results.
+ * [rank] computes the score of each result once and sorts on the precomputed totals.
+ *
+ * @param getWeights looks up the weights of the given keys, at most [MaxKeysPerQuery] at a time.
+ * Keys without a weight can be omitted from the result.
+ */
+internal class SearchResultRanker(
+    private val getWeights: suspend (keys: List<String>) -> Map<String, Double>,
+) {
+    private val weights = HashMap<String, Double>()
+
+    /**
+     * Loads the weights of all given keys that haven't been loaded yet.
+     */
+    suspend fun loadWeights(keys: Iterable<String>) {
+        val missing = keys.filterTo(LinkedHashSet()) { it !in weights }
+        for (chunk in missing.chunked(MaxKeysPerQuery)) {
+            val loaded = getWeights(chunk)
+            for (key in chunk) {
+                weights[key] = loaded[key] ?: 0.0
+            }
+        }
+    }
+
+    /**
+     * Sorts [items] by their ranking, best first, and removes items with duplicate keys.
+     * Weights that haven't been loaded by [loadWeights] are treated as 0.
+     */
+    fun <T : SavableSearchable> rank(items: List<T>, query: String): List<T> {
+        if (items.size <= 1) return items
+        val totals = FloatArray(items.size)
+        for ((i, item) in items.withIndex()) {
+            val score = if (item.score.isUnspecified) {
+                ResultScore.from(query = query, primaryFields = listOf(item.labelOverride ?: item.label)).score
+            } else {
+                item.score.score
+            }
+            val weight = weights[item.key] ?: 0.0
+            totals[i] = score * 0.6f + weight.toFloat() * 0.4f
+        }
+        // Stable sort, so that equally ranked items keep their original order
+        val order = items.indices.sortedWith { a, b -> totals[b].compareTo(totals[a]) }
+
+        val keys = HashSet<String>(items.size)
+        val result = ArrayList<T>(items.size)
+        for (i in order) {
+            val item = items[i]
+            if (keys.add(item.key)) result += item
+        }
+        return result
+    }
+
+    companion object {
+        /**
+         * Maximum number of keys that [de.mm20.launcher2.searchable.SavableSearchableRepository.getWeights]
+         * accepts.
+         */
+        const val MaxKeysPerQuery = 999
+    }
+}
@@ -5,10 +5,11 @@ import androidx.appcompat.app.AppCompatActivity
 import androidx.compose.runtime.mutableIntStateOf
 import androidx.compose.runtime.mutableStateListOf
 import androidx.compose.runtime.mutableStateOf
-import androidx.compose.runtime.snapshots.SnapshotStateList
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import de.mm20.launcher2.devicepose.DevicePoseProvider
+import de.mm20.launcher2.icons.IconService
+import de.mm20.launcher2.icons.LauncherIcon
 import de.mm20.launcher2.ktx.isAtLeastApiLevel
 import de.mm20.launcher2.permissions.PermissionGroup
 import de.mm20.launcher2.permissions.PermissionsManager
@@ -28,7 +29,6 @@ import de.mm20.launcher2.search.CalendarEvent
 import de.mm20.launcher2.search.Contact
 import de.mm20.launcher2.search.File
 import de.mm20.launcher2.search.Location
-import de.mm20.launcher2.search.ResultScore
 import de.mm20.launcher2.search.SavableSearchable
 import de.mm20.launcher2.search.SearchFilters
 import de.mm20.launcher2.search.SearchResults
@@ -37,19 +37,21 @@ import de.mm20.launcher2.search.Searchable
 import de.mm20.launcher2.search.Website
 import de.mm20.launcher2.search.data.Calculator
 import de.mm20.launcher2.search.data.UnitConverter
-import de.mm20.launcher2.search.isUnspecified
 import de.mm20.launcher2.searchable.SavableSearchableRepository
 import de.mm20.launcher2.searchable.VisibilityLevel
 import de.mm20.launcher2.searchactions.actions.SearchAction
 import de.mm20.launcher2.services.favorites.FavoritesService
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.shareIn
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 import org.koin.core.component.KoinComponent
@@ -61,6 +63,7 @@ class SearchVM : ViewModel(), KoinComponent {
     private val searchableRepository: SavableSearchableRepository by inject()
     private val permissionsManager: PermissionsManager by inject()
     private val profileManager: ProfileManager by inject()
+    private val iconService: IconService by inject()
 
     private val fileSearchSettings: FileSearchSettings by inject()
     private val contactSearchSettings: ContactSearchSettings by inject()
@@ -100,6 +103,14 @@ class SearchVM : ViewModel(), KoinComponent {
     val workAppResults = mutableStateListOf<Application>()
     val privateSpaceAppResults = mutableStateListOf<Application>()
 
+    /**
+     * Icons of all [apps], resolved in a batch, so that the app grid needs a single subscription
+     * instead of one per item.
+     */
+    fun getAppIcons(apps: List<Application>, size: Int): Flow<Map<String, LauncherIcon?>> {
+        return iconService.getIcons(apps, size)
+    }
+
     val appShortcutResults = mutableStateListOf<AppShortcut>()
     val fileResults = mutableStateListOf<File>()
     val contactResults = mutableStateListOf<Contact>()
@@ -167,6 +178,26 @@ class SearchVM : ViewModel(), KoinComponent {
         search("")
     }
 
+    /**
+     * Keys of apps that are hidden from the app list. Shared between searches, so that the
+     * database isn't queried again for every keystroke.
+     */
+    private val hiddenAppKeys = searchableRepository.getKeys(
+        maxVisibility = VisibilityLevel.SearchOnly,
+        includeTypes = listOf("app"),
+    )
+        .map { it.toHashSet() }
+        .shareIn(viewModelScope, SharingStarted.WhileSubscribed(5000), 1)
+
+    /**
+     * Keys of items that are hidden from search results.
+     */
+    private val hiddenResultKeys = searchableRepository.getKeys(
+        maxVisibility = VisibilityLevel.Hidden,
+    )
+        .map { it.toHashSet() }
+        .shareIn(viewModelScope, SharingStarted.WhileSubscribed(5000), 1)
+
     private var searchJob: Job? = null
     fun search(query: String, forceRestart: Boolean = false) {
         if (searchQuery.value == query && !forceRestart) return
@@ -208,12 +239,9 @@ class SearchVM : ViewModel(), KoinComponent {
         searchJob = viewModelScope.launch {
             if (query.isEmpty()) {
                 val hiddenItemKeys = if (!filters.hiddenItems) {
-                    searchableRepository.getKeys(
-                        maxVisibility = VisibilityLevel.SearchOnly,
-                        includeTypes = listOf("app"),
-                    )
+                    hiddenAppKeys
                 } else {
-                    flowOf(emptyList())
+                    flowOf(emptySet())
                 }
                 val allApps = searchService.getAllApps()
 
@@ -252,9 +280,8 @@ class SearchVM : ViewModel(), KoinComponent {
                     }
 
             } else {
-                val hiddenItemKeys = if (!filters.hiddenItems) searchableRepository.getKeys(
-                    maxVisibility = VisibilityLevel.Hidden,
-                ) else flowOf(emptyList())
+                val hiddenItemKeys = if (!filters.hiddenItems) hiddenResultKeys else flowOf(emptySet())
+                val ranker = SearchResultRanker { searchableRepository.getWeights(it).first() }
                 searchService.search(
                     query,
                     filters = filters,
@@ -264,52 +291,46 @@ class SearchVM : ViewModel(), KoinComponent {
                     .collectLatest { (results, hiddenKeys) ->
                         previousResults = results
 
-                        hiddenResults.clear()
-                        workAppResults.clear()
-                        privateSpaceAppResults.clear()
-
-                        appResults.updateItems(
-                            results.apps
-                            ?.filterNot { hiddenKeys.contains(it.key) }
-                            ?.applyRanking(query)
-                        )
-                        appShortcutResults.updateItems(
-                            results.shortcuts
-                            ?.filterNot { hiddenKeys.contains(it.key) }
-                            ?.applyRanking(query)
-                        )
-                        fileResults.updateItems(
-                            results.files
-                            ?.filterNot { hiddenKeys.contains(it.key) }
-                            ?.applyRanking(query)
+                        val apps = results.apps?.filterNot { hiddenKeys.contains(it.key) }
+                        val shortcuts = results.shortcuts?.filterNot { hiddenKeys.contains(it.key) }
+                        val files = results.files?.filterNot { hiddenKeys.contains(it.key) }
+                        val contacts = results.contacts?.filterNot { hiddenKeys.contains(it.key) }
+                        val calendars = results.calendars?.filterNot { hiddenKeys.contains(it.key) }
+                        val locations = results.locations?.filterNot { hiddenKeys.contains(it.key) }
+
+                        ranker.loadWeights(
+                            listOfNotNull(
+                                apps, shortcuts, files, contacts, calendars, locations,
+                                results.wikipedia, results.websites,
+                            ).flatMap { list -> list.map { it.key } }
                         )
 
-                        contactResults.updateItems(
-                            results.contacts?.filterNot { hiddenKeys.contains(it.key) }
-                                ?.applyRanking(query)
-                        )
-                        calendarResults.updateItems(
-                            results.calendars?.filterNot { hiddenKeys.contains(it.key) }
-                                ?.applyRanking(query)
-                        )
+                        hiddenResults.updateItems(null)
+                        workAppResults.updateItems(null)
+                        privateSpaceAppResults.updateItems(null)
+
+                        appResults.updateItems(apps?.let { ranker.rank(it, query) })
+                        appShortcutResults.updateItems(shortcuts?.let { ranker.rank(it, query) })
+                        fileResults.updateItems(files?.let { ranker.rank(it, query) })
+                        contactResults.updateItems(contacts?.let { ranker.rank(it, query) })
+                        calendarResults.updateItems(calendars?.let { ranker.rank(it, query) })
                         locationResults.updateItems(
-                            results.locations?.filterNot { hiddenKeys.contains(it.key) }
-                                ?.let { locations ->
-                                    devicePoseProvider.lastCachedLocation?.let {
-                                        locations.asSequence()
-                                            .sortedWith { a, b ->
-                                                a.distanceTo(it).compareTo(b.distanceTo(it))
-                                            }
-                                            .distinctBy { it.key }
-                                            .toList()
-                                    } ?: locations.applyRanking(query)
-                                }
+                            locations?.let { locations ->
+                                devicePoseProvider.lastCachedLocation?.let {
+                                    locations.asSequence()
+                                        .sortedWith { a, b ->
+                                            a.distanceTo(it).compareTo(b.distanceTo(it))
+                                        }
+                                        .distinctBy { it.key }
+                                        .toList()
+                                } ?: ranker.rank(locations, query)
+                            }
                         )
                         articleResults.updateItems(
-                            results.wikipedia?.applyRanking(query)
+                            results.wikipedia?.let { ranker.rank(it, query) }
                         )
                         websiteResults.updateItems(
-                            results.websites?.applyRanking(query)
+                            results.websites?.let { ranker.rank(it, query) }
                         )
                         calculatorResults.updateItems(results.calculators)
                         unitConverterResults.updateItems(results.unitConverters)
@@ -407,47 +428,6 @@ class SearchVM : ViewModel(), KoinComponent {
     fun expandCategory(category: SearchCategory) {
         expandedCategory.value = category
     }
-
-    private suspend fun <T : SavableSearchable> List<T>.applyRanking(query: String): List<T> {
-        if (size <= 1) return this
-        val sequence = asSequence()
-        val weights = searchableRepository.getWeights(map { it.key }).first()
-        val sorted = sequence.sortedWith { a, b ->
-            val aWeight = weights[a.key] ?: 0.0
-            val bWeight = weights[b.key] ?: 0.0
-
-            val aScore = if (a.score.isUnspecified) {
-                ResultScore.from(query = query, primaryFields = listOf(a.labelOverride ?: a.label)).score
-            } else {
-                a.score.score
-            }
-
-            val bScore = if (b.score.isUnspecified) {
-                ResultScore.from(query = query, primaryFields = listOf(b.labelOverride ?: b.label)).score
-            } else {
-                b.score.score
-            }
-
-            val aTotal = aScore * 0.6f + aWeight.toFloat() * 0.4f
-            val bTotal = bScore * 0.6f + bWeight.toFloat() * 0.4f
-
-            bTotal.compareTo(aTotal)
-        }
-        return sorted.distinctBy { it.key }.toList()
-    }
-
-    /**
-     * Merges a list of new items into the current SnapshotStateList.
-     * It removes items that are in the current list but not in the new list.
-     * Then, it updates existing items or adds new items from the new list.
-     *
-     * @param T The type of items in the list.
-     * @param newItems The list of new items to merge with. If null, an empty list is used.
-     */
-    private fun <T> SnapshotStateList<T>.updateItems(newItems: List<T>?) {
-        clear()
-        addAll(newItems ?: emptyList())
-    }
 }
 
 
@@ -0,0 +1,47 @@
+package de.mm20.launcher2.ui.launcher.search
+
+import de.mm20.launcher2.search.SavableSearchable
+
+/**
+ * Merges a list of new items into this list.
+ * Items are matched by their key (or by equality if they are not [SavableSearchable]), and
+ * the list is updated with as few remove, move, insert, and set operations as possible, so
+ * that unchanged items of a SnapshotStateList are not recomposed. If the items haven't changed,
+ * the list is not written at all.
+ *
+ * @param T The type of items in the list.
+ * @param newItems The list of new items to merge with. If null, an empty list is used.
+ */
+internal fun <T> MutableList<T>.updateItems(newItems: List<T>?) {
+    val items = newItems ?: emptyList()
+    if (items.isEmpty()) {
+        if (isNotEmpty()) clear()
+        return
+    }
+
+    val newKeys = items.mapTo(HashSet(items.size)) { itemKey(it) }
+    for (i in lastIndex downTo 0) {
+        if (itemKey(this[i]) !in newKeys) removeAt(i)
+    }
+
+    for ((i, item) in items.withIndex()) {
+        val key = itemKey(item)
+        if (i < size && itemKey(this[i]) == key) {
+            if (this[i] != item) this[i] = item
+            continue
+        }
+        var j = i + 1
+        while (j < size && itemKey(this[j]) != key) j++
+        if (j < size) {
+            removeAt(j)
+        }
+        add(i, item)
+    }
+    if (size > items.size) {
+        subList(items.size, size).clear()
+    }
+}
+
+private fun itemKey(item: Any?): Any? {
+    return (item as? SavableSearchable)?.key ?: item
+}
@@ -26,6 +26,7 @@ import androidx.compose.ui.graphics.Color
 import androidx.compose.ui.res.painterResource
 import androidx.compose.ui.res.stringResource
 import androidx.compose.ui.unit.dp
+import de.mm20.launcher2.icons.LauncherIcon
 import de.mm20.launcher2.profiles.Profile
 import de.mm20.launcher2.search.Application
 import de.mm20.launcher2.ui.R
@@ -44,6 +45,7 @@ fun LazyListScope.AppResults(
     showProfileLockControls: Boolean = false,
     onProfileLockChange: ((Profile, Boolean) -> Unit)? = null,
     apps: List<Application>,
+    icons: Map<String, LauncherIcon?>? = null,
     selectedIndex: Int,
     onSelect: (Int) -> Unit,
     highlightedItem: Application? = null,
@@ -236,7 +238,8 @@ fun LazyListScope.AppResults(
                 GridItem(
                     item = it,
                     showLabels = LocalGridSettings.current.showLabels,
-                    highlight = it.key == highlightedItem?.key
+                    highlight = it.key == highlightedItem?.key,
+                    icon = icons?.let { icons -> { icons[it.key] } },
                 )
             },
             reverse = reverse,
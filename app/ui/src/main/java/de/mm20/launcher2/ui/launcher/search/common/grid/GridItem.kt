@@ -49,6 +49,7 @@ import androidx.compose.ui.unit.IntRect
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.roundToIntRect
 import androidx.lifecycle.compose.collectAsStateWithLifecycle
+import de.mm20.launcher2.icons.LauncherIcon
 import de.mm20.launcher2.search.AppShortcut
 import de.mm20.launcher2.search.Application
 import de.mm20.launcher2.search.Article
@@ -82,13 +83,18 @@ import de.mm20.launcher2.ui.theme.transparency.transparency
 import kotlin.math.pow
 
 
+/**
+ * @param icon the icon of this item, if it has been resolved by the caller, i.e. in a batch for
+ * the whole grid. If null, the item loads its own icon.
+ */
 @Composable
 fun GridItem(
     modifier: Modifier = Modifier,
     item: SavableSearchable,
     showLabels: Boolean = true,
     labelMaxLines: Int = 1,
-    highlight: Boolean = false
+    highlight: Boolean = false,
+    icon: (() -> LauncherIcon?)? = null,
 ) {
     val viewModel: SearchableItemVM = listItemViewModel(key = "search-${item.key}")
     val iconSize = LocalGridSettings.current.iconSize.dp.toPixels()
@@ -129,7 +135,10 @@ fun GridItem(
         verticalArrangement = Arrangement.Center,
     ) {
         val badge by viewModel.badge.collectAsStateWithLifecycle()
-        val icon by viewModel.icon.collectAsStateWithLifecycle()
+        val itemIcon = icon ?: run {
+            val icon by viewModel.icon.collectAsStateWithLifecycle()
+            ({ icon })
+        }
 
 
         val windowSize = LocalWindowSize.current
@@ -147,7 +156,7 @@ fun GridItem(
                     ) { _, _ ->
                         ShapedLauncherIcon(
                             size = LocalGridSettings.current.iconSize.dp,
-                            icon = { icon })
+                            icon = itemIcon)
                     }
                 }
                 return@HandleEnterHomeTransition null
@@ -183,7 +192,7 @@ fun GridItem(
                         else Modifier,
                 size = LocalGridSettings.current.iconSize.dp,
                 badge = { badge },
-                icon = { icon },
+                icon = itemIcon,
             )
         }
         if (showLabels) {
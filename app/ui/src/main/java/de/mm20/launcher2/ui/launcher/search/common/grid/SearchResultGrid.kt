@@ -14,11 +14,16 @@ import androidx.compose.runtime.Composable
 import androidx.compose.runtime.key
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.unit.dp
+import de.mm20.launcher2.icons.LauncherIcon
 import de.mm20.launcher2.search.SavableSearchable
 import de.mm20.launcher2.ui.layout.BottomReversed
 import de.mm20.launcher2.ui.locals.LocalGridSettings
 import kotlin.math.ceil
 
+/**
+ * @param icons the icons of [items], resolved in a batch for the whole grid (see
+ * [de.mm20.launcher2.icons.IconService.getIcons]). If null, each item loads its own icon.
+ */
 @Composable
 fun SearchResultGrid(
     items: List<SavableSearchable>,
@@ -27,7 +32,8 @@ fun SearchResultGrid(
     columns: Int = LocalGridSettings.current.columnCount,
     reverse: Boolean = false,
     highlightedItem: SavableSearchable? = null,
-    transitionKey: Any? = items
+    transitionKey: Any? = items,
+    icons: Map<String, LauncherIcon?>? = null,
 ) {
     AnimatedContent(
         items to transitionKey,
@@ -53,7 +59,8 @@ fun SearchResultGrid(
                                         .weight(1f),
                                     item = item,
                                     showLabels = showLabels,
-                                    highlight = item.key == highlightedItem?.key
+                                    highlight = item.key == highlightedItem?.key,
+                                    icon = icons?.let { { it[item.key] } },
                                 )
                             }
                         } else {
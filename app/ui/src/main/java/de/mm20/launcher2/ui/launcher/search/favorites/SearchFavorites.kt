@@ -12,6 +12,7 @@ import androidx.compose.runtime.CompositionLocalProvider
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.res.stringResource
 import androidx.compose.ui.unit.dp
+import de.mm20.launcher2.icons.LauncherIcon
 import de.mm20.launcher2.search.SavableSearchable
 import de.mm20.launcher2.search.Tag
 import de.mm20.launcher2.ui.R
@@ -23,6 +24,7 @@ import de.mm20.launcher2.ui.theme.transparency.transparency
 
 fun LazyListScope.SearchFavorites(
     favorites: List<SavableSearchable>,
+    icons: Map<String, LauncherIcon?>? = null,
     pinnedTags: List<Tag>,
     selectedTag: String?,
     compactTags: Boolean,
@@ -52,7 +54,12 @@ fun LazyListScope.SearchFavorites(
                 verticalArrangement = if (reverse) Arrangement.BottomReversed else Arrangement.Top
             ) {
                 if (favorites.isNotEmpty()) {
-                    SearchResultGrid(favorites, transitionKey = selectedTag, reverse = reverse)
+                    SearchResultGrid(
+                        favorites,
+                        transitionKey = selectedTag,
+                        reverse = reverse,
+                        icons = icons,
+                    )
                 } else {
                     Banner(
                         modifier = Modifier.padding(16.dp),
@@ -17,12 +17,18 @@ import de.mm20.launcher2.ui.R
 import de.mm20.launcher2.ui.common.FavoritesTagSelector
 import de.mm20.launcher2.ui.component.Banner
 import de.mm20.launcher2.ui.launcher.search.common.grid.SearchResultGrid
+import de.mm20.launcher2.ui.ktx.toPixels
+import de.mm20.launcher2.ui.locals.LocalGridSettings
 import de.mm20.launcher2.widgets.AppsWidget
 
 @Composable
 fun AppsWidget(widget: AppsWidget) {
     val viewModel: AppsWidgetVM = viewModel(key = "favorites-widget-${widget.id}")
     val favorites by remember { viewModel.favorites }.collectAsState(emptyList())
+    val iconSize = LocalGridSettings.current.iconSize.dp.toPixels().toInt()
+    val icons by remember(favorites, iconSize) {
+        viewModel.getIcons(favorites, iconSize)
+    }.collectAsState(emptyMap())
     val pinnedTags by viewModel.pinnedTags.collectAsState(emptyList())
     val selectedTag by viewModel.selectedTag.collectAsState(null)
 
@@ -40,7 +46,7 @@ fun AppsWidget(widget: AppsWidget) {
         modifier = Modifier.padding(vertical = 4.dp)
     ) {
         if (favorites.isNotEmpty()) {
-            SearchResultGrid(favorites, transitionKey = selectedTag)
+            SearchResultGrid(favorites, transitionKey = selectedTag, icons = icons)
         } else {
             Banner(
                 modifier = Modifier.padding(16.dp),
@@ -19,8 +19,11 @@ import de.mm20.launcher2.weather.DailyForecast
 import de.mm20.launcher2.weather.Forecast
 import de.mm20.launcher2.weather.WeatherRepository
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
@@ -42,16 +45,19 @@ class WeatherWidgetVM : ViewModel(), KoinComponent {
         set(value) {
             field = min(value, forecasts.lastIndex)
             if (field < 0) {
+                selectedDay.value = null
+                currentDailyForecast.value = null
+                currentDayForecasts.value = emptyList()
                 currentForecast.value = null
                 return
             }
-            selectedForecastIndex = min(
-                selectedForecastIndex,
-                forecasts[value].hourlyForecasts.lastIndex
-            )
-            currentDayForecasts.value = forecasts[value].hourlyForecasts
-            currentDailyForecast.value = forecasts[value]
-            currentForecast.value = getCurrentlySelectedForecast()
+            val day = forecasts[field]
+            currentDailyForecast.value = day
+            selectedDay.value = day
+            if (loadedDay == day) {
+                // Forecasts of this day are already loaded, selectedDay won't emit again
+                onDayForecastsLoaded(day, currentDayForecasts.value)
+            }
         }
 
     /**
@@ -59,14 +65,23 @@ class WeatherWidgetVM : ViewModel(), KoinComponent {
      */
     private var selectedForecastIndex = 0
         set(value) {
-            if (selectedDayIndex < 0) {
-                currentForecast.value = null
-                return
-            }
-            field = min(value, forecasts[selectedDayIndex].hourlyForecasts.lastIndex)
+            field = min(value, currentDayForecasts.value.lastIndex).coerceAtLeast(0)
             currentForecast.value = getCurrentlySelectedForecast()
         }
 
+    /**
+     * If true, the forecast closest to now is selected as soon as the forecasts of the selected day
+     * have been loaded.
+     */
+    private var selectNowPending = false
+
+    /**
+     * The day that [currentDayForecasts] belong to.
+     */
+    private var loadedDay: DailyForecast? = null
+
+    private val selectedDay = MutableStateFlow<DailyForecast?>(null)
+
     private val forecastsFlow = weatherRepository.getDailyForecasts()
 
     /**
@@ -75,15 +90,14 @@ class WeatherWidgetVM : ViewModel(), KoinComponent {
     private var forecasts: List<DailyForecast> = emptyList()
         set(value) {
             field = value
-            selectedDayIndex = 0
-            selectedForecastIndex = 0
             dailyForecasts.value = value
+            selectedDayIndex = 0
         }
 
     /**
      * Currently selected forecast, one of [currentDayForecasts]
      */
-    val currentForecast = mutableStateOf<Forecast?>(getCurrentlySelectedForecast())
+    val currentForecast = mutableStateOf<Forecast?>(null)
 
     /**
      * List of forecast summaries for each day
@@ -92,7 +106,7 @@ class WeatherWidgetVM : ViewModel(), KoinComponent {
 
     /**
      * Forecasts of the currently selected day (hourly in most cases).
-     * This is [DailyForecast.hourlyForecasts] of [currentDailyForecast]
+     * Only the forecasts of this day are loaded from the database.
      */
     val currentDayForecasts = mutableStateOf<List<Forecast>>(emptyList())
 
@@ -108,6 +122,26 @@ class WeatherWidgetVM : ViewModel(), KoinComponent {
                 selectNow()
             }
         }
+        viewModelScope.launch {
+            selectedDay.flatMapLatest { day ->
+                if (day == null) flowOf(null)
+                else weatherRepository.getForecasts(day).map { day to it }
+            }.collectLatest {
+                if (it != null) onDayForecastsLoaded(it.first, it.second)
+            }
+        }
+    }
+
+    private fun onDayForecastsLoaded(day: DailyForecast, dayForecasts: List<Forecast>) {
+        loadedDay = day
+        currentDayForecasts.value = dayForecasts
+        if (selectNowPending) {
+            selectNowPending = false
+            val now = System.currentTimeMillis()
+            selectedForecastIndex = max(0, dayForecasts.indexOfLast { it.timestamp < now })
+        } else {
+            selectedForecastIndex = selectedForecastIndex
+        }
     }
 
     val hasLocationPermission = permissionsManager.hasPermission(PermissionGroup.Location)
@@ -129,19 +163,15 @@ class WeatherWidgetVM : ViewModel(), KoinComponent {
     }
 
     private fun getCurrentlySelectedForecast(): Forecast? {
-        return forecasts.getOrNull(selectedDayIndex)?.hourlyForecasts?.getOrNull(
-            selectedForecastIndex
-        )
+        return currentDayForecasts.value.getOrNull(selectedForecastIndex)
     }
 
     fun selectNow() {
         if (forecasts.isEmpty()) return
         val now = System.currentTimeMillis()
         val dayIndex = max(0, forecasts.indexOfLast { it.timestamp < now })
-        val day = forecasts[dayIndex]
-        val forecastIndex = max(0, day.hourlyForecasts.indexOfLast { it.timestamp < now })
+        selectNowPending = true
         selectDay(dayIndex)
-        selectForecast(forecastIndex)
     }
 
     fun openSettings(context: Context) {
@@ -44,7 +44,7 @@ class WeatherIntegrationSettingsScreenVM : ViewModel(), KoinComponent {
 
     val location = weatherSettings.autoLocation.flatMapLatest {
         if (it) {
-            repository.getForecasts(limit = 1).map { it.firstOrNull()?.location }
+            repository.getForecastLocation()
         } else {
             weatherSettings.location.map { it?.name }
         }
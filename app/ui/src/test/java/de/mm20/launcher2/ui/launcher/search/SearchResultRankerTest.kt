@@ -0,0 +1,150 @@
+package de.mm20.launcher2.ui.launcher.search
+
+import android.content.Context
+import android.os.Bundle
+import de.mm20.launcher2.icons.StaticLauncherIcon
+import de.mm20.launcher2.search.ResultScore
+import de.mm20.launcher2.search.SavableSearchable
+import de.mm20.launcher2.search.SearchableSerializer
+import de.mm20.launcher2.search.isUnspecified
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert
+import org.junit.Ignore
+import org.junit.Test
+import kotlin.random.Random
+
+/**
+ * Checks that [SearchResultRanker] ranks results like the previous comparator-based ranking.
+ * [benchmark] prints how long ranking a 300-result emission takes with both implementations. It is
+ * ignored by default, because the timings depend on the host machine.
+ */
+class SearchResultRankerTest {
+
+    private class TestSearchable(
+        override val key: String,
+        override val label: String,
+        override val score: ResultScore = ResultScore.Unspecified,
+    ) : SavableSearchable {
+        override fun overrideLabel(label: String): SavableSearchable = this
+        override fun launch(context: Context, options: Bundle?): Boolean = false
+        override val preferDetailsOverLaunch: Boolean = false
+        override fun getPlaceholderIcon(context: Context): StaticLauncherIcon = throw NotImplementedError()
+        override val domain: String = "test"
+        override fun getSerializer(): SearchableSerializer = throw NotImplementedError()
+    }
+
+    private val query = "cal"
+
+    private val random = Random(42)
+
+    private val words = listOf(
+        "calendar", "calculator", "camera", "call", "clock", "contacts", "calm", "local",
+        "mail", "maps", "music", "scale", "recall", "photos", "files", "notes",
+    )
+
+    /**
+     * A typical emission: apps, shortcuts, files, contacts, events, articles and websites.
+     * Some results have a score already, some share a key.
+     */
+    private val results: List<List<TestSearchable>> = listOf(60, 40, 80, 40, 30, 25, 25).mapIndexed { c, size ->
+        List(size) { i ->
+            val label = "${words.random(random)} ${words.random(random)} $i"
+            TestSearchable(
+                key = "category$c://${if (i % 20 == 19) i - 1 else i}",
+                label = label,
+                score = if (i % 3 == 0) ResultScore.from(query, listOf(label)) else ResultScore.Unspecified,
+            )
+        }
+    }
+
+    private val weights = results.flatten()
+        .filter { random.nextBoolean() }
+        .associate { it.key to random.nextDouble() }
+
+    /**
+     * The previous implementation: one weight query per category, scores computed in the comparator.
+     */
+    private fun <T : SavableSearchable> List<T>.applyRanking(query: String): List<T> {
+        if (size <= 1) return this
+        val weights = map { it.key }.mapNotNull { key -> weights[key]?.let { key to it } }.toMap()
+        return asSequence().sortedWith { a, b ->
+            val aWeight = weights[a.key] ?: 0.0
+            val bWeight = weights[b.key] ?: 0.0
+            val aScore = if (a.score.isUnspecified) {
+                ResultScore.from(query = query, primaryFields = listOf(a.labelOverride ?: a.label)).score
+            } else {
+                a.score.score
+            }
+            val bScore = if (b.score.isUnspecified) {
+                ResultScore.from(query = query, primaryFields = listOf(b.labelOverride ?: b.label)).score
+            } else {
+                b.score.score
+            }
+            val aTotal = aScore * 0.6f + aWeight.toFloat() * 0.4f
+            val bTotal = bScore * 0.6f + bWeight.toFloat() * 0.4f
+            bTotal.compareTo(aTotal)
+        }.distinctBy { it.key }.toList()
+    }
+
+    private fun createRanker(onQuery: (List<String>) -> Unit = {}) = SearchResultRanker { keys ->
+        onQuery(keys)
+        keys.mapNotNull { key -> weights[key]?.let { key to it } }.toMap()
+    }
+
+    @Test
+    fun ranksLikeComparator() = runBlocking {
+        val ranker = createRanker()
+        ranker.loadWeights(results.flatten().map { it.key })
+        for (category in results) {
+            Assert.assertEquals(
+                category.applyRanking(query).map { it.key },
+                ranker.rank(category, query).map { it.key },
+            )
+        }
+    }
+
+    @Test
+    fun loadsWeightsOnce() = runBlocking {
+        val queries = mutableListOf<List<String>>()
+        val ranker = createRanker { queries += it }
+        val keys = results.flatten().map { it.key }
+        ranker.loadWeights(keys)
+        ranker.loadWeights(keys)
+        Assert.assertEquals(1, queries.size)
+        Assert.assertEquals(keys.toSet(), queries.single().toSet())
+
+        ranker.loadWeights(List(SearchResultRanker.MaxKeysPerQuery + 1) { "new://$it" })
+        Assert.assertEquals(3, queries.size)
+    }
+
+    @Test
+    @Ignore("Benchmark, run manually")
+    fun benchmark() = runBlocking {
+        Assert.assertEquals(300, results.sumOf { it.size })
+
+        suspend fun measure(name: String, rank: suspend () -> Int) {
+            var sink = 0
+            repeat(WarmupRounds) { sink += rank() }
+            val start = System.nanoTime()
+            repeat(Rounds) { sink += rank() }
+            val elapsed = System.nanoTime() - start
+            Assert.assertTrue(sink > 0)
+            println("$name: ${elapsed / Rounds / 1000} µs/emission")
+        }
+
+        measure("Comparator") {
+            results.sumOf { it.applyRanking(query).size }
+        }
+        measure("SearchResultRanker") {
+            // A new ranker per emission, so that the weight lookup is included
+            val ranker = createRanker()
+            ranker.loadWeights(results.flatMap { c -> c.map { it.key } })
+            results.sumOf { ranker.rank(it, query).size }
+        }
+    }
+
+    companion object {
+        private const val WarmupRounds = 20
+        private const val Rounds = 100
+    }
+}
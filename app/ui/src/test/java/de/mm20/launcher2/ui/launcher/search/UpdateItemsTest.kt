@@ -0,0 +1,134 @@
+package de.mm20.launcher2.ui.launcher.search
+
+import android.content.Context
+import android.os.Bundle
+import de.mm20.launcher2.icons.StaticLauncherIcon
+import de.mm20.launcher2.search.SavableSearchable
+import de.mm20.launcher2.search.SearchableSerializer
+import org.junit.Assert
+import org.junit.Test
+import kotlin.random.Random
+
+class UpdateItemsTest {
+
+    private data class TestSearchable(
+        override val key: String,
+        override val label: String = key,
+    ) : SavableSearchable {
+        override fun overrideLabel(label: String): SavableSearchable = this
+        override fun launch(context: Context, options: Bundle?): Boolean = false
+        override val preferDetailsOverLaunch: Boolean = false
+        override fun getPlaceholderIcon(context: Context): StaticLauncherIcon = throw NotImplementedError()
+        override val domain: String = "test"
+        override fun getSerializer(): SearchableSerializer = throw NotImplementedError()
+    }
+
+    /**
+     * A list that counts how often it is written to.
+     */
+    private class RecordingList<T>(items: List<T>) : AbstractMutableList<T>() {
+        private val items = items.toMutableList()
+        var writes = 0
+            private set
+
+        override val size: Int
+            get() = items.size
+
+        override fun get(index: Int): T = items[index]
+
+        override fun set(index: Int, element: T): T {
+            writes++
+            return items.set(index, element)
+        }
+
+        override fun add(index: Int, element: T) {
+            writes++
+            items.add(index, element)
+        }
+
+        override fun removeAt(index: Int): T {
+            writes++
+            return items.removeAt(index)
+        }
+    }
+
+    private fun items(vararg keys: String) = keys.map { TestSearchable(it) }
+
+    private fun update(old: List<TestSearchable>, new: List<TestSearchable>?): RecordingList<TestSearchable> {
+        val list = RecordingList(old)
+        list.updateItems(new)
+        Assert.assertEquals(new ?: emptyList<TestSearchable>(), list.toList())
+        return list
+    }
+
+    @Test
+    fun insertsItems() {
+        Assert.assertEquals(3, update(items(), items("a", "b", "c")).writes)
+        Assert.assertEquals(1, update(items("a", "c"), items("a", "b", "c")).writes)
+        Assert.assertEquals(1, update(items("b", "c"), items("a", "b", "c")).writes)
+        Assert.assertEquals(1, update(items("a", "b"), items("a", "b", "c")).writes)
+    }
+
+    @Test
+    fun removesItems() {
+        Assert.assertEquals(1, update(items("a", "b", "c"), items("a", "c")).writes)
+        Assert.assertEquals(1, update(items("a", "b", "c"), items("b", "c")).writes)
+        Assert.assertEquals(1, update(items("a", "b", "c"), items("a", "b")).writes)
+        Assert.assertEquals(3, update(items("a", "b", "c"), items()).writes)
+        Assert.assertEquals(3, update(items("a", "b", "c"), null).writes)
+    }
+
+    @Test
+    fun reordersItems() {
+        // A move is a remove and an insert
+        Assert.assertEquals(2, update(items("a", "b", "c"), items("b", "a", "c")).writes)
+        Assert.assertEquals(2, update(items("a", "b", "c"), items("c", "a", "b")).writes)
+        update(items("a", "b", "c", "d"), items("d", "c", "b", "a"))
+        update(items("a", "b", "c", "d"), items("e", "d", "b", "f"))
+    }
+
+    @Test
+    fun replacesChangedItems() {
+        val old = items("a", "b", "c")
+        val new = listOf(old[0], TestSearchable("b", "B"), old[2])
+        val list = update(old, new)
+        Assert.assertEquals(1, list.writes)
+        Assert.assertSame(new[1], list[1])
+        Assert.assertSame(old[0], list[0])
+    }
+
+    @Test
+    fun keepsEqualItems() {
+        val old = items("a", "b", "c")
+        val list = update(old, items("a", "b", "c"))
+        Assert.assertEquals(0, list.writes)
+        for (i in old.indices) Assert.assertSame(old[i], list[i])
+    }
+
+    @Test
+    fun doesNotWriteWhenUnchanged() {
+        Assert.assertEquals(0, update(items(), items()).writes)
+        Assert.assertEquals(0, update(items(), null).writes)
+        val old = items("a", "b", "c")
+        Assert.assertEquals(0, update(old, old).writes)
+        val values = listOf(1, 2, 3)
+        val list = RecordingList(values)
+        list.updateItems(listOf(1, 2, 3))
+        Assert.assertEquals(0, list.writes)
+    }
+
+    @Test
+    fun matchesRandomUpdates() {
+        val random = Random(42)
+        val keys = List(20) { "key$it" }
+        var current = items()
+        repeat(500) {
+            val new = keys.shuffled(random).take(random.nextInt(keys.size + 1))
+                .map { TestSearchable(it, if (random.nextInt(5) == 0) it.uppercase() else it) }
+            val list = RecordingList(current)
+            list.updateItems(new)
+            Assert.assertEquals(new, list.toList())
+            current = list.toList()
+        }
+    }
+}
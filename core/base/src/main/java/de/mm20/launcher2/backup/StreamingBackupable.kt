@@ -0,0 +1,57 @@
+package de.mm20.launcher2.backup
+
+import java.io.File
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * A [Backupable] that writes its data directly to the entries of the backup archive, and restores
+ * it from the archive entries, without going through files on disk.
+ */
+interface StreamingBackupable : Backupable {
+    /**
+     * Whether the archive entry with the given name has been written by this component.
+     */
+    fun isBackupEntry(name: String): Boolean
+
+    /**
+     * Write all data of this component to [writer]. Data should be split into several entries of
+     * moderate size, because each entry is buffered in memory until it is written to the archive.
+     */
+    suspend fun backup(writer: BackupWriter)
+
+    /**
+     * Called once before a restore, before any entries are passed to [restoreEntry], even if the
+     * backup doesn't contain any entries of this component.
+     */
+    suspend fun beginRestore()
+
+    /**
+     * Restore a single entry. [input] is positioned at the start of the entry and must not be closed.
+     */
+    suspend fun restoreEntry(name: String, input: InputStream)
+
+    override suspend fun backup(toDir: File) {
+        backup(BackupWriter { name, write ->
+            File(toDir, name).outputStream().buffered().use(write)
+        })
+    }
+
+    override suspend fun restore(fromDir: File) {
+        beginRestore()
+        val files = fromDir.listFiles { _, name -> isBackupEntry(name) } ?: return
+        for (file in files.sortedBy { it.name }) {
+            file.inputStream().buffered().use {
+                restoreEntry(file.name, it)
+            }
+        }
+    }
+}
+
+fun interface BackupWriter {
+    /**
+     * Add an entry to the backup archive.
+     * @param write writes the content of the entry; must not close the stream
+     */
+    suspend fun writeEntry(name: String, write: (OutputStream) -> Unit)
+}
@@ -1,6 +1,7 @@
 package de.mm20.launcher2.plugin
 
 import android.content.Context
+import android.database.ContentObserver
 import android.database.Cursor
 import android.net.Uri
 import android.os.Bundle
@@ -11,8 +12,13 @@ import de.mm20.launcher2.plugin.contracts.LocationPluginContract
 import de.mm20.launcher2.plugin.contracts.PluginContract
 import de.mm20.launcher2.plugin.contracts.SearchPluginContract
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.withContext
+import java.util.UUID
 import kotlin.coroutines.resume
 
 private class NotUpdated : Exception("Not updated")
@@ -42,50 +48,132 @@ abstract class QueryPluginApi<TQuery, TResult>(
     }
 
     suspend fun search(query: TQuery, allowNetwork: Boolean): List<TResult> = withContext(Dispatchers.IO) {
-            val lang = getLanguage()
-            val uri = Uri.Builder()
-                .scheme("content")
-                .authority(pluginAuthority)
-                .path(SearchPluginContract.Paths.Search)
-                .appendQueryParameters(query)
-                .appendQueryParameter(
-                    SearchPluginContract.Params.AllowNetwork,
-                    allowNetwork.toString()
-                )
-                .appendQueryParameter(
-                    SearchPluginContract.Params.Lang,
-                    lang
-                )
-                .build()
-            val cancellationSignal = CancellationSignal()
+        querySearch(buildSearchUri(query, allowNetwork).build())?.results ?: emptyList()
+    }
 
-            return@withContext suspendCancellableCoroutine {
-                it.invokeOnCancellation {
-                    cancellationSignal.cancel()
-                }
-                val cursor = try {
-                    context.contentResolver.query(
-                        uri,
-                        null,
-                        null,
-                        cancellationSignal
-                    )
-                } catch (e: Exception) {
-                    Log.e("MM20", "Plugin $pluginAuthority threw exception", e)
-                    it.resume(emptyList())
-                    return@suspendCancellableCoroutine
-                }
+    /**
+     * Like [search], but emits the results in pages, as soon as the plugin provides them. Each
+     * page only contains the results that have been added since the previous page.
+     * Plugins that do not support paged searches emit a single page with all results.
+     * @param limit the maximum number of results that the plugin should return, or null
+     */
+    fun searchPages(query: TQuery, allowNetwork: Boolean, limit: Int?): Flow<List<TResult>> = flow {
+        val session = UUID.randomUUID().toString()
+        val uri = buildSearchUri(query, allowNetwork)
+            .appendQueryParameter(
+                SearchPluginContract.Params.Version,
+                SearchPluginContract.ProtocolVersion.toString()
+            )
+            .appendQueryParameter(SearchPluginContract.Params.Session, session)
+            .apply {
+                if (limit != null) appendQueryParameter(SearchPluginContract.Params.Limit, limit.toString())
+            }
+            .build()
+        val sessionUri = Uri.Builder()
+            .scheme("content")
+            .authority(pluginAuthority)
+            .path(SearchPluginContract.Paths.Search)
+            .appendPath(session)
+            .build()
 
-                if (cursor == null) {
-                    Log.e("MM20", "Plugin $pluginAuthority returned null cursor")
-                    it.resume(emptyList())
-                    return@suspendCancellableCoroutine
+        val changes = Channel<Unit>(Channel.CONFLATED)
+        val observer = object : ContentObserver(null) {
+            override fun onChange(selfChange: Boolean) {
+                changes.trySend(Unit)
+            }
+        }
+        // Register before the first query, so that no change notification can be missed
+        context.contentResolver.registerContentObserver(sessionUri, false, observer)
+        var finished = false
+        try {
+            var delivered = 0
+            while (true) {
+                val page = querySearch(uri) ?: break
+                if (page.results.size > delivered) {
+                    emit(page.results.subList(delivered, page.results.size))
+                    delivered = page.results.size
                 }
+                if (!page.loading) break
+                changes.receive()
+            }
+            finished = true
+        } finally {
+            context.contentResolver.unregisterContentObserver(observer)
+            if (!finished) cancelSearch(session)
+        }
+    }.flowOn(Dispatchers.IO)
+
+    private fun cancelSearch(session: String) {
+        try {
+            context.contentResolver.call(
+                Uri.Builder()
+                    .scheme("content")
+                    .authority(pluginAuthority)
+                    .build(),
+                SearchPluginContract.Methods.CancelSearch,
+                session,
+                null
+            )
+        } catch (e: Exception) {
+            Log.e("MM20", "Plugin $pluginAuthority threw exception", e)
+        }
+    }
+
+    private fun buildSearchUri(query: TQuery, allowNetwork: Boolean): Uri.Builder {
+        return Uri.Builder()
+            .scheme("content")
+            .authority(pluginAuthority)
+            .path(SearchPluginContract.Paths.Search)
+            .appendQueryParameters(query)
+            .appendQueryParameter(
+                SearchPluginContract.Params.AllowNetwork,
+                allowNetwork.toString()
+            )
+            .appendQueryParameter(
+                SearchPluginContract.Params.Lang,
+                getLanguage()
+            )
+    }
+
+    private class SearchPage<TResult>(
+        val results: List<TResult>,
+        /**
+         * Whether the plugin is going to provide more results
+         */
+        val loading: Boolean,
+    )
+
+    private suspend fun querySearch(uri: Uri): SearchPage<TResult>? {
+        val cancellationSignal = CancellationSignal()
+
+        return suspendCancellableCoroutine {
+            it.invokeOnCancellation {
+                cancellationSignal.cancel()
+            }
+            val cursor = try {
+                context.contentResolver.query(
+                    uri,
+                    null,
+                    null,
+                    cancellationSignal
+                )
+            } catch (e: Exception) {
+                Log.e("MM20", "Plugin $pluginAuthority threw exception", e)
+                it.resume(null)
+                return@suspendCancellableCoroutine
+            }
 
-                val results = cursor.getData() ?: emptyList()
-                it.resume(results)
+            if (cursor == null) {
+                Log.e("MM20", "Plugin $pluginAuthority returned null cursor")
+                it.resume(null)
+                return@suspendCancellableCoroutine
             }
+
+            val loading = cursor.extras?.getBoolean(SearchPluginContract.Extras.Loading) == true
+            val results = cursor.getData() ?: emptyList()
+            it.resume(SearchPage(results, loading))
         }
+    }
 
     suspend fun get(id: String): Result<TResult?> = withContext(Dispatchers.IO) {
         val uri = Uri.Builder()
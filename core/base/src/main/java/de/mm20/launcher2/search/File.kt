@@ -19,6 +19,12 @@ interface File : SavableSearchable {
     val isDirectory: Boolean
     val metaData: ImmutableMap<FileMetaType, String>
 
+    /**
+     * Load the metadata of this file. Providers that extract metadata lazily override this;
+     * by default, [metaData] is returned.
+     */
+    suspend fun loadMetaData(context: Context): ImmutableMap<FileMetaType, String> = metaData
+
     override val preferDetailsOverLaunch: Boolean
         get() = false
 
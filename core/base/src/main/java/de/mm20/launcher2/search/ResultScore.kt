@@ -52,12 +52,16 @@ value class ResultScore private constructor(private val packed: Long) : Comparab
     }
 
     companion object {
+        /**
+         * Jaro-Winkler is stateless, so a single instance can be shared across all callers.
+         */
+        private val jaroWinkler = JaroWinkler()
+
         fun from(
             query: String,
             primaryFields: Iterable<String> = emptyList(),
             secondaryFields: Iterable<String> = emptyList(),
         ): ResultScore {
-            val jaroWinkler = JaroWinkler()
             val bestPrimaryScore = primaryFields.maxOfOrNull { term ->
                 val sim = jaroWinkler.similarity(query, term).toFloat()
                 ResultScore(
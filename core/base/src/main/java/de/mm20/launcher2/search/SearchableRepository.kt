@@ -4,4 +4,19 @@ import kotlinx.coroutines.flow.Flow
 
 interface SearchableRepository<T : Searchable> {
     fun search(query: String, allowNetwork: Boolean): Flow<List<T>>
+
+    /**
+     * Search for [query], reusing the work of a previous search. This is called instead of
+     * [search] if [query] extends [previousQuery] (i.e. the user typed another character).
+     * Implementations must return the same results as [search] would, they may only use what they
+     * know about the search for [previousQuery] to narrow down the set of candidates.
+     * @param previousQuery the query of the previous search
+     * @return the results, or null if the previous search can't be reused, in which case
+     * [search] is called instead.
+     */
+    fun refine(
+        query: String,
+        previousQuery: String,
+        allowNetwork: Boolean,
+    ): Flow<List<T>>? = null
 }
\ No newline at end of file
@@ -17,8 +17,53 @@ abstract class SearchPluginContract {
         const val Lang = "lang"
         const val UpdatedAt = "updatedAt"
         const val Query = "query"
+
+        /**
+         * The search protocol version of the launcher, see [ProtocolVersion].
+         * Not set by launchers that only support the initial protocol (version 1).
+         */
+        const val Version = "version"
+
+        /**
+         * The maximum number of results that the launcher is going to use.
+         * Since protocol version 2.
+         */
+        const val Limit = "limit"
+
+        /**
+         * A unique ID of a paged search. Since protocol version 2.
+         *
+         * If this is set, a plugin can return the results that it has found so far, and set
+         * [Extras.Loading] on the cursor. The launcher then observes
+         * `content://<authority>/search/<session>`. The plugin calls `notifyChange` on that URI
+         * whenever new results are available, and the launcher queries the same search URI again.
+         * Every response contains all results of the session so far, in the same order; new results
+         * are only appended.
+         */
+        const val Session = "session"
     }
     object Extras {
         const val NotUpdated = "notUpdated"
+
+        /**
+         * Set on the cursor of a paged search if more results are going to follow.
+         */
+        const val Loading = "loading"
+    }
+    object Methods {
+        /**
+         * Cancel a paged search. The session ID is passed as arg.
+         * Called by the launcher if it is no longer interested in the results of a session.
+         */
+        const val CancelSearch = "cancelSearch"
+    }
+
+    companion object {
+        /**
+         * The current version of the search protocol.
+         * - 1: a search returns all results at once
+         * - 2: adds [Params.Limit] and paged searches (see [Params.Session])
+         */
+        const val ProtocolVersion = 2
     }
-}
\ No newline at end of file
+}
@@ -56,4 +56,5 @@ dependencies {
     implementation(project(":core:compat"))
     implementation(project(":core:profiles"))
 
+    testImplementation(libs.bundles.tests)
 }
\ No newline at end of file
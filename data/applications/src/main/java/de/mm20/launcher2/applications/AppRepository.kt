@@ -13,7 +13,6 @@ import android.os.UserHandle
 import de.mm20.launcher2.profiles.Profile
 import de.mm20.launcher2.profiles.ProfileManager
 import de.mm20.launcher2.search.Application
-import de.mm20.launcher2.search.ResultScore
 import de.mm20.launcher2.search.SearchableRepository
 import de.mm20.launcher2.search.StringNormalizer
 import kotlinx.collections.immutable.ImmutableList
@@ -51,6 +50,12 @@ internal class AppRepositoryImpl(
         context.getSystemService(Context.LAUNCHER_APPS_SERVICE) as LauncherApps
 
     private val installedApps = MutableStateFlow<List<LauncherApp>>(emptyList())
+    private val searchIndex = AppSearchIndex<LauncherApp>(
+        stringNormalizer,
+        getKey = { it.key },
+        getLabel = { it.label },
+        withScore = { app, score -> app.copy(score = score) },
+    )
 
     private val profiles = profileManager.unlockedProfiles
 
@@ -65,8 +70,12 @@ internal class AppRepositoryImpl(
             ) {
                 scope.launch {
                     mutex.withLock {
+                        val predicate: (LauncherApp) -> Boolean = {
+                            packageNames.contains(it.componentName.packageName) && it.user == user
+                        }
                         val apps = installedApps.value.toMutableList()
-                        apps.removeAll { packageNames.contains(it.componentName.packageName) && it.user == user }
+                        apps.removeAll(predicate)
+                        searchIndex.removeAll(predicate)
                         installedApps.value = apps
                     }
                 }
@@ -75,9 +84,15 @@ internal class AppRepositoryImpl(
             override fun onPackageChanged(packageName: String, user: UserHandle) {
                 scope.launch {
                     mutex.withLock {
+                        val predicate: (LauncherApp) -> Boolean = {
+                            packageName == it.componentName.packageName && it.user == user
+                        }
+                        val added = getApplications(packageName, user)
                         val apps = installedApps.value.toMutableList()
-                        apps.removeAll { packageName == it.componentName.packageName && it.user == user }
-                        apps.addAll(getApplications(packageName, user))
+                        apps.removeAll(predicate)
+                        apps.addAll(added)
+                        searchIndex.removeAll(predicate)
+                        searchIndex.addAll(added)
                         installedApps.value = apps
                     }
                 }
@@ -90,10 +105,10 @@ internal class AppRepositoryImpl(
             ) {
                 scope.launch {
                     mutex.withLock {
+                        val added = packageNames.flatMap { getApplications(it, user) }
                         val apps = installedApps.value.toMutableList()
-                        for (packageName in packageNames) {
-                            apps.addAll(getApplications(packageName, user))
-                        }
+                        apps.addAll(added)
+                        searchIndex.addAll(added)
                         installedApps.value = apps
                     }
                 }
@@ -102,8 +117,10 @@ internal class AppRepositoryImpl(
             override fun onPackageAdded(packageName: String, user: UserHandle) {
                 scope.launch {
                     mutex.withLock {
+                        val added = getApplications(packageName, user)
                         val apps = installedApps.value.toMutableList()
-                        apps.addAll(getApplications(packageName, user))
+                        apps.addAll(added)
+                        searchIndex.addAll(added)
                         installedApps.value = apps
                     }
                 }
@@ -112,8 +129,12 @@ internal class AppRepositoryImpl(
             override fun onPackageRemoved(packageName: String, user: UserHandle) {
                 scope.launch {
                     mutex.withLock {
+                        val predicate: (LauncherApp) -> Boolean = {
+                            packageName == it.componentName.packageName && it.user == user
+                        }
                         val apps = installedApps.value.toMutableList()
-                        apps.removeAll { packageName == it.componentName.packageName && it.user == user }
+                        apps.removeAll(predicate)
+                        searchIndex.removeAll(predicate)
                         installedApps.value = apps
 
                     }
@@ -132,14 +153,16 @@ internal class AppRepositoryImpl(
                 packageNames ?: return
                 scope.launch {
                     mutex.withLock {
-                        val apps = installedApps.value.toMutableList()
-                        apps.replaceAll {
+                        val operator: (LauncherApp) -> LauncherApp = {
                             if (packageNames.contains(it.componentName.packageName) && it.user == user) {
                                 it.copy(isSuspended = true)
                             } else {
                                 it
                             }
                         }
+                        val apps = installedApps.value.toMutableList()
+                        apps.replaceAll(operator)
+                        searchIndex.replaceAll(operator)
                         installedApps.value = apps
                     }
                 }
@@ -152,14 +175,16 @@ internal class AppRepositoryImpl(
                 packageNames ?: return
                 scope.launch {
                     mutex.withLock {
-                        val apps = installedApps.value.toMutableList()
-                        apps.replaceAll {
+                        val operator: (LauncherApp) -> LauncherApp = {
                             if (packageNames.contains(it.componentName.packageName) && it.user == user) {
                                 it.copy(isSuspended = false)
                             } else {
                                 it
                             }
                         }
+                        val apps = installedApps.value.toMutableList()
+                        apps.replaceAll(operator)
+                        searchIndex.replaceAll(operator)
                         installedApps.value = apps
                     }
                 }
@@ -185,8 +210,10 @@ internal class AppRepositoryImpl(
 
     private suspend fun addProfile(profile: Profile) {
         mutex.withLock {
+            val added = getApplications(null, profile.userHandle)
             val apps = installedApps.value.toMutableList()
-            apps.addAll(getApplications(null, profile.userHandle))
+            apps.addAll(added)
+            searchIndex.addAll(added)
             installedApps.value = apps
         }
     }
@@ -196,6 +223,7 @@ internal class AppRepositoryImpl(
             mutex.withLock {
                 val apps = installedApps.value.toMutableList()
                 apps.removeAll { it.user == profile.userHandle }
+                searchIndex.removeAll { it.user == profile.userHandle }
                 installedApps.value = apps
             }
         }
@@ -239,34 +267,29 @@ internal class AppRepositoryImpl(
     }
 
     override fun search(query: String, allowNetwork: Boolean): Flow<ImmutableList<LauncherApp>> {
+        return searchApps(query, null)
+    }
+
+    override fun refine(
+        query: String,
+        previousQuery: String,
+        allowNetwork: Boolean
+    ): Flow<ImmutableList<LauncherApp>>? {
+        if (query.isEmpty()) return null
+        return searchApps(query, previousQuery)
+    }
+
+    private fun searchApps(query: String, previousQuery: String?): Flow<ImmutableList<LauncherApp>> {
         val normalizedQuery = stringNormalizer.normalize(query)
+        val normalizedPreviousQuery = previousQuery?.let { stringNormalizer.normalize(it) }
 
         return installedApps.map { apps ->
             withContext(Dispatchers.Default) {
-                val normalizerId = stringNormalizer.id
                 val appResults = mutableListOf<LauncherApp>()
                 if (query.isEmpty()) {
                     appResults.addAll(apps)
                 } else {
-                    appResults.addAll(apps.mapNotNull { app ->
-                        val cachedLabel = app.cachedNormalizerResult
-                        val score = ResultScore.from(
-                            query = normalizedQuery,
-                            primaryFields = listOf(
-                                if (cachedLabel?.first == normalizerId) {
-                                    cachedLabel.second
-                                } else {
-                                    stringNormalizer.normalize(app.label).also {
-                                        app.cachedNormalizerResult = normalizerId to it
-                                    }
-                                }
-                            ),
-                        )
-                        if (score.score < 0.8f) return@mapNotNull null
-                        app.copy(
-                            score = score
-                        )
-                    })
+                    appResults.addAll(searchIndex.search(normalizedQuery, normalizedPreviousQuery))
 
                     val componentName = ComponentName.unflattenFromString(query)
                     getActivityByComponentName(componentName)?.let { appResults.add(it) }
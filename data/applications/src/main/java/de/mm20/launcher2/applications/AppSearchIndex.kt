@@ -0,0 +1,227 @@
+package de.mm20.launcher2.applications
+
+import de.mm20.launcher2.search.ResultScore
+import de.mm20.launcher2.search.StringNormalizer
+
+/**
+ * Search index over the normalized labels of all installed apps.
+ *
+ * Substring matches are looked up in an n-gram posting list (n = 1..3) instead of scanning all
+ * labels. For fuzzy matches, each label keeps a character mask which yields an upper bound of the
+ * Jaro-Winkler similarity, so that only apps that can actually reach [MinScore] are scored.
+ * If a search refines the previous search (i.e. the user typed another character), the previous
+ * set of substring matches is narrowed down instead of querying the posting lists again.
+ *
+ * The index is kept up to date by the [AppRepositoryImpl]'s package callbacks.
+ *
+ * @param getKey the unique key of an app
+ * @param getLabel the label of an app, before normalization
+ * @param withScore returns a copy of an app with the given score
+ */
+internal class AppSearchIndex<T>(
+    private val stringNormalizer: StringNormalizer,
+    private val getKey: (T) -> String,
+    private val getLabel: (T) -> String,
+    private val withScore: (T, ResultScore) -> T,
+) {
+    private class Entry<T>(
+        val key: String,
+        val app: T,
+        val label: String,
+        val charMask: Long,
+    )
+
+    private val entries = mutableMapOf<String, Entry<T>>()
+
+    /**
+     * Immutable copy of [entries] for searches, so that a search doesn't need to copy the index.
+     * Reset on every change to the index.
+     */
+    private var snapshot: List<Entry<T>>? = null
+    private val postings = mutableMapOf<String, MutableSet<String>>()
+
+    private var normalizerId: String = stringNormalizer.id
+
+    /**
+     * Incremented on every change to the index, to invalidate [lastSubstringMatches].
+     */
+    private var generation = 0L
+
+    private var lastQuery: String? = null
+    private var lastGeneration = -1L
+    private var lastSubstringMatches: Set<String> = emptySet()
+
+    @Synchronized
+    fun addAll(apps: Collection<T>) {
+        for (app in apps) {
+            val key = getKey(app)
+            entries[key]?.let { removeEntry(it) }
+            addEntry(createEntry(key, app))
+        }
+        generation++
+        snapshot = null
+    }
+
+    @Synchronized
+    fun removeAll(predicate: (T) -> Boolean) {
+        val removed = entries.values.filter { predicate(it.app) }
+        for (entry in removed) {
+            removeEntry(entry)
+        }
+        generation++
+        snapshot = null
+    }
+
+    /**
+     * Replaces the app of each entry. The label of the replaced app must not change.
+     */
+    @Synchronized
+    fun replaceAll(operator: (T) -> T) {
+        for ((key, entry) in entries) {
+            val app = operator(entry.app)
+            if (app !== entry.app) {
+                entries[key] = Entry(key, app, entry.label, entry.charMask)
+            }
+        }
+        snapshot = null
+    }
+
+    /**
+     * Find all apps that match the given query.
+     * @param query the query, normalized with the same [StringNormalizer] as the index
+     * @param previousQuery the normalized query of the previous search, if [query] refines it
+     * @return matching apps, with their [LauncherApp.score] set; unsorted
+     */
+    fun search(query: String, previousQuery: String? = null): List<T> {
+        val substringMatches: Set<String>
+        val candidates: List<Entry<T>>
+        synchronized(this) {
+            if (stringNormalizer.id != normalizerId) {
+                reindex()
+            }
+            substringMatches = findSubstringMatches(query, previousQuery)
+            candidates = snapshot ?: entries.values.toList().also { snapshot = it }
+        }
+
+        // Substring matches can't be pruned; all other apps are checked against the char mask
+        // bound first, which is a few bit operations per app.
+        return candidates.mapNotNull { entry ->
+            if (entry.key !in substringMatches && !mayReachMinScore(query, entry)) return@mapNotNull null
+            val score = ResultScore.from(
+                query = query,
+                primaryFields = listOf(entry.label),
+            )
+            if (score.score < MinScore) return@mapNotNull null
+            withScore(entry.app, score)
+        }
+    }
+
+    private fun findSubstringMatches(query: String, previousQuery: String?): Set<String> {
+        val candidates = if (
+            previousQuery != null && previousQuery == lastQuery && lastGeneration == generation &&
+            query.contains(previousQuery)
+        ) {
+            lastSubstringMatches
+        } else {
+            lookupPostings(query)
+        }
+        val matches = candidates.filterTo(HashSet()) {
+            entries[it]?.label?.contains(query) == true
+        }
+        lastQuery = query
+        lastGeneration = generation
+        lastSubstringMatches = matches
+        return matches
+    }
+
+    private fun lookupPostings(query: String): Set<String> {
+        if (query.isEmpty()) return entries.keys
+        if (query.length <= MaxGramLength) return postings[query] ?: emptySet()
+
+        val lists = query.windowed(MaxGramLength)
+            .distinct()
+            .map { postings[it] ?: return emptySet() }
+            .sortedBy { it.size }
+        val result = HashSet(lists.first())
+        for (i in 1 until lists.size) {
+            result.retainAll(lists[i])
+            if (result.isEmpty()) break
+        }
+        return result
+    }
+
+    /**
+     * Checks whether the Jaro-Winkler similarity between [query] and the entry's label could
+     * reach [MinScore]. The number of matching characters is bounded by the number of query
+     * characters that occur in the label; transpositions are assumed to be zero.
+     */
+    private fun mayReachMinScore(query: String, entry: Entry<T>): Boolean {
+        val label = entry.label
+        if (query.isEmpty() || label.isEmpty()) return false
+        var matches = 0
+        for (c in query) {
+            if (entry.charMask and c.maskBit() != 0L) matches++
+        }
+        matches = minOf(matches, label.length)
+        if (matches == 0) return false
+
+        val jaro = (matches.toFloat() / query.length + matches.toFloat() / label.length + 1f) / 3f
+        var prefix = 0
+        while (prefix < 4 && prefix < query.length && prefix < label.length && query[prefix] == label[prefix]) {
+            prefix++
+        }
+        val jaroWinkler = jaro + 0.1f * prefix * (1f - jaro)
+        // Small tolerance to account for float vs. double rounding
+        return jaroWinkler >= MinScore - 0.001f
+    }
+
+    private fun reindex() {
+        normalizerId = stringNormalizer.id
+        val apps = entries.values.toList()
+        entries.clear()
+        postings.clear()
+        for (entry in apps) {
+            addEntry(createEntry(entry.key, entry.app))
+        }
+        generation++
+        snapshot = null
+    }
+
+    private fun createEntry(key: String, app: T): Entry<T> {
+        val label = stringNormalizer.normalize(getLabel(app))
+        var mask = 0L
+        for (c in label) mask = mask or c.maskBit()
+        return Entry(key, app, label, mask)
+    }
+
+    private fun addEntry(entry: Entry<T>) {
+        entries[entry.key] = entry
+        forEachGram(entry.label) {
+            postings.getOrPut(it) { HashSet() }.add(entry.key)
+        }
+    }
+
+    private fun removeEntry(entry: Entry<T>) {
+        entries.remove(entry.key)
+        forEachGram(entry.label) {
+            val keys = postings[it] ?: return@forEachGram
+            keys.remove(entry.key)
+            if (keys.isEmpty()) postings.remove(it)
+        }
+    }
+
+    private inline fun forEachGram(label: String, block: (String) -> Unit) {
+        for (n in 1..MaxGramLength) {
+            for (i in 0..label.length - n) {
+                block(label.substring(i, i + n))
+            }
+        }
+    }
+
+    private fun Char.maskBit(): Long = 1L shl (code and 63)
+
+    companion object {
+        const val MinScore = 0.8f
+        private const val MaxGramLength = 3
+    }
+}
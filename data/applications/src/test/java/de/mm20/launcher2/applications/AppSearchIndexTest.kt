@@ -0,0 +1,104 @@
+package de.mm20.launcher2.applications
+
+import de.mm20.launcher2.search.ResultScore
+import de.mm20.launcher2.search.StringNormalizer
+import org.junit.Assert
+import org.junit.Test
+
+/**
+ * Compares the results of [AppSearchIndex] with a full scan that scores every label, which is
+ * what app search did before the index was introduced.
+ */
+class AppSearchIndexTest {
+
+    private data class TestApp(
+        val key: String,
+        val label: String,
+        val score: ResultScore = ResultScore.Unspecified,
+    )
+
+    private val normalizer = object : StringNormalizer {
+        override val id: String = "lowercase"
+        override fun normalize(input: String): String = input.lowercase()
+    }
+
+    private val labels = listOf(
+        "Calendar", "Calculator", "Camera", "Clock", "Contacts", "Chrome", "Google Maps", "Maps",
+        "Gmail", "Mail", "Messages", "Settings", "Spotify", "Signal", "Firefox", "Files", "Photos",
+        "Kvaesitso", "Öffi", "Ärztekammer", "Wetter", "Календарь", "Камера", "カメラ", "时钟",
+        "Play Store", "YouTube", "YouTube Music", "K-9 Mail", "Authenticator", "A",
+    )
+
+    private val apps = labels.mapIndexed { i, label -> TestApp("app://$i", label) }
+
+    private fun createIndex(apps: List<TestApp> = this.apps) = AppSearchIndex<TestApp>(
+        normalizer,
+        getKey = { it.key },
+        getLabel = { it.label },
+        withScore = { app, score -> app.copy(score = score) },
+    ).apply { addAll(apps) }
+
+    private fun fullScan(query: String, apps: List<TestApp> = this.apps): Set<TestApp> {
+        return apps.mapNotNull {
+            val score = ResultScore.from(query, listOf(normalizer.normalize(it.label)))
+            if (score.score < AppSearchIndex.MinScore) null else it.copy(score = score)
+        }.toSet()
+    }
+
+    private val queries = listOf(
+        "c", "a", "k", "ö", "к", "カ", "时",
+        "ca", "cal", "calc", "calendar", "calender", "kalender", "camra", "maps", "mail",
+        "gogle", "setings", "spotfy", "youtube m", "k-9", "öffi", "offi", "ärzte",
+        "кал", "календарь", "камер", "カメ", "時钟", "xyz", "", "calendarcalendar",
+    )
+
+    @Test
+    fun matchesFullScan() {
+        val index = createIndex()
+        for (query in queries) {
+            Assert.assertEquals("query \"$query\"", fullScan(query), index.search(query).toSet())
+        }
+    }
+
+    @Test
+    fun matchesFullScanWhenRefined() {
+        val index = createIndex()
+        for (word in listOf("calendar", "youtube music", "календарь", "google maps", "kvaesitso")) {
+            var previous: String? = null
+            for (length in 1..word.length) {
+                val query = word.substring(0, length)
+                Assert.assertEquals(
+                    "query \"$query\" after \"$previous\"",
+                    fullScan(query),
+                    index.search(query, previous).toSet(),
+                )
+                previous = query
+            }
+        }
+    }
+
+    @Test
+    fun matchesFullScanWhenPreviousQueryIsNotRefined() {
+        val index = createIndex()
+        index.search("maps")
+        // "cal" doesn't extend "maps", so the previous matches must not be reused
+        Assert.assertEquals(fullScan("cal"), index.search("cal", "maps").toSet())
+        index.search("ca")
+        Assert.assertEquals(fullScan("cal"), index.search("cal", "xy").toSet())
+    }
+
+    @Test
+    fun matchesFullScanAfterChanges() {
+        val index = createIndex()
+        index.search("ca")
+
+        val added = TestApp("app://new", "Cal.com")
+        index.addAll(listOf(added))
+        index.removeAll { it.label == "Calculator" }
+        val current = apps.filter { it.label != "Calculator" } + added
+        Assert.assertEquals(fullScan("cal", current), index.search("cal", "ca").toSet())
+
+        index.replaceAll { if (it.key == "app://0") it.copy(key = "app://0") else it }
+        Assert.assertEquals(fullScan("cale", current), index.search("cale", "cal").toSet())
+    }
+}
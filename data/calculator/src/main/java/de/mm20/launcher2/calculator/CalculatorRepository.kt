@@ -1,5 +1,6 @@
 package de.mm20.launcher2.calculator
 
+import android.util.LruCache
 import de.mm20.launcher2.preferences.search.CalculatorSearchSettings
 import de.mm20.launcher2.search.data.Calculator
 import kotlinx.coroutines.Dispatchers
@@ -18,6 +19,16 @@ class CalculatorRepositoryImpl(
     private val settings: CalculatorSearchSettings
 ) : CalculatorRepository, KoinComponent {
 
+    /**
+     * A successfully parsed expression, or null if the query is not a valid expression.
+     */
+    private class ParsedExpression(val expression: Expression?)
+
+    /**
+     * Recently parsed expressions. Parsing and syntax checking is the expensive part of mXparser;
+     * expressions are still calculated on every search, so that random functions work as expected.
+     */
+    private val expressionCache = LruCache<String, ParsedExpression>(32)
 
     override fun search(query: String): Flow<Calculator?> {
         return settings.enabled.map {
@@ -31,39 +42,36 @@ class CalculatorRepositoryImpl(
 
     private suspend fun queryCalculator(query: String): Calculator? {
         return when {
-            query.matches(Regex("0x[0-9a-fA-F]+")) -> {
+            query.matches(HexRegex) -> {
                 val solution = query.substring(2).toIntOrNull(16) ?: run {
                     return null
                 }
                 Calculator(term = query, solution = solution.toDouble())
             }
 
-            query.matches(Regex("0b[01]+")) -> {
+            query.matches(BinaryRegex) -> {
                 val solution = query.substring(2).toIntOrNull(2) ?: run {
                     return null
                 }
                 Calculator(term = query, solution = solution.toDouble())
             }
 
-            query.matches(Regex("0[0-7]+")) -> {
+            query.matches(OctalRegex) -> {
                 val solution = query.substring(1).toIntOrNull(8) ?: run {
                     return null
                 }
                 Calculator(term = query, solution = solution.toDouble())
             }
 
+            !ExpressionPrefilter.mayBeExpression(query) -> null
+
             else -> {
                 withContext(Dispatchers.Default) {
+                    val expression = getExpression(query) ?: return@withContext null
                     try {
-                        val exp = Expression(query)
-                        if (exp.checkSyntax()) {
-                            Calculator(term = query, solution = exp.calculate())
-                        } else {
-                            val exp2 = Expression(query.replace(',', '.').replace(';', ','))
-                            if (exp2.checkSyntax()) {
-                                Calculator(term = query, solution = exp2.calculate())
-                            } else null
-                        }
+                        // Expressions are not thread safe
+                        val solution = synchronized(expression) { expression.calculate() }
+                        Calculator(term = query, solution = solution)
                     } catch (e: ArithmeticException) {
                         null
                     }
@@ -71,4 +79,27 @@ class CalculatorRepositoryImpl(
             }
         }
     }
-}
\ No newline at end of file
+
+    private fun getExpression(query: String): Expression? {
+        expressionCache.get(query)?.let { return it.expression }
+        val expression = try {
+            val exp = Expression(query)
+            if (exp.checkSyntax()) {
+                exp
+            } else {
+                val exp2 = Expression(query.replace(',', '.').replace(';', ','))
+                if (exp2.checkSyntax()) exp2 else null
+            }
+        } catch (e: ArithmeticException) {
+            null
+        }
+        expressionCache.put(query, ParsedExpression(expression))
+        return expression
+    }
+
+    companion object {
+        private val HexRegex = Regex("0x[0-9a-fA-F]+")
+        private val BinaryRegex = Regex("0b[01]+")
+        private val OctalRegex = Regex("0[0-7]+")
+    }
+}
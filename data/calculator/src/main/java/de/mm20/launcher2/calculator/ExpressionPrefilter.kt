@@ -0,0 +1,90 @@
+package de.mm20.launcher2.calculator
+
+import org.mariuszgromada.math.mxparser.Expression
+
+/**
+ * Cheap lexical check that rejects queries which mXparser would reject anyway, so that ordinary
+ * search queries (i.e. app names) never reach mXparser.
+ *
+ * A query can only be a valid expression if every word in it is an mXparser keyword (a function,
+ * a constant or an operator like `mod`), and if it doesn't contain any characters that don't
+ * occur in mXparser's syntax.
+ */
+internal object ExpressionPrefilter {
+
+    private val keywords: Set<String> by lazy {
+        Expression().keyWords.mapTo(HashSet()) { it.wordString }
+    }
+
+    /**
+     * All characters other than ASCII letters and digits that are part of a keyword, plus the characters that are
+     * used in number literals or replaced before parsing, and the percent and pi symbols, which
+     * are not listed as keywords in every mXparser version.
+     */
+    private val symbols: Set<Char> by lazy {
+        val symbols = keywords.flatMapTo(HashSet()) { word ->
+            word.filter { !it.isAsciiLetter() && it !in '0'..'9' && it != '_' }.toList()
+        }
+        symbols.addAll(listOf('.', ',', ';', '(', ')', '%', 'π'))
+        symbols
+    }
+
+    fun mayBeExpression(query: String): Boolean {
+        var i = 0
+        while (i < query.length) {
+            val c = query[i]
+            when {
+                c.isWhitespace() || c in '0'..'9' -> i++
+
+                c.isAsciiLetter() || c == '_' -> {
+                    val start = i
+                    while (i < query.length && (query[i].isAsciiLetter() || query[i] in '0'..'9' || query[i] == '_')) i++
+                    val word = query.substring(start, i)
+                    if (word in keywords) continue
+                    // Scientific notation, i.e. 1e5 or 2.5E-3
+                    if (start > 0 && query[start - 1].isDigitOrDot() && word.isExponent()) continue
+                    // Number literals with a base prefix, i.e. h.ff, b.101 or b16.ff
+                    if (i < query.length && query[i] == '.' && word.isBasePrefix()) {
+                        i++
+                        while (i < query.length && (query[i].isAsciiLetter() || query[i] in '0'..'9')) i++
+                        continue
+                    }
+                    // Number literals with a 0x, 0o or 0b prefix, i.e. 0xff or 0b101
+                    if (start > 0 && query[start - 1] == '0' && word.isRadixLiteral()) continue
+                    return false
+                }
+
+                c in symbols -> i++
+
+                else -> return false
+            }
+        }
+        return true
+    }
+
+    private fun Char.isAsciiLetter() = this in 'a'..'z' || this in 'A'..'Z'
+
+    private fun Char.isDigitOrDot() = this in '0'..'9' || this == '.'
+
+    private fun String.isExponent(): Boolean {
+        if (length < 1 || (this[0] != 'e' && this[0] != 'E')) return false
+        // A trailing sign is lexed as a separate symbol, so "e" alone is accepted too
+        return drop(1).all { it in '0'..'9' }
+    }
+
+    private fun String.isRadixLiteral(): Boolean {
+        if (length < 2) return false
+        val digits = when (this[0]) {
+            'x', 'X' -> return drop(1).all { it in '0'..'9' || it in 'a'..'f' || it in 'A'..'F' }
+            'o', 'O' -> '0'..'7'
+            'b', 'B' -> '0'..'1'
+            else -> return false
+        }
+        return drop(1).all { it in digits }
+    }
+
+    private fun String.isBasePrefix(): Boolean {
+        return this == "h" || this == "o" || this == "b" ||
+                (length > 1 && this[0] == 'b' && drop(1).all { it in '0'..'9' })
+    }
+}
@@ -0,0 +1,31 @@
+package de.mm20.launcher2.calculator
+
+import org.junit.Assert
+import org.junit.Test
+
+class ExpressionPrefilterTest {
+
+    @Test
+    fun acceptsExpressions() {
+        val expressions = listOf(
+            "2^10", "sqrt(2)", "5!", "10%", "π*2", "1,5*2", "0xff+1", "0b101", "0o17*2", "1e-3",
+            "2.5E3", "10 mod 3", "sin(pi/2)", "h.ff", "b16.ff+1", "2 + 2", "max(1; 2)", "(1+2)*3",
+            "ln(e)", "1/3",
+        )
+        for (expression in expressions) {
+            Assert.assertTrue(expression, ExpressionPrefilter.mayBeExpression(expression))
+        }
+    }
+
+    @Test
+    fun rejectsWords() {
+        val queries = listOf(
+            "calendar", "Google Maps", "firefox", "spotify", "wetter", "kvaesitso", "camera",
+            "Öffi", "Календарь", "カメラ", "how to bake bread", "12 apples", "2 + banana",
+            "0xfg", "0b102", "mail@example.com", "K-9 Mail",
+        )
+        for (query in queries) {
+            Assert.assertFalse(query, ExpressionPrefilter.mayBeExpression(query))
+        }
+    }
+}
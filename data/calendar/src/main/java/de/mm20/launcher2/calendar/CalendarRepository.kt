@@ -46,6 +46,7 @@ internal class CalendarRepositoryImpl(
     private val permissionsManager: PermissionsManager,
     private val pluginRepository: PluginRepository,
     private val settings: CalendarSearchSettings,
+    private val androidCalendarProvider: AndroidCalendarProvider,
 ) : CalendarRepository {
 
     override fun search(query: String, allowNetwork: Boolean): Flow<ImmutableList<CalendarEvent>> {
@@ -68,7 +69,7 @@ internal class CalendarRepositoryImpl(
         ) { calPerm, taskPerm, providerIds, excludedCalendars ->
             val providers = providerIds.mapNotNull {
                 when (it) {
-                    "local" -> if (calPerm) AndroidCalendarProvider(context) else null
+                    "local" -> if (calPerm) androidCalendarProvider else null
                     "tasks.org" -> if (taskPerm) TasksCalendarProvider(context) else null
                     else -> PluginCalendarProvider(context, it)
                 }
@@ -101,9 +102,16 @@ internal class CalendarRepositoryImpl(
             type = PluginType.Calendar,
             enabled = true,
         )
-        return combineTransform(hasCalendarPermission, hasTasksPermission, plugins) { calPerm, taskPerm, plugins ->
+        // Events of the local calendar provider are cached by the provider, so re-collecting this
+        // flow is cheap; it is only queried again when the calendar provider reports a change.
+        return combineTransform(
+            hasCalendarPermission,
+            hasTasksPermission,
+            plugins,
+            androidCalendarProvider.changes,
+        ) { calPerm, taskPerm, plugins, _ ->
             val providers = buildList {
-                if (calPerm) add(AndroidCalendarProvider(context)) else null
+                if (calPerm) add(androidCalendarProvider) else null
                 if (taskPerm) add(TasksCalendarProvider(context)) else null
                 addAll(
                     plugins.map {
@@ -140,7 +148,7 @@ internal class CalendarRepositoryImpl(
 
             for (provider in providers) {
                 launch {
-                    val r = provider.search(
+                    provider.searchPages(
                         query,
                         from = intervalStart,
                         to = intervalEnd,
@@ -150,9 +158,10 @@ internal class CalendarRepositoryImpl(
                         },
                         excludeAllDayEvents = excludeAllDayEvents,
                         allowNetwork = allowNetwork,
-                    )
-                    result.update {
-                        (it + r).toPersistentList()
+                    ).collect { r ->
+                        result.update {
+                            (it + r).toPersistentList()
+                        }
                     }
                 }
             }
@@ -167,11 +176,7 @@ internal class CalendarRepositoryImpl(
         val providers: Flow<List<CalendarProvider>> = if (providerId != null) {
             when (providerId) {
                 "local" -> hasCalendarPermission.map {
-                    if (it) listOf(
-                        AndroidCalendarProvider(
-                            context
-                        )
-                    ) else emptyList()
+                    if (it) listOf(androidCalendarProvider) else emptyList()
                 }
 
                 "tasks.org" -> hasTaskPermission.map { if (it) listOf(TasksCalendarProvider(context)) else emptyList() }
@@ -195,7 +200,7 @@ internal class CalendarRepositoryImpl(
                 plugins
             ) { calPerm, tasksPerm, plugins ->
                 buildList {
-                    if (calPerm) add(AndroidCalendarProvider(context))
+                    if (calPerm) add(androidCalendarProvider)
                     if (tasksPerm) add(TasksCalendarProvider(context))
                     addAll(plugins.map { PluginCalendarProvider(context, it.authority) })
                 }
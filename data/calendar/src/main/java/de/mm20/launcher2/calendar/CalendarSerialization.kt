@@ -39,12 +39,15 @@ class AndroidCalendarEventSerializer: SearchableSerializer {
         get() = AndroidCalendarEvent.Domain
 }
 
-class AndroidCalendarEventDeserializer(val context: Context): SearchableDeserializer {
+class AndroidCalendarEventDeserializer(
+    val context: Context,
+    private val provider: AndroidCalendarProvider,
+): SearchableDeserializer {
     override suspend fun deserialize(serialized: String): SavableSearchable? {
         if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_CALENDAR) != PackageManager.PERMISSION_GRANTED) return null
         val json = JSONObject(serialized)
         val id = json.getLong("id")
-        return AndroidCalendarProvider(context).get(id)
+        return provider.get(id)
     }
 }
 
@@ -1,6 +1,7 @@
 package de.mm20.launcher2.calendar
 
 import de.mm20.launcher2.calendar.providers.AndroidCalendarEvent
+import de.mm20.launcher2.calendar.providers.AndroidCalendarProvider
 import de.mm20.launcher2.calendar.providers.PluginCalendarEvent
 import de.mm20.launcher2.calendar.providers.TasksCalendarEvent
 import de.mm20.launcher2.search.CalendarEvent
@@ -12,8 +13,9 @@ import org.koin.dsl.module
 
 val calendarModule = module {
     factory<SearchableRepository<CalendarEvent>>(named<CalendarEvent>()) { get<CalendarRepository>() }
-    factory<CalendarRepository> { CalendarRepositoryImpl(androidContext(), get(), get(), get()) }
-    factory<SearchableDeserializer>(named(AndroidCalendarEvent.Domain)) { AndroidCalendarEventDeserializer(androidContext()) }
+    single { AndroidCalendarProvider(androidContext()) }
+    factory<CalendarRepository> { CalendarRepositoryImpl(androidContext(), get(), get(), get(), get()) }
+    factory<SearchableDeserializer>(named(AndroidCalendarEvent.Domain)) { AndroidCalendarEventDeserializer(androidContext(), get()) }
     factory<SearchableDeserializer>(named(TasksCalendarEvent.Domain)) { TasksCalendarEventDeserializer(androidContext()) }
     factory<SearchableDeserializer>(named(PluginCalendarEvent.Domain)) { PluginCalendarEventDeserializer(androidContext(), get()) }
 }
\ No newline at end of file
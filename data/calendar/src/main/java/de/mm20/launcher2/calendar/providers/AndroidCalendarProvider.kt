@@ -2,18 +2,68 @@ package de.mm20.launcher2.calendar.providers
 
 import android.content.ContentUris
 import android.content.Context
+import android.database.ContentObserver
 import android.provider.CalendarContract
+import android.util.LruCache
 import androidx.core.database.getStringOrNull
 import de.mm20.launcher2.permissions.PermissionGroup
 import de.mm20.launcher2.search.CalendarEvent
 import de.mm20.launcher2.search.calendar.CalendarListType
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.withContext
 import java.util.Calendar
 
 class AndroidCalendarProvider(
     private val context: Context,
 ): CalendarProvider {
+
+    private data class CacheKey(
+        val excludedCalendars: List<String>,
+        val excludeAllDayEvents: Boolean,
+    )
+
+    private class CachedInstance(
+        val begin: Long,
+        val end: Long,
+        val event: AndroidCalendarEvent,
+    )
+
+    /**
+     * All instances between [from] and [to] that match a [CacheKey].
+     */
+    private class InstancesCache(
+        val from: Long,
+        val to: Long,
+        val instances: List<CachedInstance>,
+    )
+
+    private val cacheLock = Any()
+    private val cache = LruCache<CacheKey, InstancesCache>(4)
+
+    /**
+     * Incremented on every change to the calendar provider, so that results of queries that were
+     * running during the change are not cached.
+     */
+    private val cacheVersion = MutableStateFlow(0)
+    private var observerRegistered = false
+
+    private val contentObserver = object : ContentObserver(null) {
+        override fun onChange(selfChange: Boolean) {
+            synchronized(cacheLock) {
+                cache.evictAll()
+                cacheVersion.update { it + 1 }
+            }
+        }
+    }
+
+    /**
+     * Emits whenever the events of the calendar provider have changed since the last search.
+     */
+    val changes: Flow<Int> = cacheVersion
+
     override suspend fun search(
         query: String?,
         from: Long,
@@ -22,87 +72,146 @@ class AndroidCalendarProvider(
         excludeAllDayEvents: Boolean,
         allowNetwork: Boolean
     ): List<CalendarEvent> {
-        val results = withContext(Dispatchers.IO) {
-            val results = mutableListOf<AndroidCalendarEvent>()
-            val builder = CalendarContract.Instances.CONTENT_URI.buildUpon()
-            ContentUris.appendId(builder, from)
-            ContentUris.appendId(builder, to)
-            val uri = builder.build()
-            val projection = arrayOf(
-                CalendarContract.Instances.EVENT_ID,
-                CalendarContract.Instances.TITLE,
-                CalendarContract.Instances.BEGIN,
-                CalendarContract.Instances.END,
-                CalendarContract.Instances.ALL_DAY,
-                CalendarContract.Instances.DISPLAY_COLOR,
-                CalendarContract.Instances.EVENT_LOCATION,
-                CalendarContract.Instances.CALENDAR_ID,
-                CalendarContract.Instances.DESCRIPTION,
-                CalendarContract.Instances.CALENDAR_DISPLAY_NAME,
-            )
-            val selection = mutableListOf<String>()
-            if (query != null) selection.add("${CalendarContract.Instances.TITLE} LIKE ?")
-            if (excludedCalendars.isNotEmpty()) selection.add("${CalendarContract.Instances.CALENDAR_ID} NOT IN (${excludedCalendars.joinToString()})")
-            if (excludeAllDayEvents) selection.add("${CalendarContract.Instances.ALL_DAY} = 0")
-            val selArgs = if (query != null) arrayOf("%$query%") else null
-            val sort = "${CalendarContract.Instances.BEGIN} ASC"
-            val cursor = context.contentResolver.query(
-                uri,
-                projection,
-                selection.joinToString(separator = " AND "),
-                selArgs,
-                sort
-            ) ?: return@withContext mutableListOf()
-            val proj = arrayOf(
-                CalendarContract.Attendees.EVENT_ID,
-                CalendarContract.Attendees.ATTENDEE_NAME,
-                CalendarContract.Attendees.ATTENDEE_EMAIL
-            )
-            val s = "${CalendarContract.Attendees.ATTENDEE_NAME} COLLATE NOCASE ASC"
-            while (cursor.moveToNext()) {
-                val sel = "${CalendarContract.Attendees.EVENT_ID} = ${cursor.getLong(0)}"
-                val cur = context.contentResolver.query(
-                    CalendarContract.Attendees.CONTENT_URI,
-                    proj, sel, null, s
-                ) ?: return@withContext mutableListOf()
-                val attendees = mutableListOf<String>()
-                while (cur.moveToNext()) {
-                    attendees.add(
-                        cur.getStringOrNull(1).takeUnless { it.isNullOrBlank() }
-                            ?: cur.getStringOrNull(2)
-                            ?: continue
-                    )
+        if (query != null) {
+            return withContext(Dispatchers.IO) {
+                queryInstances(query, from, to, excludedCalendars, excludeAllDayEvents)
+                    .map { it.event }
+            }
+        }
+        return withContext(Dispatchers.IO) {
+            val key = CacheKey(excludedCalendars, excludeAllDayEvents)
+            val version = synchronized(cacheLock) {
+                registerObserver()
+                val cached = cache.get(key)
+                if (cached != null && cached.from <= from && cached.to >= to) {
+                    return@withContext cached.instances
+                        .filter { it.begin <= to && it.end >= from }
+                        .map { it.event }
                 }
-                cur.close()
-                val allday = cursor.getInt(4) > 0
-                val begin = cursor.getLong(2)
-
-                val tzOffset = if (allday) {
-                    Calendar.getInstance().timeZone.getOffset(begin)
-                } else {
-                    0
+                cacheVersion.value
+            }
+            // Query a bit more than requested, so that the cache can still be used when the
+            // requested interval moves forward a little (i.e. when the widget is shown again).
+            val cacheTo = to + CacheSlack
+            val instances = queryInstances(null, from, cacheTo, excludedCalendars, excludeAllDayEvents)
+            synchronized(cacheLock) {
+                if (version == cacheVersion.value) {
+                    cache.put(key, InstancesCache(from, cacheTo, instances))
                 }
-                val event = AndroidCalendarEvent(
-                    label = cursor.getStringOrNull(1) ?: continue,
-                    id = cursor.getLong(0),
-                    color = cursor.getInt(5),
-                    startTime = begin - tzOffset,
-                    endTime = cursor.getLong(3) - tzOffset - if (allday) 1 else 0,
-                    allDay = allday,
-                    location = cursor.getStringOrNull(6) ?: "",
-                    attendees = attendees,
-                    description = cursor.getStringOrNull(8)
-                        ?: "",
-                    calendarId = cursor.getLong(7),
-                    calendarName = cursor.getStringOrNull(9)
-                )
-                results.add(event)
             }
-            cursor.close()
-            return@withContext results
+            instances.filter { it.begin <= to }.map { it.event }
+        }
+    }
+
+    private fun registerObserver() {
+        if (observerRegistered) return
+        context.contentResolver.registerContentObserver(
+            CalendarContract.Instances.CONTENT_URI, true, contentObserver
+        )
+        observerRegistered = true
+    }
+
+    private fun queryInstances(
+        query: String?,
+        from: Long,
+        to: Long,
+        excludedCalendars: List<String>,
+        excludeAllDayEvents: Boolean,
+    ): List<CachedInstance> {
+        val builder = CalendarContract.Instances.CONTENT_URI.buildUpon()
+        ContentUris.appendId(builder, from)
+        ContentUris.appendId(builder, to)
+        val uri = builder.build()
+        val projection = arrayOf(
+            CalendarContract.Instances.EVENT_ID,
+            CalendarContract.Instances.TITLE,
+            CalendarContract.Instances.BEGIN,
+            CalendarContract.Instances.END,
+            CalendarContract.Instances.ALL_DAY,
+            CalendarContract.Instances.DISPLAY_COLOR,
+            CalendarContract.Instances.EVENT_LOCATION,
+            CalendarContract.Instances.CALENDAR_ID,
+            CalendarContract.Instances.DESCRIPTION,
+            CalendarContract.Instances.CALENDAR_DISPLAY_NAME,
+        )
+        val selection = mutableListOf<String>()
+        if (query != null) selection.add("${CalendarContract.Instances.TITLE} LIKE ?")
+        if (excludedCalendars.isNotEmpty()) selection.add("${CalendarContract.Instances.CALENDAR_ID} NOT IN (${excludedCalendars.joinToString()})")
+        if (excludeAllDayEvents) selection.add("${CalendarContract.Instances.ALL_DAY} = 0")
+        val selArgs = if (query != null) arrayOf("%$query%") else null
+        val sort = "${CalendarContract.Instances.BEGIN} ASC"
+        val cursor = context.contentResolver.query(
+            uri,
+            projection,
+            selection.joinToString(separator = " AND "),
+            selArgs,
+            sort
+        ) ?: return emptyList()
+        val instances = mutableListOf<CachedInstance>()
+        while (cursor.moveToNext()) {
+            val allday = cursor.getInt(4) > 0
+            val begin = cursor.getLong(2)
+            val end = cursor.getLong(3)
+
+            val tzOffset = if (allday) {
+                Calendar.getInstance().timeZone.getOffset(begin)
+            } else {
+                0
+            }
+            val event = AndroidCalendarEvent(
+                label = cursor.getStringOrNull(1) ?: continue,
+                id = cursor.getLong(0),
+                color = cursor.getInt(5),
+                startTime = begin - tzOffset,
+                endTime = end - tzOffset - if (allday) 1 else 0,
+                allDay = allday,
+                location = cursor.getStringOrNull(6) ?: "",
+                attendees = emptyList(),
+                description = cursor.getStringOrNull(8)
+                    ?: "",
+                calendarId = cursor.getLong(7),
+                calendarName = cursor.getStringOrNull(9)
+            )
+            instances.add(CachedInstance(begin, end, event))
+        }
+        cursor.close()
+
+        val attendees = queryAttendees(instances.map { it.event.id })
+        if (attendees.isEmpty()) return instances
+        return instances.map {
+            val eventAttendees = attendees[it.event.id] ?: return@map it
+            CachedInstance(it.begin, it.end, it.event.copy(attendees = eventAttendees))
         }
+    }
 
-        return results
+    /**
+     * Load the attendees of all given events at once.
+     * @return a map of event IDs to attendee names (or email addresses, if there is no name)
+     */
+    private fun queryAttendees(eventIds: Collection<Long>): Map<Long, List<String>> {
+        if (eventIds.isEmpty()) return emptyMap()
+        val attendees = mutableMapOf<Long, MutableList<String>>()
+        val proj = arrayOf(
+            CalendarContract.Attendees.EVENT_ID,
+            CalendarContract.Attendees.ATTENDEE_NAME,
+            CalendarContract.Attendees.ATTENDEE_EMAIL
+        )
+        val s = "${CalendarContract.Attendees.ATTENDEE_NAME} COLLATE NOCASE ASC"
+        for (chunk in eventIds.distinct().chunked(MaxEventIdsPerQuery)) {
+            val sel = "${CalendarContract.Attendees.EVENT_ID} IN (${chunk.joinToString()})"
+            val cur = context.contentResolver.query(
+                CalendarContract.Attendees.CONTENT_URI,
+                proj, sel, null, s
+            ) ?: continue
+            while (cur.moveToNext()) {
+                val attendee = cur.getStringOrNull(1).takeUnless { it.isNullOrBlank() }
+                    ?: cur.getStringOrNull(2)
+                    ?: continue
+                attendees.getOrPut(cur.getLong(0)) { mutableListOf() }.add(attendee)
+            }
+            cur.close()
+        }
+        return attendees
     }
 
     suspend fun get(id: Long): CalendarEvent? = withContext(Dispatchers.IO) {
@@ -137,26 +246,7 @@ class AndroidCalendarProvider(
             val description = cursor.getStringOrNull(8)
             val calendarName = cursor.getStringOrNull(9)
             cursor.close()
-            val proj = arrayOf(
-                CalendarContract.Attendees.EVENT_ID,
-                CalendarContract.Attendees.ATTENDEE_NAME,
-                CalendarContract.Attendees.ATTENDEE_EMAIL
-            )
-            val sel = "${CalendarContract.Attendees.EVENT_ID} = $id"
-            val s = "${CalendarContract.Attendees.ATTENDEE_NAME} COLLATE NOCASE ASC"
-            val cur = context.contentResolver.query(
-                CalendarContract.Attendees.CONTENT_URI,
-                proj, sel, null, s
-            ) ?: return@withContext null
-            val attendees = mutableListOf<String>()
-            while (cur.moveToNext()) {
-                attendees.add(
-                    cur.getStringOrNull(1).takeUnless { it.isNullOrBlank() }
-                        ?: cur.getStringOrNull(2)
-                        ?: continue
-                )
-            }
-            cur.close()
+            val attendees = queryAttendees(listOf(id))[id] ?: emptyList()
             val tzOffset = if (allday) {
                 Calendar.getInstance().timeZone.getOffset(begin)
             } else {
@@ -217,4 +307,9 @@ class AndroidCalendarProvider(
     }
 
     override val namespace: String = "local"
+
+    companion object {
+        private const val CacheSlack = 24 * 60 * 60 * 1000L
+        private const val MaxEventIdsPerQuery = 500
+    }
 }
\ No newline at end of file
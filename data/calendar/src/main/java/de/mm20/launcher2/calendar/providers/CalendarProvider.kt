@@ -1,6 +1,8 @@
 package de.mm20.launcher2.calendar.providers
 
 import de.mm20.launcher2.search.CalendarEvent
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
 
 internal interface CalendarProvider {
     suspend fun search(
@@ -12,6 +14,21 @@ internal interface CalendarProvider {
         allowNetwork: Boolean = false,
     ): List<CalendarEvent>
 
+    /**
+     * Like [search], but emits the results in pages as soon as they are available. Each page only
+     * contains new results. By default, all results are emitted as a single page.
+     */
+    fun searchPages(
+        query: String?,
+        from: Long,
+        to: Long,
+        excludedCalendars: List<String>,
+        excludeAllDayEvents: Boolean,
+        allowNetwork: Boolean,
+    ): Flow<List<CalendarEvent>> = flow {
+        emit(search(query, from, to, excludedCalendars, excludeAllDayEvents, allowNetwork))
+    }
+
     suspend fun getCalendarLists(): List<CalendarList>
 
     val namespace: String
@@ -17,6 +17,7 @@ import de.mm20.launcher2.search.UpdateResult
 import de.mm20.launcher2.search.asUpdateResult
 import de.mm20.launcher2.search.calendar.CalendarQuery
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.withContext
 import kotlin.coroutines.resume
@@ -46,6 +47,26 @@ class PluginCalendarProvider(
         )
     }
 
+    override fun searchPages(
+        query: String?,
+        from: Long,
+        to: Long,
+        excludedCalendars: List<String>,
+        excludeAllDayEvents: Boolean,
+        allowNetwork: Boolean
+    ): Flow<List<CalendarEvent>> {
+        return searchPages(
+            CalendarQuery(
+                query = query,
+                start = from,
+                end = to,
+                excludedCalendars = excludedCalendars,
+            ),
+            allowNetwork,
+            limit = null,
+        )
+    }
+
     override fun Uri.Builder.appendQueryParameters(query: CalendarQuery): Uri.Builder {
         if (query.query != null) {
             appendQueryParameter(
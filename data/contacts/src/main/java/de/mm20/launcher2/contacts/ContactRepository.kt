@@ -22,9 +22,26 @@ internal class ContactRepository(
     private val context: Context,
     private val permissionsManager: PermissionsManager,
     private val settings: ContactSearchSettings,
+    private val androidContactProvider: AndroidContactProvider,
 ) : SearchableRepository<Contact> {
 
     override fun search(query: String, allowNetwork: Boolean): Flow<List<Contact>> {
+        return searchContacts(query, null, allowNetwork)
+    }
+
+    override fun refine(
+        query: String,
+        previousQuery: String,
+        allowNetwork: Boolean
+    ): Flow<List<Contact>> {
+        return searchContacts(query, previousQuery, allowNetwork)
+    }
+
+    private fun searchContacts(
+        query: String,
+        previousQuery: String?,
+        allowNetwork: Boolean,
+    ): Flow<List<Contact>> {
         val hasPermission = permissionsManager.hasPermission(PermissionGroup.Contacts)
 
         if (query.length < 2) {
@@ -36,7 +53,7 @@ internal class ContactRepository(
         return hasPermission.combineTransform(settings.enabledProviders) { perm, providerIds ->
             val providers = providerIds.mapNotNull {
                 when (it) {
-                    "local" -> if (perm) AndroidContactProvider(context) else null
+                    "local" -> if (perm) androidContactProvider else null
                     else -> PluginContactProvider(context, it)
                 }
             }
@@ -46,11 +63,17 @@ internal class ContactRepository(
 
                 for (provider in providers) {
                     launch {
-                        val r = provider.search(
-                            query,
-                            allowNetwork = allowNetwork,
-                        )
-                        result.update { it + r }
+                        if (provider is AndroidContactProvider && previousQuery != null) {
+                            val r = provider.refine(query, previousQuery)
+                            result.update { it + r }
+                        } else {
+                            provider.searchPages(
+                                query,
+                                allowNetwork = allowNetwork,
+                            ).collect { r ->
+                                result.update { it + r }
+                            }
+                        }
                     }
                 }
                 emitAll(result)
@@ -88,7 +88,7 @@ internal class PluginContactSerializer : SearchableSerializer {
 }
 
 internal class AndroidContactDeserializer(
-    private val context: Context,
+    private val androidContactProvider: AndroidContactProvider,
     private val permissionsManager: PermissionsManager
 ) : SearchableDeserializer {
 
@@ -96,8 +96,6 @@ internal class AndroidContactDeserializer(
         if (!permissionsManager.checkPermissionOnce(PermissionGroup.Contacts)) return null
         val id = JSONObject(serialized).getLong("id")
 
-        val androidContactProvider = AndroidContactProvider(context)
-
         return androidContactProvider.get(id)
     }
 }
@@ -1,6 +1,7 @@
 package de.mm20.launcher2.contacts
 
 import de.mm20.launcher2.contacts.providers.AndroidContact
+import de.mm20.launcher2.contacts.providers.AndroidContactProvider
 import de.mm20.launcher2.contacts.providers.PluginContact
 import de.mm20.launcher2.search.Contact
 import de.mm20.launcher2.search.SearchableDeserializer
@@ -10,8 +11,9 @@ import org.koin.core.qualifier.named
 import org.koin.dsl.module
 
 val contactsModule = module {
-    factory { ContactRepository(androidContext(), get(), get()) }
+    single { AndroidContactProvider(androidContext()) }
+    factory { ContactRepository(androidContext(), get(), get(), get()) }
     factory<SearchableRepository<Contact>>(named<Contact>()) { get<ContactRepository>() }
-    factory<SearchableDeserializer>(named(AndroidContact.Domain)) { AndroidContactDeserializer(androidContext(), get()) }
+    factory<SearchableDeserializer>(named(AndroidContact.Domain)) { AndroidContactDeserializer(get(), get()) }
     factory<SearchableDeserializer>(named(PluginContact.Domain)) { PluginContactDeserializer(androidContext(), get()) }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package de.mm20.launcher2.contacts.providers
 
 import android.content.ContentUris
 import android.content.Context
+import android.database.ContentObserver
 import android.os.Build
 import android.provider.ContactsContract
 import android.telephony.PhoneNumberUtils
@@ -19,21 +20,81 @@ import kotlinx.coroutines.withContext
 
 /**
  * A contact provider that uses the Android ContactsContract API to search for contacts.
+ *
+ * Contacts that have been materialized for the previous query are cached, so that they can be
+ * reused when the search is refined (i.e. the user types another character). If the previous
+ * search wasn't truncated, the refined search only considers the contacts of the previous search.
+ * The cache is cleared when the contacts provider reports a change.
  */
 internal class AndroidContactProvider(
     private val context: Context,
 ) : ContactProvider {
+
+    private class CachedContact(
+        val rawIds: Set<Long>,
+        val contact: Contact?,
+    )
+
+    private class SearchCache(
+        val query: String,
+        val contacts: Map<Long, CachedContact>,
+        /**
+         * Whether all contacts that matched [query] are in [contacts]
+         */
+        val complete: Boolean,
+    )
+
+    private val cacheLock = Any()
+    private var cache: SearchCache? = null
+
+    /**
+     * Incremented on every change to the contacts provider, so that results of searches that were
+     * running during the change are not cached.
+     */
+    private var cacheVersion = 0
+    private var observerRegistered = false
+
+    private val contentObserver = object : ContentObserver(null) {
+        override fun onChange(selfChange: Boolean) {
+            synchronized(cacheLock) {
+                cache = null
+                cacheVersion++
+            }
+        }
+    }
+
     override suspend fun search(
         query: String,
         allowNetwork: Boolean
     ): List<Contact> {
+        return searchContacts(query, null)
+    }
+
+    /**
+     * Like [search], but reuses the contacts of the previous search if it was a search for
+     * [previousQuery] and [query] extends it.
+     */
+    suspend fun refine(query: String, previousQuery: String): List<Contact> {
+        return searchContacts(query, previousQuery)
+    }
+
+    private suspend fun searchContacts(query: String, previousQuery: String?): List<Contact> {
         val results = withContext(Dispatchers.IO) {
+            val version = synchronized(cacheLock) { cacheVersion }
+            val previous = getCache(query, previousQuery)
             val proj = arrayOf(
                 ContactsContract.RawContacts.CONTACT_ID,
                 ContactsContract.RawContacts._ID
             )
-            val sel =
-                "${ContactsContract.RawContacts.DISPLAY_NAME_PRIMARY} LIKE ? OR ${ContactsContract.RawContacts.DISPLAY_NAME_ALTERNATIVE} LIKE ? OR ${ContactsContract.RawContacts.PHONETIC_NAME} LIKE ? OR ${ContactsContract.RawContacts.SORT_KEY_PRIMARY} LIKE ?"
+            var sel =
+                "(${ContactsContract.RawContacts.DISPLAY_NAME_PRIMARY} LIKE ? OR ${ContactsContract.RawContacts.DISPLAY_NAME_ALTERNATIVE} LIKE ? OR ${ContactsContract.RawContacts.PHONETIC_NAME} LIKE ? OR ${ContactsContract.RawContacts.SORT_KEY_PRIMARY} LIKE ?)"
+            if (previous?.complete == true) {
+                if (previous.contacts.isEmpty()) {
+                    putCache(SearchCache(query, emptyMap(), complete = true), version)
+                    return@withContext mutableListOf()
+                }
+                sel += " AND ${ContactsContract.RawContacts.CONTACT_ID} IN (${previous.contacts.keys.joinToString(", ")})"
+            }
             val selArgs = arrayOf("%$query%", "%$query%", "%$query%", "%$query%")
             val cursor = context.contentResolver.query(
                 ContactsContract.RawContacts.CONTENT_URI, proj, sel, selArgs, null
@@ -44,34 +105,90 @@ internal class AndroidContactProvider(
                 contactMap.getOrPut(cursor.getLong(0)) { mutableSetOf() }.add(cursor.getLong(1))
             }
             cursor.close()
+
+            val previousContacts = previous?.contacts ?: emptyMap()
+            val materialized = mutableMapOf<Long, CachedContact>()
             val results = mutableListOf<Contact>()
-            for ((id, rawIds) in contactMap) {
-                getWithRawIds(id, rawIds)?.let { results.add(it) }
-                if (results.size > 15) break
+            // Contacts are loaded in chunks of MaxResults, because some contacts may turn out to
+            // be invalid (i.e. they don't have a name); usually, the first chunk is sufficient.
+            for (chunk in contactMap.entries.chunked(MaxResults)) {
+                val missing = chunk.filter { (id, rawIds) ->
+                    previousContacts[id]?.rawIds != rawIds
+                }.associate { it.key to it.value }
+                val loaded = getWithRawIds(missing)
+                for ((id, rawIds) in chunk) {
+                    val contact = if (id in missing) loaded[id] else previousContacts[id]?.contact
+                    materialized[id] = CachedContact(rawIds, contact)
+                    if (contact != null) results.add(contact)
+                    if (results.size >= MaxResults) break
+                }
+                if (results.size >= MaxResults) break
             }
+            putCache(
+                SearchCache(query, materialized, complete = materialized.size == contactMap.size),
+                version,
+            )
             results
         }
         return results
     }
 
     /**
-     * Combine the given raw contact ids into a single contact.
+     * Returns the cache of the previous search if it was a search for [previousQuery] and [query]
+     * extends it, or null otherwise.
      */
-    private suspend fun getWithRawIds(id: Long, rawIds: Set<Long>): Contact? =
+    private fun getCache(query: String, previousQuery: String?): SearchCache? {
+        synchronized(cacheLock) {
+            if (!observerRegistered) {
+                context.contentResolver.registerContentObserver(
+                    ContactsContract.AUTHORITY_URI, true, contentObserver
+                )
+                observerRegistered = true
+            }
+            val cache = cache ?: return null
+            if (previousQuery == null || cache.query != previousQuery) return null
+            if (!query.contains(previousQuery)) return null
+            return cache
+        }
+    }
+
+    private fun putCache(cache: SearchCache, version: Int) {
+        synchronized(cacheLock) {
+            if (version == cacheVersion) this.cache = cache
+        }
+    }
+
+    /**
+     * Combine the given raw contact ids into contacts. All data rows are fetched in a single query.
+     * @param contacts maps contact ids to the raw contact ids that should be combined
+     * @return a map of contact ids to contacts, or to null if a contact doesn't have a name
+     */
+    private suspend fun getWithRawIds(contacts: Map<Long, Set<Long>>): Map<Long, Contact?> =
         withContext(Dispatchers.IO) {
+            if (contacts.isEmpty()) return@withContext emptyMap()
+            val rawIds = contacts.values.flatten()
             val s = "${ContactsContract.Data.RAW_CONTACT_ID} IN (${rawIds.joinToString(", ")})"
+            // The columns of the common data kinds (i.e. Email.ADDRESS, Phone.NUMBER, …) are
+            // aliases of the generic DATA1..DATA3 columns.
+            val proj = arrayOf(
+                ContactsContract.Data._ID,
+                ContactsContract.Data.CONTACT_ID,
+                ContactsContract.Data.LOOKUP_KEY,
+                ContactsContract.Data.MIMETYPE,
+                ContactsContract.Data.ACCOUNT_TYPE_AND_DATA_SET,
+                ContactsContract.Data.DATA1,
+                ContactsContract.Data.DATA2,
+                ContactsContract.Data.DATA3,
+            )
             val dataCursor = context.contentResolver.query(
                 ContactsContract.Data.CONTENT_URI,
-                null, s, null, null
-            ) ?: return@withContext null
-            var firstName: String? = null
-            var lastName: String? = null
-            var displayName: String? = null
-            val phoneNumbers = mutableListOf<PhoneNumber>()
-            val emailAddresses = mutableListOf<EmailAddress>()
-            val postalAddresses = mutableListOf<PostalAddress>()
-            val customActions = mutableListOf<CustomContactAction>()
+                proj, s, null, null
+            ) ?: return@withContext emptyMap()
+
+            val builders = mutableMapOf<Long, ContactBuilder>()
 
+            val contactIdColumn = dataCursor.getColumnIndex(ContactsContract.Data.CONTACT_ID)
+            val lookupKeyColumn = dataCursor.getColumnIndex(ContactsContract.Data.LOOKUP_KEY)
             val mimeTypeColumn = dataCursor.getColumnIndex(ContactsContract.Data.MIMETYPE)
             val typeColumn =
                 dataCursor.getColumnIndex(ContactsContract.CommonDataKinds.Contactables.TYPE)
@@ -93,10 +210,16 @@ internal class AndroidContactProvider(
             val data3Column = dataCursor.getColumnIndex(ContactsContract.Data.DATA3)
             val idColumn = dataCursor.getColumnIndex(ContactsContract.Data._ID)
             loop@ while (dataCursor.moveToNext()) {
+                val contactId = dataCursor.getLong(contactIdColumn)
+                if (contactId !in contacts) continue
+                val builder = builders.getOrPut(contactId) { ContactBuilder() }
+                if (builder.lookupKey == null) {
+                    builder.lookupKey = dataCursor.getStringOrNull(lookupKeyColumn)
+                }
                 when (dataCursor.getStringOrNull(mimeTypeColumn)) {
                     ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE ->
                         dataCursor.getStringOrNull(emailAddressColumn)?.let {
-                            emailAddresses += EmailAddress(
+                            builder.emailAddresses += EmailAddress(
                                 it,
                                 when (dataCursor.getInt(typeColumn)) {
                                     ContactsContract.CommonDataKinds.Email.TYPE_HOME -> ContactInfoType.Home
@@ -109,7 +232,7 @@ internal class AndroidContactProvider(
 
                     ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE ->
                         dataCursor.getStringOrNull(numberColumn)?.let { phone ->
-                            phoneNumbers += PhoneNumber(
+                            builder.phoneNumbers += PhoneNumber(
                                 phone,
                                 when (dataCursor.getInt(typeColumn)) {
                                     ContactsContract.CommonDataKinds.Phone.TYPE_HOME -> ContactInfoType.Home
@@ -122,7 +245,7 @@ internal class AndroidContactProvider(
 
                     ContactsContract.CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE ->
                         dataCursor.getStringOrNull(addressColumn)?.let {
-                            postalAddresses += PostalAddress(
+                            builder.postalAddresses += PostalAddress(
                                 it,
                                 when (dataCursor.getInt(typeColumn)) {
                                     ContactsContract.CommonDataKinds.StructuredPostal.TYPE_HOME -> ContactInfoType.Home
@@ -133,19 +256,19 @@ internal class AndroidContactProvider(
                         }
 
                     ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE -> {
-                        firstName = dataCursor.getStringOrNull(givenNameColumn)
-                        lastName = dataCursor.getStringOrNull(familyNameColumn)
-                        displayName = dataCursor.getStringOrNull(displayNameColumn)
+                        builder.firstName = dataCursor.getStringOrNull(givenNameColumn)
+                        builder.lastName = dataCursor.getStringOrNull(familyNameColumn)
+                        builder.displayName = dataCursor.getStringOrNull(displayNameColumn)
                     }
 
                     else -> {
-                        customActions += CustomContactAction(
-                            label = dataCursor.getStringOrNull(data3Column) ?: continue,
-                            packageName = dataCursor.getStringOrNull(accountTypeColumn) ?: continue,
-                            mimeType = dataCursor.getStringOrNull(mimeTypeColumn) ?: continue,
+                        builder.customActions += CustomContactAction(
+                            label = dataCursor.getStringOrNull(data3Column) ?: continue@loop,
+                            packageName = dataCursor.getStringOrNull(accountTypeColumn) ?: continue@loop,
+                            mimeType = dataCursor.getStringOrNull(mimeTypeColumn) ?: continue@loop,
                             uri = ContentUris.withAppendedId(
                                 ContactsContract.Data.CONTENT_URI,
-                                dataCursor.getLongOrNull(idColumn) ?: continue
+                                dataCursor.getLongOrNull(idColumn) ?: continue@loop
                             ),
                         )
                     }
@@ -153,27 +276,30 @@ internal class AndroidContactProvider(
             }
             dataCursor.close()
 
-            val lookupKeyCursor = context.contentResolver.query(
-                ContactsContract.Contacts.CONTENT_URI,
-                arrayOf(ContactsContract.Contacts.LOOKUP_KEY),
-                "${ContactsContract.Contacts._ID} = ?",
-                arrayOf(id.toString()),
-                null
-            ) ?: return@withContext null
-            var lookUpKey = ""
-            if (lookupKeyCursor.moveToNext()) {
-                lookUpKey = lookupKeyCursor.getString(0)
+            val defaultCountryIso = context.resources.configuration.locales[0].country
+
+            return@withContext contacts.keys.associateWith { id ->
+                builders[id]?.build(id, defaultCountryIso)
             }
-            lookupKeyCursor.close()
+        }
 
-            val defaultCountryIso = context.resources.configuration.locales[0].country
+    private inner class ContactBuilder {
+        var firstName: String? = null
+        var lastName: String? = null
+        var displayName: String? = null
+        var lookupKey: String? = null
+        val phoneNumbers = mutableListOf<PhoneNumber>()
+        val emailAddresses = mutableListOf<EmailAddress>()
+        val postalAddresses = mutableListOf<PostalAddress>()
+        val customActions = mutableListOf<CustomContactAction>()
 
-            return@withContext AndroidContact(
+        fun build(id: Long, defaultCountryIso: String): Contact? {
+            return AndroidContact(
                 id = id,
                 name = displayName
                     ?: listOfNotNull(firstName, lastName).joinToString(" ")
                         .takeIf { it.isNotBlank() }
-                    ?: return@withContext null,
+                    ?: return null,
                 phoneNumbers = phoneNumbers.sortedByDescending {
                     it.number.count { !PhoneNumberUtils.isReallyDialable(it) }
                 }.map {
@@ -191,9 +317,10 @@ internal class AndroidContactProvider(
                 emailAddresses = emailAddresses.distinct(),
                 postalAddresses = postalAddresses.distinct(),
                 customActions = customActions.distinct(),
-                lookupKey = lookUpKey
+                lookupKey = lookupKey ?: "",
             )
         }
+    }
 
     /**
      * Get a contact by its id, or null if it doesn't exist.
@@ -217,6 +344,10 @@ internal class AndroidContactProvider(
         if (rawContacts.isEmpty()) {
             return@withContext null
         }
-        return@withContext getWithRawIds(id, rawContacts)
+        return@withContext getWithRawIds(mapOf(id to rawContacts))[id]
+    }
+
+    companion object {
+        private const val MaxResults = 16
     }
-}
\ No newline at end of file
+}
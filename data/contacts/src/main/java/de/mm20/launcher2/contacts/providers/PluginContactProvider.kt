@@ -13,8 +13,10 @@ import de.mm20.launcher2.plugin.contracts.ContactPluginContract.ContactColumns
 import de.mm20.launcher2.plugin.contracts.SearchPluginContract
 import de.mm20.launcher2.plugin.data.set
 import de.mm20.launcher2.plugin.data.withColumns
+import de.mm20.launcher2.search.Contact
 import de.mm20.launcher2.search.UpdateResult
 import de.mm20.launcher2.search.asUpdateResult
+import kotlinx.coroutines.flow.Flow
 
 internal class PluginContactProvider(
     private val context: Context,
@@ -25,6 +27,10 @@ internal class PluginContactProvider(
         return PluginApi(authority, context.contentResolver).getSearchPluginConfig()
     }
 
+    override fun searchPages(query: String, allowNetwork: Boolean): Flow<List<Contact>> {
+        return searchPages(query, allowNetwork, limit = null)
+    }
+
     override fun Uri.Builder.appendQueryParameters(query: String): Uri.Builder {
         return appendQueryParameter(SearchPluginContract.Params.Query, query)
     }
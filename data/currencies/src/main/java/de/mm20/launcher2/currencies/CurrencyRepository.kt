@@ -7,6 +7,9 @@ import androidx.work.PeriodicWorkRequest
 import androidx.work.WorkManager
 import de.mm20.launcher2.database.AppDatabase
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.withContext
 import java.util.Locale
 import java.util.concurrent.TimeUnit
@@ -174,6 +177,16 @@ class CurrencyRepository(
         }
     }
 
+    /**
+     * The ISO codes of all currencies that exchange rates are known for. Emits again whenever
+     * the set of known currencies changes.
+     */
+    fun getKnownCurrencies(): Flow<Set<String>> {
+        return AppDatabase.getInstance(context).currencyDao().getAllSymbols()
+            .map { it.toSet() }
+            .distinctUntilChanged()
+    }
+
     suspend fun isValidCurrency(symbol: String): Boolean {
         val isoSymbol = currencySymbolAliases[symbol] ?: symbol.uppercase()
         return withContext(Dispatchers.IO) {
@@ -1,6 +1,7 @@
 package de.mm20.launcher2.data.customattrs
 
-import de.mm20.launcher2.backup.Backupable
+import de.mm20.launcher2.backup.BackupWriter
+import de.mm20.launcher2.backup.StreamingBackupable
 import de.mm20.launcher2.crashreporter.CrashReporter
 import de.mm20.launcher2.database.AppDatabase
 import de.mm20.launcher2.database.entities.CustomAttributeEntity
@@ -12,19 +13,35 @@ import kotlinx.collections.immutable.persistentListOf
 import kotlinx.collections.immutable.toImmutableList
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.flatMapLatest
 import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.shareIn
 import org.json.JSONArray
 import org.json.JSONException
-import java.io.File
+import java.io.InputStream
 
-interface CustomAttributesRepository: Backupable {
+interface CustomAttributesRepository: StreamingBackupable {
 
     fun search(query: String): Flow<ImmutableList<SavableSearchable>>
 
     fun getCustomIcon(searchable: SavableSearchable): Flow<CustomIcon?>
+
+    /**
+     * Get all custom icons.
+     * @return a map of searchable keys to custom icons
+     */
+    fun getAllCustomIcons(): Flow<Map<String, CustomIcon>>
+
+    /**
+     * Get the custom icons of multiple searchables at once.
+     * @return a map of searchable keys to custom icons. Items without a custom icon are not included.
+     */
+    fun getCustomIcons(items: List<SavableSearchable>): Flow<Map<String, CustomIcon>>
     fun setCustomIcon(searchable: SavableSearchable, icon: CustomIcon?)
 
     fun getCustomLabels(items: List<SavableSearchable>): Flow<List<CustomLabel>>
@@ -58,6 +75,38 @@ internal class CustomAttributesRepositoryImpl(
             }
     }
 
+    override fun getAllCustomIcons(): Flow<Map<String, CustomIcon>> {
+        val dao = appDatabase.customAttrsDao()
+        return dao.getCustomAttributesOfType(CustomAttributeType.Icon.value).map { list ->
+            list.mapNotNull {
+                val icon = CustomAttribute.fromDatabaseEntity(it) as? CustomIcon
+                    ?: return@mapNotNull null
+                it.key to icon
+            }.toMap()
+        }
+    }
+
+    override fun getCustomIcons(items: List<SavableSearchable>): Flow<Map<String, CustomIcon>> {
+        val dao = appDatabase.customAttrsDao()
+        val keys = items.map { it.key }.distinct()
+        val entities = if (keys.size <= 999) {
+            dao.getCustomAttributes(keys, CustomAttributeType.Icon.value)
+        } else {
+            combine(keys.chunked(999).map { chunk ->
+                dao.getCustomAttributes(chunk, CustomAttributeType.Icon.value)
+            }) { results ->
+                results.flatMap { it }
+            }
+        }
+        return entities.map { list ->
+            list.mapNotNull {
+                val icon = CustomAttribute.fromDatabaseEntity(it) as? CustomIcon
+                    ?: return@mapNotNull null
+                it.key to icon
+            }.toMap()
+        }
+    }
+
     override fun setCustomIcon(searchable: SavableSearchable, icon: CustomIcon?) {
         val dao = appDatabase.customAttrsDao()
         scope.launch {
@@ -175,25 +224,46 @@ internal class CustomAttributesRepositoryImpl(
         }
     }
 
+    /**
+     * Index of all custom labels and tags, rebuilt whenever one of them changes.
+     */
+    private val searchIndex = appDatabase.customAttrsDao().getLabelsAndTags()
+        .map { CustomAttributesSearchIndex(it) }
+        .flowOn(Dispatchers.Default)
+        .shareIn(scope, SharingStarted.WhileSubscribed(10000), 1)
+
+    /**
+     * All items that have a custom label or a tag, so that they are only deserialized once,
+     * instead of once per search and result category. Writes to the Searchable table (e.g. launch
+     * counts) don't deserialize them again, only items that were added or changed are.
+     */
+    private val indexedSearchables = searchableRepository.observeByKeys(
+        searchIndex.map { it.keys }.distinctUntilChanged()
+    ).shareIn(scope, SharingStarted.WhileSubscribed(10000), 1)
+
     override fun search(query: String): Flow<ImmutableList<SavableSearchable>> {
         if (query.isBlank()) {
             return flow {
                 emit(persistentListOf())
             }
         }
-        val dao = appDatabase.customAttrsDao()
-        return dao.search("%$query%").flatMapLatest {
-            searchableRepository.getByKeys(it).map {
-                it.toImmutableList()
-            }
+        val normalizedQuery = query.lowercase()
+        return combine(searchIndex, indexedSearchables) { index, searchables ->
+            index.search(normalizedQuery).mapNotNull { searchables[it] }.toImmutableList()
         }
     }
 
-    override suspend fun backup(toDir: File) = withContext(Dispatchers.IO) {
+    override fun isBackupEntry(name: String): Boolean {
+        return name.startsWith("customizations.")
+    }
+
+    override suspend fun backup(writer: BackupWriter) = withContext(Dispatchers.IO) {
         val dao = appDatabase.backupDao()
         var page = 0
+        var lastId = Int.MIN_VALUE
         do {
-            val customAttrs = dao.exportCustomAttributes(limit = 100, offset = page * 100)
+            val customAttrs = dao.exportCustomAttributes(afterId = lastId, limit = 100)
+            if (customAttrs.isEmpty()) break
             val jsonArray = JSONArray()
             for (customAttr in customAttrs) {
                 jsonArray.put(
@@ -205,44 +275,40 @@ internal class CustomAttributesRepositoryImpl(
                 )
             }
 
-            val file = File(toDir, "customizations.${page.toString().padStart(4, '0')}")
-            file.bufferedWriter().use {
-                it.write(jsonArray.toString())
+            writer.writeEntry("customizations.${page.toString().padStart(4, '0')}") {
+                it.write(jsonArray.toString().toByteArray())
             }
             page++
+            lastId = customAttrs.last().id ?: break
         } while (customAttrs.size == 100)
     }
 
-    override suspend fun restore(fromDir: File) = withContext(Dispatchers.IO) {
-        val dao = appDatabase.backupDao()
-        dao.wipeCustomAttributes()
-
-        val files =
-            fromDir.listFiles { _, name -> name.startsWith("customizations.") }
-                ?: return@withContext
-
-        for (file in files) {
-            val customAttrs = mutableListOf<CustomAttributeEntity>()
-            try {
-                val jsonArray = JSONArray(file.inputStream().reader().readText())
-
-                for (i in 0 until jsonArray.length()) {
-                    val json = jsonArray.getJSONObject(i)
+    override suspend fun beginRestore() = withContext(Dispatchers.IO) {
+        appDatabase.backupDao().wipeCustomAttributes()
+    }
 
-                    val entity = CustomAttributeEntity(
-                        id = null,
-                        type = json.getString("type"),
-                        value = json.optString("value"),
-                        key = json.optString("key"),
-                    )
-                    customAttrs.add(entity)
-                }
+    override suspend fun restoreEntry(name: String, input: InputStream) = withContext(Dispatchers.IO) {
+        val dao = appDatabase.backupDao()
+        val customAttrs = mutableListOf<CustomAttributeEntity>()
+        try {
+            val jsonArray = JSONArray(input.reader().readText())
+
+            for (i in 0 until jsonArray.length()) {
+                val json = jsonArray.getJSONObject(i)
+
+                val entity = CustomAttributeEntity(
+                    id = null,
+                    type = json.getString("type"),
+                    value = json.optString("value"),
+                    key = json.optString("key"),
+                )
+                customAttrs.add(entity)
+            }
 
-                dao.importCustomAttributes(customAttrs)
+            dao.importCustomAttributes(customAttrs)
 
-            } catch (e: JSONException) {
-                CrashReporter.logException(e)
-            }
+        } catch (e: JSONException) {
+            CrashReporter.logException(e)
         }
     }
 
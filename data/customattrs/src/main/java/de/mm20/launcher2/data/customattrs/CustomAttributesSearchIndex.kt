@@ -0,0 +1,44 @@
+package de.mm20.launcher2.data.customattrs
+
+import de.mm20.launcher2.database.entities.CustomAttributeEntity
+
+/**
+ * Immutable in-memory index of all custom labels and tags, so that they can be searched without
+ * a `LIKE '%query%'` scan over the CustomAttributes table on every keystroke.
+ *
+ * Values are lowercased, and each distinct value is only stored (and compared) once, no matter
+ * how many items it is assigned to.
+ */
+internal class CustomAttributesSearchIndex(entities: List<CustomAttributeEntity>) {
+    private val values: Array<String>
+    private val valueKeys: Array<List<String>>
+
+    /**
+     * The keys of all items that have a custom label or at least one tag.
+     */
+    val keys: Set<String>
+
+    init {
+        val grouped = entities.groupBy(
+            keySelector = { it.value.lowercase() },
+            valueTransform = { it.key },
+        )
+        values = grouped.keys.toTypedArray()
+        valueKeys = grouped.values.toTypedArray()
+        keys = entities.mapTo(HashSet()) { it.key }
+    }
+
+    /**
+     * Find the keys of all items that have a label or a tag containing [query].
+     * Unlike SQL `LIKE`, `%` and `_` in the query match literally, and case is ignored for
+     * all characters, not only ASCII.
+     * @param query the query, lowercased
+     */
+    fun search(query: String): Set<String> {
+        val results = LinkedHashSet<String>()
+        for (i in values.indices) {
+            if (values[i].contains(query)) results.addAll(valueKeys[i])
+        }
+        return results
+    }
+}
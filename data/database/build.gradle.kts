@@ -35,6 +35,10 @@ android {
         }
     }
 
+    testOptions {
+        unitTests.isIncludeAndroidResources = true
+    }
+
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
@@ -63,4 +67,7 @@ dependencies {
     implementation(project(":core:preferences"))
     implementation(project(":core:base"))
 
+    testImplementation(libs.bundles.tests)
+    testImplementation(libs.androidx.test.core)
+    testImplementation(libs.robolectric)
 }
\ No newline at end of file
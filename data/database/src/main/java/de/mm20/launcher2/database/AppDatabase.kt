@@ -13,11 +13,13 @@ import de.mm20.launcher2.database.daos.ThemeDao
 import de.mm20.launcher2.database.entities.ColorsEntity
 import de.mm20.launcher2.database.entities.CurrencyEntity
 import de.mm20.launcher2.database.entities.CustomAttributeEntity
+import de.mm20.launcher2.database.entities.DailyForecastEntity
 import de.mm20.launcher2.database.entities.ForecastEntity
 import de.mm20.launcher2.database.entities.IconEntity
 import de.mm20.launcher2.database.entities.IconPackEntity
 import de.mm20.launcher2.database.entities.PluginEntity
 import de.mm20.launcher2.database.entities.SavedSearchableEntity
+import de.mm20.launcher2.database.entities.SearchableWeightScaleEntity
 import de.mm20.launcher2.database.entities.SearchActionEntity
 import de.mm20.launcher2.database.entities.ShapesEntity
 import de.mm20.launcher2.database.entities.TransparenciesEntity
@@ -46,6 +48,9 @@ import de.mm20.launcher2.database.migrations.Migration_29_30
 import de.mm20.launcher2.database.migrations.Migration_30_31
 import de.mm20.launcher2.database.migrations.Migration_31_32
 import de.mm20.launcher2.database.migrations.Migration_32_33
+import de.mm20.launcher2.database.migrations.Migration_33_34
+import de.mm20.launcher2.database.migrations.Migration_34_35
+import de.mm20.launcher2.database.migrations.Migration_35_36
 import de.mm20.launcher2.database.migrations.Migration_6_7
 import de.mm20.launcher2.database.migrations.Migration_7_8
 import de.mm20.launcher2.database.migrations.Migration_8_9
@@ -57,6 +62,7 @@ import java.util.UUID
 @Database(
     entities = [
         ForecastEntity::class,
+        DailyForecastEntity::class,
         SavedSearchableEntity::class,
         CurrencyEntity::class,
         IconEntity::class,
@@ -69,7 +75,8 @@ import java.util.UUID
         ShapesEntity::class,
         TransparenciesEntity::class,
         TypographyEntity::class,
-    ], version = 33, exportSchema = true
+        SearchableWeightScaleEntity::class,
+    ], version = 36, exportSchema = true
 )
 @TypeConverters(ComponentNameConverter::class)
 abstract class AppDatabase : RoomDatabase() {
@@ -179,6 +186,9 @@ abstract class AppDatabase : RoomDatabase() {
                         Migration_30_31(),
                         Migration_31_32(),
                         Migration_32_33(),
+                        Migration_33_34(),
+                        Migration_34_35(),
+                        Migration_35_36(),
                     ).build()
             if (_instance == null) _instance = instance
             return instance
@@ -4,6 +4,7 @@ import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 import de.mm20.launcher2.database.entities.CustomAttributeEntity
 import de.mm20.launcher2.database.entities.SavedSearchableEntity
 import de.mm20.launcher2.database.entities.SearchActionEntity
@@ -13,11 +14,39 @@ import de.mm20.launcher2.database.entities.WidgetEntity
 @Dao
 interface BackupRestoreDao {
 
+    @Transaction
+    suspend fun wipeFavorites() {
+        deleteFavorites()
+        resetWeightScale()
+    }
+
     @Query("DELETE FROM Searchable")
-    suspend fun wipeFavorites()
+    suspend fun deleteFavorites()
+
+    @Query("DELETE FROM SearchableWeightScale")
+    suspend fun resetWeightScale()
+
+    /**
+     * Export the first page of favorites, ordered by key. The `weight` column contains the
+     * effective weight, i.e. it is already multiplied with the weight scale.
+     * Use [exportFavoritesAfter] with the last key of a page to export the next page.
+     */
+    @Query(
+        "SELECT `key`, `type`, `searchable`, `launchCount`, `pinPosition`, `hidden`, " +
+                "`weight` * COALESCE((SELECT scale FROM SearchableWeightScale WHERE id = 0), 1.0) AS `weight` " +
+                "FROM Searchable ORDER BY `key` LIMIT :limit"
+    )
+    suspend fun exportFavorites(limit: Int): List<SavedSearchableEntity>
 
-    @Query("SELECT * FROM Searchable LIMIT :limit OFFSET :offset")
-    suspend fun exportFavorites(limit: Int, offset: Int): List<SavedSearchableEntity>
+    /**
+     * Export the favorites that follow [afterKey], see [exportFavorites].
+     */
+    @Query(
+        "SELECT `key`, `type`, `searchable`, `launchCount`, `pinPosition`, `hidden`, " +
+                "`weight` * COALESCE((SELECT scale FROM SearchableWeightScale WHERE id = 0), 1.0) AS `weight` " +
+                "FROM Searchable WHERE `key` > :afterKey ORDER BY `key` LIMIT :limit"
+    )
+    suspend fun exportFavoritesAfter(afterKey: String, limit: Int): List<SavedSearchableEntity>
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun importFavorites(items: List<SavedSearchableEntity>)
@@ -43,8 +72,11 @@ interface BackupRestoreDao {
     @Query("DELETE FROM CustomAttributes")
     suspend fun wipeCustomAttributes()
 
-    @Query("SELECT * FROM CustomAttributes LIMIT :limit OFFSET :offset")
-    suspend fun exportCustomAttributes(limit: Int, offset: Int): List<CustomAttributeEntity>
+    /**
+     * Export custom attributes with an id greater than [afterId], ordered by id.
+     */
+    @Query("SELECT * FROM CustomAttributes WHERE id > :afterId ORDER BY id LIMIT :limit")
+    suspend fun exportCustomAttributes(afterId: Int, limit: Int): List<CustomAttributeEntity>
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun importCustomAttributes(items: List<CustomAttributeEntity>)
@@ -2,6 +2,7 @@ package de.mm20.launcher2.database
 
 import androidx.room.*
 import de.mm20.launcher2.database.entities.CurrencyEntity
+import kotlinx.coroutines.flow.Flow
 
 @Dao
 interface CurrencyDao {
@@ -24,6 +25,9 @@ interface CurrencyDao {
     @Query("SELECT * FROM Currency")
     fun getAllCurrencies() : List<CurrencyEntity>
 
+    @Query("SELECT symbol FROM Currency")
+    fun getAllSymbols() : Flow<List<String>>
+
     @Transaction
     fun exists(symbol: String): Boolean {
         return getCurrency(symbol) != null
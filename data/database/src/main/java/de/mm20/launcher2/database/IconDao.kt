@@ -13,13 +13,16 @@ interface IconDao {
     @Query("SELECT * FROM Icons WHERE packageName = :packageName AND (activityName = :activityName OR activityName IS NULL) AND iconPack = :iconPack AND type IN ('app', 'calendar', 'clock') ORDER BY type DESC LIMIT 1")
     suspend fun getIcon(packageName: String, activityName: String?, iconPack: String): IconEntity?
 
+    @Query("SELECT * FROM Icons WHERE packageName IN (:packageNames) AND iconPack = :iconPack AND type IN ('app', 'calendar', 'clock')")
+    suspend fun getIcons(packageNames: List<String>, iconPack: String): List<IconEntity>
+
     @Query("SELECT * FROM Icons WHERE drawable = :iconName AND iconPack = :iconPack ORDER BY type DESC LIMIT 1")
     suspend fun getIcon(iconName: String, iconPack: String): IconEntity?
 
-    @Query("SELECT * FROM Icons WHERE packageName = :packageName AND (activityName = :activityName OR activityName IS NULL) AND type IN ('app', 'calendar', 'clock')")
+    @Query("SELECT * FROM Icons WHERE packageName = :packageName AND (activityName = :activityName OR activityName IS NULL) AND type IN ('app', 'calendar', 'clock') AND iconPack NOT LIKE '%:installing'")
     suspend fun getIconsFromAllPacks(packageName: String, activityName: String): List<IconEntity>
 
-    @Query("SELECT * FROM Icons WHERE type IN ('app', 'calendar', 'clock') AND (drawable LIKE :drawableQuery OR name LIKE :nameQuery) AND (:iconPack IS NULL OR iconPack = :iconPack) GROUP BY drawable, iconPack, type ORDER BY type DESC, iconPack, drawable LIMIT :limit")
+    @Query("SELECT * FROM Icons WHERE type IN ('app', 'calendar', 'clock') AND (drawable LIKE :drawableQuery OR name LIKE :nameQuery) AND (:iconPack IS NULL OR iconPack = :iconPack) AND iconPack NOT LIKE '%:installing' GROUP BY drawable, iconPack, type ORDER BY type DESC, iconPack, drawable LIMIT :limit")
     suspend fun searchIconPackIcons(
         nameQuery: String,
         drawableQuery: String,
@@ -30,6 +33,9 @@ interface IconDao {
     @Query("DELETE FROM Icons WHERE iconPack = :iconPack")
     fun deleteIcons(iconPack: String)
 
+    @Query("UPDATE Icons SET iconPack = :newName WHERE iconPack = :oldName")
+    fun renameIcons(oldName: String, newName: String)
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     fun installIconPack(iconPack: IconPackEntity)
 
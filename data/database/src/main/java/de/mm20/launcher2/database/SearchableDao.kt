@@ -11,8 +11,15 @@ import androidx.room.Upsert
 import de.mm20.launcher2.database.entities.SavedSearchableEntity
 import de.mm20.launcher2.database.entities.SavedSearchableUpdateContentEntity
 import de.mm20.launcher2.database.entities.SavedSearchableUpdatePinEntity
+import de.mm20.launcher2.database.entities.SearchableWeightScaleEntity
 import kotlinx.coroutines.flow.Flow
 
+/**
+ * Lower bound for the weight scale. Below this value, stored weights would grow too large
+ * to be represented accurately.
+ */
+private const val MIN_WEIGHT_SCALE = 1e-100
+
 @Dao
 interface SearchableDao {
     @Insert(onConflict = OnConflictStrategy.IGNORE)
@@ -164,11 +171,26 @@ interface SearchableDao {
     @Query("SELECT * FROM Searchable WHERE `key` = :key")
     fun getByKey(key: String): Flow<SavedSearchableEntity?>
 
+    /**
+     * Increase the launch count and weight of the given item, and decay the weights of all other items.
+     *
+     * Instead of rewriting the weight of every other row, the decay is applied to the global weight
+     * scale (see [getWeightScale]). Stored weights are relative to that scale, so only the touched
+     * row (and the scale) need to be written. Once the scale becomes too small, all weights are
+     * rebased onto a scale of 1.0.
+     */
     @Transaction
     suspend fun touch(item: SavedSearchableEntity, alpha: Double) {
+        val scale = getWeightScale() ?: 1.0
+        val newScale = scale * (1.0 - alpha)
         incrementLaunchCount(item.key)
-        increaseWeightWhere(item.key, alpha)
-        reduceWeightExcept(item.key, alpha)
+        increaseWeightWhere(item.key, alpha, scale, newScale)
+        if (newScale < MIN_WEIGHT_SCALE) {
+            rebaseWeights(newScale)
+            setWeightScale(SearchableWeightScaleEntity(scale = 1.0))
+        } else {
+            setWeightScale(SearchableWeightScaleEntity(scale = newScale))
+        }
         if (insert(item) == -1L) {
             update(
                 SavedSearchableUpdateContentEntity(
@@ -183,11 +205,29 @@ interface SearchableDao {
     @Query("UPDATE Searchable SET launchCount = launchCount + 1 WHERE `key` = :key")
     fun incrementLaunchCount(key: String)
 
-    @Query("UPDATE Searchable SET `weight` = `weight` * (1.0 - :alpha) WHERE `key` != :key AND weight > 0.001")
-    fun reduceWeightExcept(key: String, alpha: Double)
+    /**
+     * Increase the effective weight of an item.
+     * @param scale the weight scale before the update
+     * @param newScale the weight scale after the update
+     */
+    @Query("UPDATE Searchable SET `weight` = (`weight` * :scale + :alpha * (1.0 - `weight` * :scale)) / :newScale WHERE `key` == :key")
+    fun increaseWeightWhere(key: String, alpha: Double, scale: Double, newScale: Double)
+
+    /**
+     * Multiply all stored weights with the given scale, so that they can be used with a scale of 1.0
+     */
+    @Query("UPDATE Searchable SET `weight` = `weight` * :scale WHERE weight > 0.0")
+    fun rebaseWeights(scale: Double)
+
+    /**
+     * The scale that needs to be applied to the `weight` column to get the effective weight.
+     * Null if no item has been launched yet, which is equivalent to a scale of 1.0.
+     */
+    @Query("SELECT scale FROM SearchableWeightScale WHERE id = 0")
+    suspend fun getWeightScale(): Double?
 
-    @Query("UPDATE Searchable SET `weight` = `weight` + :alpha * (1.0 - `weight`) WHERE `key` == :key")
-    fun increaseWeightWhere(key: String, alpha: Double)
+    @Upsert
+    suspend fun setWeightScale(scale: SearchableWeightScaleEntity)
 
     @Query("DELETE FROM Searchable WHERE `key` = :key")
     suspend fun delete(key: String)
@@ -201,7 +241,7 @@ interface SearchableDao {
     @Query("SELECT `key` FROM Searchable WHERE `key` IN (:keys) ORDER BY `weight` DESC, pinPosition DESC")
     fun sortByWeight(keys: List<String>): Flow<List<String>>
 
-    @Query("SELECT `key`, `weight` FROM Searchable WHERE `key` IN (:keys)")
+    @Query("SELECT `key`, `weight` * COALESCE((SELECT scale FROM SearchableWeightScale WHERE id = 0), 1.0) AS `weight` FROM Searchable WHERE `key` IN (:keys)")
     fun getWeights(keys: List<String>): Flow<Map<@MapColumn(columnName = "key") String, @MapColumn(columnName = "weight") Double>>
 
     @Query("SELECT hidden FROM Searchable WHERE `key` = :key UNION SELECT 0 as hidden ORDER BY hidden DESC LIMIT 1")
@@ -1,6 +1,7 @@
 package de.mm20.launcher2.database
 
 import androidx.room.*
+import de.mm20.launcher2.database.entities.DailyForecastEntity
 import de.mm20.launcher2.database.entities.ForecastEntity
 import kotlinx.coroutines.flow.Flow
 
@@ -9,15 +10,43 @@ interface WeatherDao {
     @Query("SELECT * FROM ${ForecastEntity.TABLE_NAME} ORDER BY timestamp ASC LIMIT :limit")
     fun getForecasts(limit: Int = 99999): Flow<List<ForecastEntity>>
 
+    /**
+     * Get all forecasts with from <= timestamp <= to
+     */
+    @Query("SELECT * FROM ${ForecastEntity.TABLE_NAME} WHERE timestamp BETWEEN :from AND :to ORDER BY timestamp ASC")
+    fun getForecasts(from: Long, to: Long): Flow<List<ForecastEntity>>
+
+    @Query("SELECT location FROM ${ForecastEntity.TABLE_NAME} ORDER BY timestamp ASC LIMIT 1")
+    fun getLocation(): Flow<String?>
+
+    @Query("SELECT * FROM ${DailyForecastEntity.TABLE_NAME} ORDER BY timestamp ASC")
+    fun getDailyForecasts(): Flow<List<DailyForecastEntity>>
+
+    @Query("SELECT COUNT(*) FROM ${DailyForecastEntity.TABLE_NAME}")
+    suspend fun countDailyForecasts(): Int
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     fun insertAll(forecasts: List<ForecastEntity>)
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAllDaily(dailyForecasts: List<DailyForecastEntity>)
+
     @Query("DELETE FROM ${ForecastEntity.TABLE_NAME}")
-    fun deleteAll()
+    fun deleteAllForecasts()
+
+    @Query("DELETE FROM ${DailyForecastEntity.TABLE_NAME}")
+    fun deleteAllDaily()
+
+    @Transaction
+    fun deleteAll() {
+        deleteAllForecasts()
+        deleteAllDaily()
+    }
 
     @Transaction
-    fun replaceAll(forecasts: List<ForecastEntity>) {
+    fun replaceAll(forecasts: List<ForecastEntity>, dailyForecasts: List<DailyForecastEntity>) {
         deleteAll()
         insertAll(forecasts)
+        insertAllDaily(dailyForecasts)
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,16 @@
 package de.mm20.launcher2.database.entities
 
 import androidx.room.Entity
+import androidx.room.Index
 import androidx.room.PrimaryKey
 
-@Entity(tableName = "CustomAttributes")
+@Entity(
+    tableName = "CustomAttributes",
+    indices = [
+        Index("type", "key"),
+        Index("type", "value"),
+    ]
+)
 data class CustomAttributeEntity(
     val key: String,
     val type: String,
@@ -0,0 +1,26 @@
+package de.mm20.launcher2.database.entities
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Aggregate of all [ForecastEntity]s of a single day.
+ */
+@Entity(tableName = DailyForecastEntity.TABLE_NAME)
+data class DailyForecastEntity(
+        /**
+         * Timestamp of the first forecast of the day
+         */
+        @PrimaryKey val timestamp: Long,
+        /**
+         * Timestamp of the last forecast of the day
+         */
+        val endTimestamp: Long,
+        val minTemp: Double,
+        val maxTemp: Double,
+        val icon: Int,
+) {
+    companion object {
+        const val TABLE_NAME = "daily_forecasts"
+    }
+}
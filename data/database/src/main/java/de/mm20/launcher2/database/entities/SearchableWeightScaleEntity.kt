@@ -0,0 +1,15 @@
+package de.mm20.launcher2.database.entities
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Global decay factor of the `weight` column of [SavedSearchableEntity].
+ * The effective weight of a searchable is `weight * scale`.
+ * This table only ever contains a single row with id 0.
+ */
+@Entity(tableName = "SearchableWeightScale")
+data class SearchableWeightScaleEntity(
+    @PrimaryKey val id: Int = 0,
+    val scale: Double,
+)
@@ -0,0 +1,19 @@
+package de.mm20.launcher2.database.migrations
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+class Migration_33_34 : Migration(33, 34) {
+    override fun migrate(db: SupportSQLiteDatabase) {
+        db.execSQL(
+            """
+            CREATE TABLE IF NOT EXISTS `SearchableWeightScale` (
+                `id` INTEGER NOT NULL,
+                `scale` REAL NOT NULL,
+                PRIMARY KEY(`id`)
+            )
+            """.trimIndent()
+        )
+        db.execSQL("INSERT INTO `SearchableWeightScale` (`id`, `scale`) VALUES (0, 1.0)")
+    }
+}
@@ -0,0 +1,25 @@
+package de.mm20.launcher2.database.migrations
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+class Migration_34_35 : Migration(34, 35) {
+    override fun migrate(db: SupportSQLiteDatabase) {
+        db.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_Icons_packageName_iconPack_activityName` " +
+                    "ON `Icons` (`packageName`, `iconPack`, `activityName`)"
+        )
+        db.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_Icons_iconPack_drawable` " +
+                    "ON `Icons` (`iconPack`, `drawable`)"
+        )
+        db.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_CustomAttributes_type_key` " +
+                    "ON `CustomAttributes` (`type`, `key`)"
+        )
+        db.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_CustomAttributes_type_value` " +
+                    "ON `CustomAttributes` (`type`, `value`)"
+        )
+    }
+}
@@ -0,0 +1,18 @@
+package de.mm20.launcher2.database.migrations
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+class Migration_35_36 : Migration(35, 36) {
+    override fun migrate(db: SupportSQLiteDatabase) {
+        db.execSQL(
+            "CREATE TABLE IF NOT EXISTS `daily_forecasts` (" +
+                    "`timestamp` INTEGER NOT NULL, " +
+                    "`endTimestamp` INTEGER NOT NULL, " +
+                    "`minTemp` REAL NOT NULL, " +
+                    "`maxTemp` REAL NOT NULL, " +
+                    "`icon` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`timestamp`))"
+        )
+    }
+}
@@ -0,0 +1,91 @@
+package de.mm20.launcher2.database
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import de.mm20.launcher2.database.entities.CustomAttributeEntity
+import de.mm20.launcher2.database.entities.SavedSearchableEntity
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/**
+ * Checks that the keyset-paginated exports of [BackupRestoreDao] return every row exactly once.
+ */
+@RunWith(RobolectricTestRunner::class)
+class BackupRestoreDaoTest {
+
+    private lateinit var database: AppDatabase
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java)
+            .allowMainThreadQueries()
+            .build()
+        runBlocking {
+            val dao = database.backupDao()
+            dao.importFavorites(List(ItemCount) {
+                SavedSearchableEntity(
+                    key = "app://com.example.app$it:com.example.app$it.MainActivity",
+                    type = "app",
+                    serializedSearchable = """{"package":"com.example.app$it","activity":"com.example.app$it.MainActivity","user":0}""",
+                    launchCount = it % 50,
+                    pinPosition = if (it % 100 == 0) it / 100 else 0,
+                    visibility = 0,
+                    weight = (it % 1000) / 1000.0,
+                )
+            })
+            dao.importCustomAttributes(List(ItemCount) {
+                CustomAttributeEntity(
+                    key = "app://com.example.app$it:com.example.app$it.MainActivity",
+                    type = if (it % 2 == 0) "tag" else "label",
+                    value = "Value $it",
+                )
+            })
+        }
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    @Test
+    fun exportsAllFavoritesOnce() = runBlocking {
+        val dao = database.backupDao()
+        val keys = mutableListOf<String>()
+        var page = dao.exportFavorites(limit = PageSize)
+        while (page.isNotEmpty()) {
+            keys += page.map { it.key }
+            if (page.size < PageSize) break
+            page = dao.exportFavoritesAfter(afterKey = page.last().key, limit = PageSize)
+        }
+        Assert.assertEquals(ItemCount, keys.size)
+        Assert.assertEquals(keys.sorted(), keys)
+        Assert.assertEquals(ItemCount, keys.toSet().size)
+    }
+
+    @Test
+    fun exportsAllCustomAttributesOnce() = runBlocking {
+        val dao = database.backupDao()
+        val ids = mutableListOf<Int>()
+        var lastId = Int.MIN_VALUE
+        do {
+            val page = dao.exportCustomAttributes(afterId = lastId, limit = PageSize)
+            ids += page.mapNotNull { it.id }
+            lastId = page.lastOrNull()?.id ?: break
+        } while (page.size == PageSize)
+        Assert.assertEquals(ItemCount, ids.size)
+        Assert.assertEquals(ItemCount, ids.toSet().size)
+    }
+
+    companion object {
+        private const val ItemCount = 10_000
+        private const val PageSize = 100
+    }
+}
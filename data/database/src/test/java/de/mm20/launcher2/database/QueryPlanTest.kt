@@ -0,0 +1,151 @@
+package de.mm20.launcher2.database
+
+import android.content.Context
+import androidx.room.Room
+import androidx.room.RoomDatabase
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Makes sure that frequently used lookups in the Icons and CustomAttributes tables are backed by
+ * an index, i.e. that SQLite does not fall back to a full table scan.
+ * Each test calls a DAO method, captures the statements that Room executes for it, and runs
+ * EXPLAIN QUERY PLAN on them.
+ */
+@RunWith(RobolectricTestRunner::class)
+class QueryPlanTest {
+
+    private lateinit var database: AppDatabase
+
+    private val statements = CopyOnWriteArrayList<Pair<String, List<Any?>>>()
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java)
+            .allowMainThreadQueries()
+            .setQueryCallback(
+                RoomDatabase.QueryCallback { sql, args -> statements += sql to args.toList() },
+                { it.run() },
+            )
+            .build()
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    @Test
+    fun iconDaoGetIcon() = assertNoScan {
+        database.iconDao().getIcon("com.example", "com.example.MainActivity", "com.example.iconpack")
+    }
+
+    @Test
+    fun iconDaoGetIcons() = assertNoScan {
+        database.iconDao().getIcons(
+            listOf("com.example.a", "com.example.b", "com.example.c"),
+            "com.example.iconpack",
+        )
+    }
+
+    @Test
+    fun iconDaoGetIconByDrawable() = assertNoScan {
+        database.iconDao().getIcon("ic_example", "com.example.iconpack")
+    }
+
+    @Test
+    fun iconDaoGetIconsFromAllPacks() = assertNoScan {
+        database.iconDao().getIconsFromAllPacks("com.example", "com.example.MainActivity")
+    }
+
+    @Test
+    fun iconDaoGetIconBacks() = assertNoScan {
+        database.iconDao().getIconBacks("com.example.iconpack")
+        database.iconDao().getIconUpons("com.example.iconpack")
+        database.iconDao().getIconMasks("com.example.iconpack")
+    }
+
+    @Test
+    fun customAttrsDaoGetCustomAttribute() = assertNoScan {
+        database.customAttrsDao()
+            .getCustomAttribute("app://com.example:com.example.MainActivity", "label")
+            .first()
+    }
+
+    @Test
+    fun customAttrsDaoClearCustomAttribute() = assertNoScan {
+        database.customAttrsDao()
+            .clearCustomAttribute("app://com.example:com.example.MainActivity", "label")
+    }
+
+    @Test
+    fun customAttrsDaoGetCustomAttributes() = assertNoScan {
+        database.customAttrsDao()
+            .getCustomAttributes(listOf("app://a:a.A", "app://b:b.B", "app://c:c.C"), "label")
+            .first()
+    }
+
+    @Test
+    fun customAttrsDaoGetCustomAttributesOfType() = assertNoScan {
+        database.customAttrsDao().getCustomAttributesOfType("icon").first()
+    }
+
+    @Test
+    fun customAttrsDaoGetItemsWithTag() = assertNoScan {
+        database.customAttrsDao().getItemsWithTag("Games").first()
+    }
+
+    @Test
+    fun customAttrsDaoGetAllTags() = assertNoScan {
+        database.customAttrsDao().getAllTags().first()
+    }
+
+    @Test
+    fun customAttrsDaoTagUpdates() = assertNoScan {
+        val dao = database.customAttrsDao()
+        dao.removeTag("app://a:a.A", "Games")
+        dao.renameTag("Games", "Fun")
+        dao.deleteTag("Fun")
+    }
+
+    /**
+     * Runs [block] and checks the query plans of all statements on the Icons and CustomAttributes
+     * tables that Room executed for it.
+     */
+    private fun assertNoScan(block: suspend () -> Unit) {
+        statements.clear()
+        runBlocking { block() }
+        val captured = statements.filter { (sql, _) ->
+            (sql.contains("Icons") || sql.contains("CustomAttributes")) && !sql.contains("room_")
+        }
+        Assert.assertTrue("No statements captured", captured.isNotEmpty())
+
+        for ((sql, args) in captured) {
+            val details = mutableListOf<String>()
+            database.openHelper.readableDatabase
+                .query("EXPLAIN QUERY PLAN $sql", args.toTypedArray())
+                .use {
+                    val detailColumn = it.getColumnIndexOrThrow("detail")
+                    while (it.moveToNext()) {
+                        details.add(it.getString(detailColumn))
+                    }
+                }
+            Assert.assertTrue("Query plan is empty: $sql", details.isNotEmpty())
+            for (detail in details) {
+                Assert.assertFalse(
+                    "Query uses a full table scan ($detail): $sql",
+                    detail.startsWith("SCAN")
+                )
+            }
+        }
+    }
+}
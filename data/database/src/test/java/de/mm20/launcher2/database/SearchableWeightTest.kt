@@ -0,0 +1,141 @@
+package de.mm20.launcher2.database
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import de.mm20.launcher2.database.entities.SavedSearchableEntity
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import kotlin.math.abs
+import kotlin.math.pow
+import kotlin.random.Random
+
+/**
+ * Compares the weights after [SearchableDao.touch], which decays all weights through a global
+ * weight scale, with the previous implementation that rewrote the weight of every row on each
+ * launch.
+ */
+@RunWith(RobolectricTestRunner::class)
+class SearchableWeightTest {
+
+    private lateinit var database: AppDatabase
+
+    private val keys = List(40) { "app://com.example.app$it:com.example.app$it.MainActivity" }
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java)
+            .allowMainThreadQueries()
+            .build()
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    /**
+     * The previous implementation: the launched item's weight is increased, all other weights are
+     * multiplied by (1 - alpha). If [cutoff] is set, weights at or below it are not decayed anymore.
+     */
+    private class EagerWeights(private val cutoff: Double?) {
+        val weights = mutableMapOf<String, Double>()
+
+        fun touch(key: String, alpha: Double) {
+            val weight = weights[key]
+            for ((k, w) in weights) {
+                if (k != key && (cutoff == null || w > cutoff)) weights[k] = w * (1.0 - alpha)
+            }
+            weights[key] = if (weight == null) 0.0 else weight + alpha * (1.0 - weight)
+        }
+    }
+
+    /**
+     * Launches a few items often and most items rarely, so that weights get both close to 1 and
+     * close to 0. With alpha = 0.1, the scale drops below its lower bound after ~2200 launches,
+     * so the weights are rebased at least once.
+     */
+    private fun launches(alpha: Double): List<String> {
+        val random = Random(42)
+        val count = if (alpha >= 0.1) 3000 else 500
+        return List(count) { keys[(random.nextDouble().pow(3) * keys.size).toInt()] }
+    }
+
+    private fun entity(key: String) = SavedSearchableEntity(
+        key = key,
+        type = "app",
+        serializedSearchable = "{}",
+        launchCount = 0,
+        pinPosition = 0,
+        visibility = 0,
+        weight = 0.0,
+    )
+
+    private suspend fun runTouches(alpha: Double): Triple<Map<String, Double>, Map<String, Double>, Map<String, Double>> {
+        val dao = database.searchableDao()
+        val eager = EagerWeights(cutoff = null)
+        val eagerWithCutoff = EagerWeights(cutoff = 0.001)
+        for (key in launches(alpha)) {
+            dao.touch(entity(key), alpha)
+            eager.touch(key, alpha)
+            eagerWithCutoff.touch(key, alpha)
+        }
+        return Triple(dao.getWeights(keys).first(), eager.weights, eagerWithCutoff.weights)
+    }
+
+    @Test
+    fun matchesEagerDecay() = runBlocking {
+        for (alpha in listOf(0.01, 0.03, 0.1)) {
+            database.clearAllTables()
+            val (weights, expected, _) = runTouches(alpha)
+            Assert.assertEquals(expected.keys, weights.keys)
+            for ((key, weight) in expected) {
+                Assert.assertEquals("$key, alpha = $alpha", weight, weights[key]!!, weight * 1e-9 + 1e-300)
+            }
+
+            // Ranking order of all items that have a weight
+            val ranked = database.searchableDao().sortByWeight(keys).first()
+                .filter { expected[it]!! > 0.0 }
+            val expectedRanked = expected.filterValues { it > 0.0 }
+                .entries.sortedByDescending { it.value }.map { it.key }
+            Assert.assertEquals("alpha = $alpha", expectedRanked, ranked)
+        }
+    }
+
+    /**
+     * The previous implementation stopped decaying weights at 0.001. Weights decay further now, so
+     * they can be lower by at most that cutoff, and the ranking only differs for items whose weights
+     * were within the cutoff of each other.
+     */
+    @Test
+    fun differsFromCutoffDecayOnlyBelowCutoff() = runBlocking {
+        for (alpha in listOf(0.01, 0.03, 0.1)) {
+            database.clearAllTables()
+            val (weights, _, expected) = runTouches(alpha)
+            for ((key, weight) in expected) {
+                val diff = weight - weights[key]!!
+                Assert.assertTrue("$key, alpha = $alpha: $diff", diff >= -1e-9 && diff <= 0.001 + 1e-9)
+            }
+
+            val ranked = database.searchableDao().sortByWeight(keys).first()
+            for (i in ranked.indices) {
+                for (j in i + 1 until ranked.size) {
+                    val a = expected[ranked[i]]!!
+                    val b = expected[ranked[j]]!!
+                    Assert.assertFalse(
+                        "${ranked[j]} ($b) should rank above ${ranked[i]} ($a), alpha = $alpha",
+                        b - a > 0.001 + 1e-9,
+                    )
+                }
+            }
+            Assert.assertTrue(expected.values.any { abs(it) > 0.001 })
+        }
+    }
+}
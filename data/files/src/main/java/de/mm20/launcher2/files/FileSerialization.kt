@@ -81,8 +81,12 @@ internal class LocalFileDeserializer(
         val cursor = context.contentResolver.query(uri, proj, sel, selArgs, null) ?: return null
         if (cursor.moveToNext()) {
             val path = cursor.getString(2)
-            if (!java.io.File(path).exists()) return null
-            val directory = java.io.File(path).isDirectory
+            val attributes = LocalFile.readAttributes(path)
+            if (attributes == null) {
+                cursor.close()
+                return null
+            }
+            val directory = attributes.isDirectory
             val id = cursor.getLong(0)
             val mimeType = cursor.getStringOrNull(3).takeIf { it != "application/octet-stream" }
                 ?: if (directory) "resource/folder" else LocalFile.getMimetypeByFileExtension(
@@ -98,7 +102,7 @@ internal class LocalFileDeserializer(
                 size = size,
                 isDirectory = directory,
                 id = id,
-                metaData = LocalFile.getMetaData(context, mimeType, path)
+                lastModified = attributes.lastModifiedTime().toMillis(),
             )
         }
         cursor.close()
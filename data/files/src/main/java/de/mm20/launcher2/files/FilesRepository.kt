@@ -74,12 +74,13 @@ internal class FileRepository(
 
                 for (provider in providers) {
                     launch {
-                        val r = provider.search(
+                        provider.searchPages(
                             query,
                             allowNetwork,
-                        )
-                        result.update {
-                            (it + r).toPersistentList()
+                        ).collect { r ->
+                            result.update {
+                                (it + r).toPersistentList()
+                            }
                         }
                     }
                 }
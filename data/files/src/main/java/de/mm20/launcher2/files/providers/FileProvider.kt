@@ -1,7 +1,17 @@
 package de.mm20.launcher2.files.providers
 
 import de.mm20.launcher2.search.File
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
 
 internal interface FileProvider {
     suspend fun search(query: String, allowNetwork: Boolean): List<File>
+
+    /**
+     * Like [search], but emits the results in pages as soon as they are available. Each page only
+     * contains new results. By default, all results are emitted as a single page.
+     */
+    fun searchPages(query: String, allowNetwork: Boolean): Flow<List<File>> = flow {
+        emit(search(query, allowNetwork))
+    }
 }
\ No newline at end of file
@@ -12,6 +12,7 @@ import android.net.Uri
 import android.os.Bundle
 import android.provider.MediaStore
 import android.text.format.DateUtils
+import android.util.LruCache
 import android.util.Size
 import androidx.core.content.FileProvider
 import androidx.exifinterface.media.ExifInterface
@@ -29,11 +30,16 @@ import de.mm20.launcher2.search.File
 import de.mm20.launcher2.search.FileMetaType
 import de.mm20.launcher2.search.SearchableSerializer
 import kotlinx.collections.immutable.ImmutableMap
+import kotlinx.collections.immutable.persistentMapOf
 import kotlinx.collections.immutable.toImmutableMap
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.withContext
 import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.InvalidPathException
+import java.nio.file.Paths
+import java.nio.file.attribute.BasicFileAttributes
 import java.io.File as JavaIOFile
 
 internal data class LocalFile(
@@ -42,10 +48,31 @@ internal data class LocalFile(
     override val mimeType: String,
     override val size: Long,
     override val isDirectory: Boolean,
-    override val metaData: ImmutableMap<FileMetaType, String>,
+    /**
+     * Last modification time of the file in milliseconds, used to invalidate cached metadata.
+     */
+    val lastModified: Long,
     override val labelOverride: String? = null
 ) : File {
 
+    private val metaDataKey: String
+        get() = "$path:$lastModified"
+
+    /**
+     * The metadata of this file, if it has already been loaded by [loadMetaData]. Empty otherwise.
+     */
+    override val metaData: ImmutableMap<FileMetaType, String>
+        get() = metaDataCache.get(metaDataKey) ?: persistentMapOf()
+
+    override suspend fun loadMetaData(context: Context): ImmutableMap<FileMetaType, String> {
+        metaDataCache.get(metaDataKey)?.let { return it }
+        val metaData = withContext(Dispatchers.IO) {
+            getMetaData(context, mimeType, path)
+        }
+        metaDataCache.put(metaDataKey, metaData)
+        return metaData
+    }
+
     override val label = path.substringAfterLast('/')
 
     override fun overrideLabel(label: String): LocalFile {
@@ -214,6 +241,26 @@ internal data class LocalFile(
 
         const val Domain = "file"
 
+        /**
+         * Extracted metadata, keyed by path and modification time. Extracting metadata can be
+         * expensive (i.e. it requires decoding media files), so it is only done on demand.
+         */
+        private val metaDataCache = LruCache<String, ImmutableMap<FileMetaType, String>>(100)
+
+        /**
+         * Reads the attributes of the file at [path] with a single stat call.
+         * @return the attributes, or null if the file doesn't exist
+         */
+        internal fun readAttributes(path: String): BasicFileAttributes? {
+            return try {
+                Files.readAttributes(Paths.get(path), BasicFileAttributes::class.java)
+            } catch (e: IOException) {
+                null
+            } catch (e: InvalidPathException) {
+                null
+            }
+        }
+
         internal fun getMimetypeByFileExtension(extension: String): String {
             return when (extension) {
                 "apk" -> "application/vnd.android.package-archive"
@@ -242,7 +289,7 @@ internal data class LocalFile(
         }
 
 
-        internal fun getMetaData(
+        private fun getMetaData(
             context: Context,
             mimeType: String,
             path: String
@@ -45,8 +45,8 @@ internal class LocalFileProvider(
                 break
             }
             val path = cursor.getString(3)
-            if (!java.io.File(path).exists()) continue
-            val directory = java.io.File(path).isDirectory
+            val attributes = LocalFile.readAttributes(path) ?: continue
+            val directory = attributes.isDirectory
             val mimeType = (cursor.getStringOrNull(4).takeIf { it != "application/octet-stream" }
                 ?: if (directory) "resource/folder" else LocalFile.getMimetypeByFileExtension(
                     path.substringAfterLast(
@@ -59,7 +59,7 @@ internal class LocalFileProvider(
                 size = cursor.getLong(2),
                 isDirectory = directory,
                 id = cursor.getLong(1),
-                metaData = LocalFile.getMetaData(context, mimeType, path)
+                lastModified = attributes.lastModifiedTime().toMillis(),
             )
             results.add(file)
         }
@@ -13,10 +13,12 @@ import de.mm20.launcher2.plugin.contracts.FilePluginContract.FileColumns
 import de.mm20.launcher2.plugin.contracts.SearchPluginContract
 import de.mm20.launcher2.plugin.data.set
 import de.mm20.launcher2.plugin.data.withColumns
+import de.mm20.launcher2.search.File
 import de.mm20.launcher2.search.FileMetaType
 import de.mm20.launcher2.search.UpdateResult
 import de.mm20.launcher2.search.asUpdateResult
 import kotlinx.collections.immutable.toPersistentMap
+import kotlinx.coroutines.flow.Flow
 
 class PluginFileProvider(
     private val context: Context,
@@ -102,6 +104,10 @@ class PluginFileProvider(
         return results
     }
 
+    override fun searchPages(query: String, allowNetwork: Boolean): Flow<List<File>> {
+        return searchPages(query, allowNetwork, limit = null)
+    }
+
     override fun PluginFile.toBundle(): Bundle {
         return Bundle().apply {
             set(FileColumns.Id, id)
@@ -38,6 +38,10 @@ android {
             jvmTarget.set(JvmTarget.JVM_11)
         }
     }
+    testOptions {
+        unitTests.isIncludeAndroidResources = true
+    }
+
     namespace = "de.mm20.launcher2.data.i18n"
 }
 
@@ -52,4 +56,6 @@ dependencies {
     implementation(project(":core:crashreporter"))
     implementation(project(":core:preferences"))
 
+    testImplementation(libs.bundles.tests)
+    testImplementation(libs.robolectric)
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package de.mm20.launcher2.data
+
+import android.icu.text.Transliterator
+import android.util.LruCache
+import androidx.annotation.RequiresApi
+import de.mm20.launcher2.crashreporter.CrashReporter
+import org.apache.commons.lang3.StringUtils
+import java.util.Locale
+
+/**
+ * Transliterates and lowercases strings with the ICU transliterator [id].
+ *
+ * Compiling a compound transliterator is expensive, so each thread compiles it only once and then
+ * reuses it; transliterator instances are not shared between threads. Strings that only consist of
+ * ASCII characters skip ICU entirely, as long as the transliterator leaves ASCII characters
+ * untouched. Recent results are memoized.
+ */
+@RequiresApi(29)
+internal class CachedTransliterator(
+    val id: String,
+    memoSize: Int = 1000,
+) {
+    private val transliterator = object : ThreadLocal<Transliterator?>() {
+        override fun initialValue(): Transliterator? {
+            return try {
+                Transliterator.getInstance(id)
+            } catch (e: IllegalArgumentException) {
+                CrashReporter.logException(e)
+                null
+            }
+        }
+    }
+
+    /**
+     * Whether ASCII strings are left unchanged by the transliterator, so that they only need to be
+     * lowercased.
+     */
+    private val isAsciiIdentity by lazy {
+        val transliterator = transliterator.get() ?: return@lazy false
+        transliterator.transliterate(AsciiProbe) == AsciiProbe
+    }
+
+    private val memo = LruCache<String, String>(memoSize)
+
+    fun transliterate(input: String): String {
+        if (isAscii(input) && isAsciiIdentity) {
+            return input.lowercase()
+        }
+        memo.get(input)?.let { return it }
+
+        val transliterator = transliterator.get()
+        val result = if (transliterator == null) {
+            StringUtils.stripAccents(input.lowercase(Locale.getDefault()))
+                .replace("æ", "ae")
+                .replace("œ", "oe")
+                .replace("ß", "ss")
+        } else {
+            transliterator.transliterate(input).lowercase()
+        }
+        memo.put(input, result)
+        return result
+    }
+
+    private fun isAscii(input: String): Boolean {
+        for (c in input) {
+            if (c.code > 0x7F) return false
+        }
+        return true
+    }
+
+    companion object {
+        /**
+         * All printable ASCII characters
+         */
+        private val AsciiProbe = (0x20..0x7E).joinToString("") { it.toChar().toString() }
+    }
+}
@@ -4,7 +4,6 @@ import android.content.Context
 import android.icu.text.Transliterator
 import android.icu.util.ULocale
 import androidx.annotation.RequiresApi
-import de.mm20.launcher2.crashreporter.CrashReporter
 import de.mm20.launcher2.preferences.ui.LocaleSettings
 import de.mm20.launcher2.search.StringNormalizer
 import kotlinx.coroutines.CoroutineScope
@@ -13,8 +12,6 @@ import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
-import org.apache.commons.lang3.StringUtils
-import java.util.Locale
 
 @RequiresApi(29)
 internal class IcuStringNormalizer(
@@ -33,24 +30,19 @@ internal class IcuStringNormalizer(
         }
         .stateIn(scope, SharingStarted.Eagerly, DisabledTransliteratorId)
 
+    @Volatile
+    private var transliterator: CachedTransliterator? = null
+
     override fun normalize(input: String): String {
         val id = transliteratorId.value
 
-        val transliterator = try {
-            Transliterator.getInstance(id)
-        } catch (e: IllegalArgumentException) {
-            CrashReporter.logException(e)
-            null
-        }
-
-        if (transliterator ==  null) {
-            return StringUtils.stripAccents(input.lowercase(Locale.getDefault()))
-                .replace("æ", "ae")
-                .replace("œ", "oe")
-                .replace("ß", "ss")
+        var transliterator = transliterator
+        if (transliterator?.id != id) {
+            transliterator = CachedTransliterator(id)
+            this.transliterator = transliterator
         }
 
-        return transliterator.transliterate(input).lowercase()
+        return transliterator.transliterate(input)
     }
 
     private fun getTransliteratorId(preferenceValue: String?): String {
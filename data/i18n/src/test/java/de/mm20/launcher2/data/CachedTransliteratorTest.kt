@@ -0,0 +1,77 @@
+package de.mm20.launcher2.data
+
+import android.icu.text.Transliterator
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/**
+ * Checks that [CachedTransliterator] (used by [IcuStringNormalizer]) returns the same results as
+ * plain ICU transliteration, on the ASCII fast path, from the memo table and after eviction.
+ */
+@RunWith(RobolectricTestRunner::class)
+class CachedTransliteratorTest {
+
+    private val labels = listOf(
+        "Calendar", "Camera", "Chrome", "Clock", "Contacts", "Files by Google", "Gmail",
+        "Google Maps", "Kvaesitso", "Messages", "Phone", "Play Store", "Settings", "YouTube",
+        "K-9 Mail", "F-Droid", "DB Navigator", "Tagesschau", "Wetter", "Rechner", "Galerie",
+        "Öffi", "Kölner Verkehrs-Betriebe", "Straße", "Café", "Señal", "Ærø",
+        "Календарь", "Настройки", "Телефон", "Камера",
+        "Ημερολόγιο", "Ρυθμίσεις",
+        "カレンダー", "設定", "電話", "カメラ",
+        "日历", "设置", "相机",
+        "", " ", "100% Sale!", "a_b.c@d#e~f", "Tab\tand\nnewline",
+    )
+
+    private val ids = listOf("Latin-ASCII", "Any-Latin;Latin-ASCII", "Any-Latin")
+
+    @Test
+    fun matchesIcu() {
+        for (id in ids) {
+            val icu = Transliterator.getInstance(id)
+            val cached = CachedTransliterator(id)
+            for (label in labels) {
+                val expected = icu.transliterate(label).lowercase()
+                // Twice, to hit the memo table for non-ASCII labels
+                Assert.assertEquals("$id: $label", expected, cached.transliterate(label))
+                Assert.assertEquals("$id: $label", expected, cached.transliterate(label))
+            }
+        }
+    }
+
+    @Test
+    fun matchesIcuAfterEviction() {
+        for (id in ids) {
+            val icu = Transliterator.getInstance(id)
+            val cached = CachedTransliterator(id, memoSize = 1)
+            repeat(2) {
+                for (label in labels) {
+                    Assert.assertEquals(
+                        "$id: $label",
+                        icu.transliterate(label).lowercase(),
+                        cached.transliterate(label),
+                    )
+                }
+            }
+        }
+    }
+
+    @Test
+    fun matchesIcuOnOtherThreads() {
+        val id = "Any-Latin;Latin-ASCII"
+        val icu = Transliterator.getInstance(id)
+        val expected = labels.map { icu.transliterate(it).lowercase() }
+        val cached = CachedTransliterator(id)
+        val results = arrayOfNulls<List<String>>(4)
+        val threads = List(results.size) { i ->
+            Thread { results[i] = labels.map { cached.transliterate(it) } }
+        }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+        for (result in results) {
+            Assert.assertEquals(expected, result)
+        }
+    }
+}
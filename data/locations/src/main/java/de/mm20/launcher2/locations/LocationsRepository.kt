@@ -30,6 +30,7 @@ internal class LocationsRepository(
     private val settings: LocationSearchSettings,
     private val poseProvider: DevicePoseProvider,
     private val permissionsManager: PermissionsManager,
+    private val osmLocationProvider: OsmLocationProvider,
 ) : SearchableRepository<Location> {
 
     @OptIn(FlowPreview::class)
@@ -60,7 +61,7 @@ internal class LocationsRepository(
 
             val providers = settingsData.providers.map {
                 when (it) {
-                    "openstreetmaps" -> OsmLocationProvider(context, settings)
+                    "openstreetmaps" -> osmLocationProvider
                     else -> PluginLocationProvider(context, it)
                 }
             }
@@ -70,15 +71,16 @@ internal class LocationsRepository(
 
                 for (provider in providers) {
                     launch {
-                        val r = provider.search(
+                        provider.searchPages(
                             query,
                             userLocation,
                             allowNetwork,
                             settingsData.searchRadius,
                             settingsData.hideUncategorized
-                        )
-                        result.update {
-                            (it + r).toPersistentList()
+                        ).collect { r ->
+                            result.update {
+                                (it + r).toPersistentList()
+                            }
                         }
                     }
                 }
@@ -12,7 +12,7 @@ import org.koin.dsl.module
 
 val locationsModule = module {
     single<OsmLocationProvider> { OsmLocationProvider(androidContext(), get()) }
-    single<LocationsRepository> { LocationsRepository(androidContext(), get(), get(), get()) }
+    single<LocationsRepository> { LocationsRepository(androidContext(), get(), get(), get(), get()) }
     factory<SearchableRepository<Location>>(named<Location>()) { get<LocationsRepository>() }
     factory<SearchableDeserializer>(named(OsmLocation.DOMAIN)) { OsmLocationDeserializer(get()) }
     factory<SearchableDeserializer>(named(PluginLocation.DOMAIN)) { PluginLocationDeserializer(androidContext(), get()) }
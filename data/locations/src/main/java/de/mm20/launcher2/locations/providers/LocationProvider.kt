@@ -2,6 +2,8 @@ package de.mm20.launcher2.locations.providers
 
 import de.mm20.launcher2.search.Location
 import de.mm20.launcher2.search.UpdateResult
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
 
 internal typealias AndroidLocation = android.location.Location
 
@@ -13,4 +15,18 @@ internal interface LocationProvider<TId> {
         searchRadiusMeters: Int,
         hideUncategorized: Boolean
     ): List<Location>
+
+    /**
+     * Like [search], but emits the results in pages as soon as they are available. Each page only
+     * contains new results. By default, all results are emitted as a single page.
+     */
+    fun searchPages(
+        query: String,
+        userLocation: AndroidLocation,
+        allowNetwork: Boolean,
+        searchRadiusMeters: Int,
+        hideUncategorized: Boolean
+    ): Flow<List<Location>> = flow {
+        emit(search(query, userLocation, allowNetwork, searchRadiusMeters, hideUncategorized))
+    }
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import de.mm20.launcher2.plugin.data.withColumns
 import de.mm20.launcher2.search.Location
 import de.mm20.launcher2.search.UpdateResult
 import de.mm20.launcher2.search.asUpdateResult
+import kotlinx.coroutines.flow.Flow
 
 internal class PluginLocationProvider(
     context: Context,
@@ -36,6 +37,20 @@ internal class PluginLocationProvider(
         )
     }
 
+    override fun searchPages(
+        query: String,
+        userLocation: AndroidLocation,
+        allowNetwork: Boolean,
+        searchRadiusMeters: Int,
+        hideUncategorized: Boolean
+    ): Flow<List<Location>> {
+        return searchPages(
+            query = Triple(query, userLocation, searchRadiusMeters),
+            allowNetwork = allowNetwork,
+            limit = null,
+        )
+    }
+
     override fun Uri.Builder.appendQueryParameters(query: Triple<String, AndroidLocation, Int>): Uri.Builder {
         return apply {
             appendQueryParameter(SearchPluginContract.Params.Query, query.first)
@@ -0,0 +1,65 @@
+package de.mm20.launcher2.locations.providers.openstreetmaps
+
+/**
+ * A [geohash](https://en.wikipedia.org/wiki/Geohash) cell, i.e. a rectangular area that contains
+ * all coordinates which share the same geohash prefix.
+ */
+internal data class GeohashCell(
+    val hash: String,
+    val minLatitude: Double,
+    val maxLatitude: Double,
+    val minLongitude: Double,
+    val maxLongitude: Double,
+) {
+    val centerLatitude: Double
+        get() = (minLatitude + maxLatitude) / 2
+
+    val centerLongitude: Double
+        get() = (minLongitude + maxLongitude) / 2
+
+    companion object {
+        private const val Base32 = "0123456789bcdefghjkmnpqrstuvwxyz"
+
+        /**
+         * Get the cell of the given precision (number of characters) that contains the coordinate.
+         */
+        fun of(latitude: Double, longitude: Double, precision: Int): GeohashCell {
+            var minLat = -90.0
+            var maxLat = 90.0
+            var minLon = -180.0
+            var maxLon = 180.0
+            val hash = StringBuilder(precision)
+            var isLongitude = true
+            var bits = 0
+            var char = 0
+            while (hash.length < precision) {
+                if (isLongitude) {
+                    val mid = (minLon + maxLon) / 2
+                    if (longitude >= mid) {
+                        char = (char shl 1) or 1
+                        minLon = mid
+                    } else {
+                        char = char shl 1
+                        maxLon = mid
+                    }
+                } else {
+                    val mid = (minLat + maxLat) / 2
+                    if (latitude >= mid) {
+                        char = (char shl 1) or 1
+                        minLat = mid
+                    } else {
+                        char = char shl 1
+                        maxLat = mid
+                    }
+                }
+                isLongitude = !isLongitude
+                if (++bits == 5) {
+                    hash.append(Base32[char])
+                    bits = 0
+                    char = 0
+                }
+            }
+            return GeohashCell(hash.toString(), minLat, maxLat, minLon, maxLon)
+        }
+    }
+}
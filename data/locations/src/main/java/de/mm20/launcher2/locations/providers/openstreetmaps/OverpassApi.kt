@@ -39,13 +39,43 @@ internal data class OverpassFuzzyRadiusQuery(
     val latitude: Double,
     val longitude: Double,
 ) : OverpassQuery {
+    private val namePattern: String
+        get() = query.split(' ').joinToString(separator = ".*") { Regex.escapeReplacement(it) }
+
+    private val nameRegex: Regex? by lazy {
+        try {
+            Regex(namePattern, RegexOption.IGNORE_CASE)
+        } catch (e: IllegalArgumentException) {
+            null
+        }
+    }
+
+    /**
+     * Whether [matches] can be used to evaluate this query locally.
+     */
+    val canMatchLocally: Boolean
+        get() = nameRegex != null
+
+    /**
+     * Checks whether the given element satisfies the name, brand, or tag conditions of this query.
+     * The bounding box is not checked.
+     */
+    fun matches(element: OverpassResponseElement): Boolean {
+        val regex = nameRegex ?: return false
+        val tags = element.tags ?: return false
+        if (tags["name"]?.let { regex.containsMatchIn(it) } == true) return true
+        if (tags["brand"]?.let { regex.containsMatchIn(it) } == true) return true
+        return tagGroups.any { group ->
+            group.split(',').all { tag ->
+                val (key, value) = tag.split('=', limit = 2).takeIf { it.size == 2 }
+                    ?: return@all false
+                tags[key] == value
+            }
+        }
+    }
+
     override fun toQueryString(): String {
-        val encodedQuery = query.split(' ')
-            .joinToString(
-                separator = ".*",
-                prefix = "\"",
-                postfix = "\""
-            ) { Regex.escapeReplacement(it) }
+        val encodedQuery = "\"$namePattern\""
 
         val overpassQlBuilder = StringBuilder()
         val latDegreeChange = radius * 0.00001 / 1.11
@@ -0,0 +1,47 @@
+import de.mm20.launcher2.locations.providers.openstreetmaps.GeohashCell
+import de.mm20.launcher2.locations.providers.openstreetmaps.OverpassFuzzyRadiusQuery
+import de.mm20.launcher2.locations.providers.openstreetmaps.OverpassResponseElement
+import org.junit.Assert
+import org.junit.Test
+
+class OverpassQueryTest {
+
+    private fun element(vararg tags: Pair<String, String>) = OverpassResponseElement(
+        type = "node",
+        id = 1L,
+        lat = 0.0,
+        lon = 0.0,
+        center = null,
+        tags = mapOf(*tags),
+    )
+
+    private fun query(query: String, vararg tagGroups: String) = OverpassFuzzyRadiusQuery(
+        query = query,
+        tagGroups = tagGroups.toList(),
+        radius = 1500,
+        latitude = 0.0,
+        longitude = 0.0,
+    )
+
+    @Test
+    fun testGeohash() {
+        val cell = GeohashCell.of(57.64911, 10.40744, 11)
+        Assert.assertEquals("u4pruydqqvj", cell.hash)
+        Assert.assertTrue(cell.minLatitude <= 57.64911 && 57.64911 <= cell.maxLatitude)
+        Assert.assertTrue(cell.minLongitude <= 10.40744 && 10.40744 <= cell.maxLongitude)
+        Assert.assertEquals("u4pruyd", GeohashCell.of(57.64911, 10.40744, 7).hash)
+    }
+
+    @Test
+    fun testMatches() {
+        val query = query("coffee sh", "amenity=cafe", "amenity=restaurant,cuisine=coffee_shop")
+        Assert.assertTrue(query.matches(element("name" to "The Coffee Shop")))
+        Assert.assertTrue(query.matches(element("brand" to "Coffee & Shakes")))
+        Assert.assertTrue(query.matches(element("amenity" to "cafe")))
+        Assert.assertTrue(
+            query.matches(element("amenity" to "restaurant", "cuisine" to "coffee_shop"))
+        )
+        Assert.assertFalse(query.matches(element("amenity" to "restaurant")))
+        Assert.assertFalse(query.matches(element("name" to "Shop Coffee")))
+    }
+}
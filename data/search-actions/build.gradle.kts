@@ -37,6 +37,10 @@ android {
             jvmTarget.set(JvmTarget.JVM_11)
         }
     }
+    testOptions {
+        unitTests.isIncludeAndroidResources = true
+    }
+
     namespace = "de.mm20.launcher2.searchactions"
 }
 
@@ -56,4 +60,7 @@ dependencies {
     implementation(project(":core:preferences"))
     implementation(project(":core:crashreporter"))
 
+    testImplementation(libs.bundles.tests)
+    testImplementation(libs.androidx.test.core)
+    testImplementation(libs.robolectric)
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package de.mm20.launcher2.searchactions
 
 import android.content.Context
 import android.icu.text.SimpleDateFormat
+import android.provider.Settings
 import android.text.format.DateFormat
 import java.text.ParseException
 import java.time.Duration
@@ -10,140 +11,229 @@ import java.time.LocalDateTime
 import java.time.LocalTime
 import java.time.ZoneId
 import java.util.Locale
+import java.util.TimeZone
 
 internal interface TextClassifier {
     suspend fun classify(context: Context, query: String): TextClassificationResult
 }
 
+/**
+ * Classifies search queries.
+ *
+ * Patterns are compiled once, date formats and localized unit symbols are created once per locale,
+ * time zone, date format and time format setting. Before any pattern is matched, a single pass
+ * over the query collects the character classes it contains, so that types that can't match are
+ * skipped altogether.
+ * Most queries (i.e. app names) don't contain any digits, so date parsing is rarely needed.
+ */
 internal class TextClassifierImpl : TextClassifier {
+
+    private data class FormatsKey(
+        val defaultLocale: Locale,
+        val locale: Locale,
+        val is24HourFormat: Boolean,
+        val dateFormatSetting: String?,
+        val timeZone: String,
+    )
+
+    private class Formats(
+        val key: FormatsKey,
+        val dateTimeFormat: SimpleDateFormat,
+        val dateFormat: java.text.DateFormat,
+        val timeFormat: SimpleDateFormat,
+        /**
+         * Timespan pattern, group 1 is the value, group 2 the unit symbol
+         */
+        val timespanRegex: Regex,
+        val secondsSymbol: String,
+        val minutesSymbol: String,
+        val hoursSymbol: String,
+        val daysSymbol: String,
+    )
+
+    @Volatile
+    private var formats: Formats? = null
+
     override suspend fun classify(context: Context, query: String): TextClassificationResult {
         val trimmedQuery = query.trim()
+        val scan = CharacterScan(trimmedQuery)
         return when {
-            trimmedQuery.matches(Regex("^\\S+@\\S+$")) -> TextClassificationResult(
+            scan.mayBeEmail && trimmedQuery.matches(EmailRegex) -> TextClassificationResult(
                 type = TextType.Email,
                 text = trimmedQuery,
                 email = trimmedQuery
             )
 
-            trimmedQuery.matches(Regex("^\\+?[0-9- /.]{4,18}$")) -> TextClassificationResult(
+            scan.mayBePhoneNumber && trimmedQuery.matches(PhoneNumberRegex) -> TextClassificationResult(
                 type = TextType.PhoneNumber,
                 text = trimmedQuery,
                 phoneNumber = trimmedQuery
             )
 
-            trimmedQuery.matches(Regex("^(http(s)?://.)?(www\\.)?[-a-zA-Z0-9@:%._+~#=]{2,256}\\.[a-z]{2,6}\\b([-a-zA-Z0-9@:%_+.~#?&/=]*)$")) -> TextClassificationResult(
+            scan.mayBeUrl && trimmedQuery.matches(UrlRegex) -> TextClassificationResult(
                 type = TextType.Url,
                 text = trimmedQuery,
                 url = trimmedQuery
             )
 
             else -> {
-                parseDate(context, trimmedQuery)?.let { return it }
+                if (scan.hasDigit) {
+                    parseDate(context, trimmedQuery)?.let { return it }
+                }
                 TextClassificationResult(type = TextType.Text, text = trimmedQuery)
             }
         }
     }
 
-    private fun parseDate(context: Context, trimmedQuery: String): TextClassificationResult? {
-        val dateTimeFormat = SimpleDateFormat(
-            DateFormat.getBestDateTimePattern(
-                Locale.getDefault(),
-                "yMd, H:m"
+    private fun getFormats(context: Context): Formats {
+        val key = FormatsKey(
+            defaultLocale = Locale.getDefault(),
+            locale = context.resources.configuration.locales[0],
+            is24HourFormat = DateFormat.is24HourFormat(context),
+            dateFormatSetting = Settings.System.getString(
+                context.contentResolver,
+                Settings.System.DATE_FORMAT
             ),
-            context.resources.configuration.locales[0]
+            timeZone = TimeZone.getDefault().id,
         )
-        try {
-            dateTimeFormat.parse(trimmedQuery)?.let {
-                val dateTime = LocalDateTime.ofInstant(it.toInstant(), ZoneId.systemDefault())
-                return TextClassificationResult(
-                    type = TextType.DateTime,
-                    text = trimmedQuery,
-                    time = dateTime.toLocalTime(),
-                    date = dateTime.toLocalDate(),
-                )
-            }
-        } catch (_: ParseException) {
-            // Not a datetime
-        }
-        val dateFormat = DateFormat.getDateFormat(context)
-        try {
-            dateFormat.parse(trimmedQuery)?.let {
-                return TextClassificationResult(
-                    type = TextType.Date,
-                    text = trimmedQuery,
-                    date = LocalDateTime.ofInstant(it.toInstant(), ZoneId.systemDefault())
-                        .toLocalDate()
-                )
-            }
-        } catch (_: ParseException) {
-            // Not a date either
-        }
-        val timeFormat = SimpleDateFormat(
-            DateFormat.getBestDateTimePattern(
-                Locale.getDefault(),
-                if (DateFormat.is24HourFormat(context)) "H:m" else "h:m a"
+        formats?.takeIf { it.key == key }?.let { return it }
+
+        val secondsSymbol = context.getString(R.string.unit_second_symbol)
+        val minutesSymbol = context.getString(R.string.unit_minute_symbol)
+        val hoursSymbol = context.getString(R.string.unit_hour_symbol)
+        val daysSymbol = context.getString(R.string.unit_day_symbol)
+        val units = listOf(secondsSymbol, daysSymbol, minutesSymbol, hoursSymbol)
+            .joinToString("|") { Regex.escape(it) }
+
+        val formats = Formats(
+            key = key,
+            dateTimeFormat = SimpleDateFormat(
+                DateFormat.getBestDateTimePattern(key.defaultLocale, "yMd, H:m"),
+                key.locale
             ),
-            context.resources.configuration.locales[0]
+            dateFormat = DateFormat.getDateFormat(context),
+            timeFormat = SimpleDateFormat(
+                DateFormat.getBestDateTimePattern(
+                    key.defaultLocale,
+                    if (key.is24HourFormat) "H:m" else "h:m a"
+                ),
+                key.locale
+            ),
+            timespanRegex = Regex("^([0-9]+)\\s?($units)$"),
+            secondsSymbol = secondsSymbol,
+            minutesSymbol = minutesSymbol,
+            hoursSymbol = hoursSymbol,
+            daysSymbol = daysSymbol,
         )
-        try {
-            timeFormat.parse(trimmedQuery)?.let {
-                return TextClassificationResult(
-                    type = TextType.Time,
-                    text = trimmedQuery,
-                    time = LocalDateTime.ofInstant(it.toInstant(), ZoneId.systemDefault())
-                        .toLocalTime(),
-                )
+        this.formats = formats
+        return formats
+    }
+
+    private fun parseDate(context: Context, trimmedQuery: String): TextClassificationResult? {
+        val formats = getFormats(context)
+        // Date formats are not thread safe
+        synchronized(formats) {
+            try {
+                formats.dateTimeFormat.parse(trimmedQuery)?.let {
+                    val dateTime = LocalDateTime.ofInstant(it.toInstant(), ZoneId.systemDefault())
+                    return TextClassificationResult(
+                        type = TextType.DateTime,
+                        text = trimmedQuery,
+                        time = dateTime.toLocalTime(),
+                        date = dateTime.toLocalDate(),
+                    )
+                }
+            } catch (_: ParseException) {
+                // Not a datetime
+            }
+            try {
+                formats.dateFormat.parse(trimmedQuery)?.let {
+                    return TextClassificationResult(
+                        type = TextType.Date,
+                        text = trimmedQuery,
+                        date = LocalDateTime.ofInstant(it.toInstant(), ZoneId.systemDefault())
+                            .toLocalDate()
+                    )
+                }
+            } catch (_: ParseException) {
+                // Not a date either
+            }
+            try {
+                formats.timeFormat.parse(trimmedQuery)?.let {
+                    return TextClassificationResult(
+                        type = TextType.Time,
+                        text = trimmedQuery,
+                        time = LocalDateTime.ofInstant(it.toInstant(), ZoneId.systemDefault())
+                            .toLocalTime(),
+                    )
+                }
+            } catch (_: ParseException) {
+                // Nope, not a time
             }
-        } catch (_: ParseException) {
-            // Nope, not a time
         }
 
-        val seconds = context.getString(R.string.unit_second_symbol)
-        val secondsMatch = Regex("^([0-9]+)\\s?${seconds}$").find(trimmedQuery)
-        if (secondsMatch != null) {
-            val value = secondsMatch.groups[1]!!.value.toLong()
-            return TextClassificationResult(
-                type = TextType.Timespan,
-                text = trimmedQuery,
-                timespan = Duration.ofSeconds(value)
-            )
+        val timespanMatch = formats.timespanRegex.find(trimmedQuery) ?: return null
+        val value = timespanMatch.groupValues[1].toLongOrNull() ?: return null
+        val timespan = when (timespanMatch.groupValues[2]) {
+            formats.secondsSymbol -> Duration.ofSeconds(value)
+            formats.daysSymbol -> Duration.ofDays(value)
+            formats.minutesSymbol -> Duration.ofMinutes(value)
+            formats.hoursSymbol -> Duration.ofHours(value)
+            else -> return null
         }
+        return TextClassificationResult(
+            type = TextType.Timespan,
+            text = trimmedQuery,
+            timespan = timespan,
+        )
+    }
 
-        val days = context.getString(R.string.unit_day_symbol)
-        val daysMatch = Regex("^([0-9]+)\\s?${days}$").find(trimmedQuery)
-        if (daysMatch != null) {
-            val value = daysMatch.groups[1]!!.value.toLong()
-            return TextClassificationResult(
-                type = TextType.Timespan,
-                text = trimmedQuery,
-                timespan = Duration.ofDays(value)
-            )
-        }
+    /**
+     * Character classes of a query, collected in a single pass.
+     */
+    private class CharacterScan(query: String) {
+        var hasDigit = false
+            private set
+        private var hasAt = false
+        private var hasDot = false
+        private var hasWhitespace = false
+        private var onlyPhoneChars = true
 
-        val minutes = context.getString(R.string.unit_minute_symbol)
-        val minutesMatch = Regex("^([0-9]+)\\s?${minutes}$").find(trimmedQuery)
-        if (minutesMatch != null) {
-            val value = minutesMatch.groups[1]!!.value.toLong()
-            val then = LocalDateTime.now().plusMinutes(value)
-            return TextClassificationResult(
-                type = TextType.Timespan,
-                text = trimmedQuery,
-                timespan = Duration.ofMinutes(value)
-            )
+        init {
+            for ((i, c) in query.withIndex()) {
+                when {
+                    c.isDigit() -> hasDigit = true
+                    c == '@' -> hasAt = true
+                    c == '.' -> hasDot = true
+                    c in RegexWhitespace -> hasWhitespace = true
+                }
+                if (c !in '0'..'9' && c != '-' && c != ' ' && c != '/' && c != '.' && !(c == '+' && i == 0)) {
+                    onlyPhoneChars = false
+                }
+            }
         }
 
-        val hours = context.getString(R.string.unit_hour_symbol)
-        val hoursMatch = Regex("^([0-9]+)\\s?${hours}$").find(trimmedQuery)
-        if (hoursMatch != null) {
-            val value = hoursMatch.groups[1]!!.value.toLong()
-            return TextClassificationResult(
-                type = TextType.Timespan,
-                text = trimmedQuery,
-                timespan = Duration.ofHours(value)
-            )
-        }
+        val mayBeEmail: Boolean
+            get() = hasAt && !hasWhitespace
+
+        val mayBePhoneNumber: Boolean
+            get() = onlyPhoneChars
+
+        val mayBeUrl: Boolean
+            get() = hasDot && !hasWhitespace
+    }
 
-        return null
+    companion object {
+        /**
+         * The characters that `\s` matches in the patterns below. This must not include any other
+         * characters (such as non-breaking spaces), otherwise queries that would match the patterns
+         * are skipped.
+         */
+        private const val RegexWhitespace = " \t\n\u000B\u000C\r"
+        private val EmailRegex = Regex("^\\S+@\\S+$")
+        private val PhoneNumberRegex = Regex("^\\+?[0-9- /.]{4,18}$")
+        private val UrlRegex =
+            Regex("^(http(s)?://.)?(www\\.)?[-a-zA-Z0-9@:%._+~#=]{2,256}\\.[a-z]{2,6}\\b([-a-zA-Z0-9@:%_+.~#?&/=]*)$")
     }
 }
 
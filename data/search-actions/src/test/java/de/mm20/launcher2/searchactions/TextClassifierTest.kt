@@ -0,0 +1,202 @@
+package de.mm20.launcher2.searchactions
+
+import android.content.Context
+import android.icu.text.SimpleDateFormat
+import android.provider.Settings
+import android.text.format.DateFormat
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.text.ParseException
+import java.time.Duration
+import java.time.LocalDateTime
+import java.time.ZoneId
+import java.util.Locale
+
+/**
+ * Compares [TextClassifierImpl] with the previous implementation, which matched every pattern
+ * against every query and created all date formats on each call.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(qualifiers = "en-rUS")
+class TextClassifierTest {
+
+    private val context = ApplicationProvider.getApplicationContext<Context>()
+
+    private val corpus = listOf(
+        "", "c", "ca", "cal", "calc", "calendar", "Google Maps", "firefox", "spotify", "wetter",
+        "settings", "kvaesitso", "Öffi", "Календарь", "カメラ", "how to bake bread",
+        "weather tomorrow", "2048", "Route 66", "mail@example.com", "  mail@example.com  ",
+        "mail @example.com", "mail@example.com\tfoo", "mail\u00A0name@example.com",
+        "name@example\u2003com", "@", "a@b", "+49 171 1234567", "0171/1234567", "+49",
+        "1234", "12.34.56", "0171-123 45 67 89 01 23", "+4917112345\u00A067", "example.com",
+        "www.example.com", "example\u00A0.com", "https://www.example.com/path?q=1",
+        "http://a.b", "kvaesitso.mm20.de", "v1.2", "5 min", "5min", "5\u00A0min", "2h", "2 h",
+        "30s", "7 d", "7 days", "12 x", "12:30", "9:05 PM", "21:05", "3/14/2025",
+        "3/14/2025, 12:30", "14.03.2025", "2025-03-14", "99/99/9999",
+        "\u0663/\u0661\u0664/\u0662\u0660\u0662\u0665", "\u0967\u096A.\u0966\u0969.\u0968\u0966\u0968\u096B",
+    )
+
+    private fun assertSameResults(classifier: TextClassifier) = runBlocking {
+        for (query in corpus) {
+            Assert.assertEquals(
+                "query \"$query\"",
+                PreviousTextClassifier.classify(context, query),
+                classifier.classify(context, query),
+            )
+        }
+    }
+
+    @Test
+    fun matchesPreviousClassifier() {
+        val classifier = TextClassifierImpl()
+        // Twice, so that the cached formats are used
+        assertSameResults(classifier)
+        assertSameResults(classifier)
+    }
+
+    @Test
+    @Config(qualifiers = "de-rDE")
+    fun matchesPreviousClassifierInOtherLocale() {
+        assertSameResults(TextClassifierImpl())
+    }
+
+    @Test
+    fun matchesPreviousClassifierAfterSettingsChange() {
+        val classifier = TextClassifierImpl()
+        assertSameResults(classifier)
+
+        Settings.System.putString(context.contentResolver, Settings.System.TIME_12_24, "24")
+        assertSameResults(classifier)
+
+        Settings.System.putString(context.contentResolver, Settings.System.DATE_FORMAT, "dd-MM-yyyy")
+        assertSameResults(classifier)
+
+        Settings.System.putString(context.contentResolver, Settings.System.TIME_12_24, "12")
+        Settings.System.putString(context.contentResolver, Settings.System.DATE_FORMAT, "yyyy-MM-dd")
+        assertSameResults(classifier)
+    }
+
+    @Test
+    fun classifiesTypicalQueries() = runBlocking {
+        val classifier = TextClassifierImpl()
+        suspend fun type(query: String) = classifier.classify(context, query).type
+
+        Assert.assertEquals(TextType.Text, type("Google Maps"))
+        Assert.assertEquals(TextType.Text, type("Календарь"))
+        Assert.assertEquals(TextType.Email, type("mail@example.com"))
+        Assert.assertEquals(TextType.PhoneNumber, type("+49 171 1234567"))
+        Assert.assertEquals(TextType.PhoneNumber, type("0171/1234567"))
+        Assert.assertEquals(TextType.Url, type("example.com"))
+        Assert.assertEquals(TextType.Url, type("https://www.example.com/path?q=1"))
+
+        val timespan = classifier.classify(context, "5 min")
+        Assert.assertEquals(TextType.Timespan, timespan.type)
+        Assert.assertEquals(Duration.ofMinutes(5), timespan.timespan)
+        Assert.assertEquals(Duration.ofHours(2), classifier.classify(context, "2h").timespan)
+        Assert.assertEquals(Duration.ofSeconds(30), classifier.classify(context, "30s").timespan)
+        Assert.assertEquals(Duration.ofDays(7), classifier.classify(context, "7 d").timespan)
+    }
+
+    /**
+     * The previous implementation of [TextClassifierImpl].
+     */
+    private object PreviousTextClassifier {
+        fun classify(context: Context, query: String): TextClassificationResult {
+            val trimmedQuery = query.trim()
+            return when {
+                trimmedQuery.matches(Regex("^\\S+@\\S+$")) -> TextClassificationResult(
+                    type = TextType.Email,
+                    text = trimmedQuery,
+                    email = trimmedQuery
+                )
+
+                trimmedQuery.matches(Regex("^\\+?[0-9- /.]{4,18}$")) -> TextClassificationResult(
+                    type = TextType.PhoneNumber,
+                    text = trimmedQuery,
+                    phoneNumber = trimmedQuery
+                )
+
+                trimmedQuery.matches(Regex("^(http(s)?://.)?(www\\.)?[-a-zA-Z0-9@:%._+~#=]{2,256}\\.[a-z]{2,6}\\b([-a-zA-Z0-9@:%_+.~#?&/=]*)$")) -> TextClassificationResult(
+                    type = TextType.Url,
+                    text = trimmedQuery,
+                    url = trimmedQuery
+                )
+
+                else -> parseDate(context, trimmedQuery)
+                    ?: TextClassificationResult(type = TextType.Text, text = trimmedQuery)
+            }
+        }
+
+        private fun parseDate(context: Context, trimmedQuery: String): TextClassificationResult? {
+            val locale = context.resources.configuration.locales[0]
+            val dateTimeFormat = SimpleDateFormat(
+                DateFormat.getBestDateTimePattern(Locale.getDefault(), "yMd, H:m"),
+                locale
+            )
+            try {
+                dateTimeFormat.parse(trimmedQuery)?.let {
+                    val dateTime = LocalDateTime.ofInstant(it.toInstant(), ZoneId.systemDefault())
+                    return TextClassificationResult(
+                        type = TextType.DateTime,
+                        text = trimmedQuery,
+                        time = dateTime.toLocalTime(),
+                        date = dateTime.toLocalDate(),
+                    )
+                }
+            } catch (_: ParseException) {
+            }
+            try {
+                DateFormat.getDateFormat(context).parse(trimmedQuery)?.let {
+                    return TextClassificationResult(
+                        type = TextType.Date,
+                        text = trimmedQuery,
+                        date = LocalDateTime.ofInstant(it.toInstant(), ZoneId.systemDefault())
+                            .toLocalDate()
+                    )
+                }
+            } catch (_: ParseException) {
+            }
+            val timeFormat = SimpleDateFormat(
+                DateFormat.getBestDateTimePattern(
+                    Locale.getDefault(),
+                    if (DateFormat.is24HourFormat(context)) "H:m" else "h:m a"
+                ),
+                locale
+            )
+            try {
+                timeFormat.parse(trimmedQuery)?.let {
+                    return TextClassificationResult(
+                        type = TextType.Time,
+                        text = trimmedQuery,
+                        time = LocalDateTime.ofInstant(it.toInstant(), ZoneId.systemDefault())
+                            .toLocalTime(),
+                    )
+                }
+            } catch (_: ParseException) {
+            }
+
+            val units = listOf<Pair<Int, (Long) -> Duration>>(
+                R.string.unit_second_symbol to { Duration.ofSeconds(it) },
+                R.string.unit_day_symbol to { Duration.ofDays(it) },
+                R.string.unit_minute_symbol to { Duration.ofMinutes(it) },
+                R.string.unit_hour_symbol to { Duration.ofHours(it) },
+            )
+            for ((symbol, toDuration) in units) {
+                val match = Regex("^([0-9]+)\\s?${context.getString(symbol)}$").find(trimmedQuery)
+                if (match != null) {
+                    return TextClassificationResult(
+                        type = TextType.Timespan,
+                        text = trimmedQuery,
+                        timespan = toDuration(match.groups[1]!!.value.toLong())
+                    )
+                }
+            }
+            return null
+        }
+    }
+}
@@ -2,7 +2,8 @@ package de.mm20.launcher2.searchable
 
 import android.util.Log
 import androidx.room.withTransaction
-import de.mm20.launcher2.backup.Backupable
+import de.mm20.launcher2.backup.BackupWriter
+import de.mm20.launcher2.backup.StreamingBackupable
 import de.mm20.launcher2.crashreporter.CrashReporter
 import de.mm20.launcher2.database.AppDatabase
 import de.mm20.launcher2.database.entities.SavedSearchableEntity
@@ -18,7 +19,11 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.emitAll
 import kotlinx.coroutines.flow.firstOrNull
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.launch
@@ -30,9 +35,9 @@ import org.koin.core.component.get
 import org.koin.core.error.InstanceCreationException
 import org.koin.core.error.NoDefinitionFoundException
 import org.koin.core.qualifier.named
-import java.io.File
+import java.io.InputStream
 
-interface SavableSearchableRepository : Backupable {
+interface SavableSearchableRepository : StreamingBackupable {
 
     fun insert(
         searchable: SavableSearchable,
@@ -127,6 +132,14 @@ interface SavableSearchableRepository : Backupable {
      */
     fun getByKeys(keys: List<String>): Flow<List<SavableSearchable>>
 
+    /**
+     * Like [getByKeys], but for a changing set of keys, and mapped by key.
+     * Items are only deserialized again if their serialized data has changed, and changes that
+     * don't affect the items themselves (launch counts, weights, pin positions) don't cause
+     * a new emission.
+     */
+    fun observeByKeys(keys: Flow<Set<String>>): Flow<Map<String, SavableSearchable>>
+
     /**
      * Remove database entries that are invalid. This includes
      * - entries that cannot be deserialized anymore
@@ -170,6 +183,7 @@ internal class SavableSearchableRepositoryImpl(
         val dao = database.searchableDao()
         scope.launch {
             val entity = dao.getByKey(searchable.key).firstOrNull()
+            val weightScale = if (weight != null) dao.getWeightScale() ?: 1.0 else 1.0
             dao.upsert(
                 SavedSearchableEntity(
                     key = searchable.key,
@@ -177,7 +191,7 @@ internal class SavableSearchableRepositoryImpl(
                     visibility = visibility?.value ?: entity?.visibility ?: 0,
                     pinPosition = pinned?.let { if (it) 1 else 0 } ?: entity?.pinPosition ?: 0,
                     launchCount = launchCount ?: entity?.launchCount ?: 0,
-                    weight = weight ?: entity?.weight ?: 0.0,
+                    weight = weight?.div(weightScale) ?: entity?.weight ?: 0.0,
                     serializedSearchable = searchable.serialize() ?: return@launch,
                 )
             )
@@ -194,6 +208,7 @@ internal class SavableSearchableRepositoryImpl(
         val dao = database.searchableDao()
         scope.launch {
             val entity = dao.getByKey(searchable.key).firstOrNull()
+            val weightScale = if (weight != null) dao.getWeightScale() ?: 1.0 else 1.0
             dao.upsert(
                 SavedSearchableEntity(
                     key = searchable.key,
@@ -201,7 +216,7 @@ internal class SavableSearchableRepositoryImpl(
                     visibility = visibility?.value ?: entity?.visibility ?: 0,
                     pinPosition = pinned?.let { if (it) 1 else 0 } ?: entity?.pinPosition ?: 0,
                     launchCount = launchCount ?: entity?.launchCount ?: 0,
-                    weight = weight ?: entity?.weight ?: 0.0,
+                    weight = weight?.div(weightScale) ?: entity?.weight ?: 0.0,
                     serializedSearchable = searchable.serialize() ?: return@launch,
                 )
             )
@@ -445,11 +460,50 @@ internal class SavableSearchableRepositoryImpl(
             .map { it.mapNotNull { fromDatabaseEntity(it).searchable } }
     }
 
-    override suspend fun backup(toDir: File) = withContext(Dispatchers.IO) {
+    override fun observeByKeys(keys: Flow<Set<String>>): Flow<Map<String, SavableSearchable>> = flow {
+        // key -> (serialized searchable, deserialized searchable)
+        val cache = mutableMapOf<String, Pair<String, SavableSearchable?>>()
+        val entities = keys.flatMapLatest { getEntitiesByKeys(it.toList()) }
+            .map { entities ->
+                val result = mutableMapOf<String, SavableSearchable>()
+                for (entity in entities) {
+                    val cached = cache[entity.key]
+                    val searchable = if (cached?.first == entity.serializedSearchable) {
+                        cached.second
+                    } else {
+                        fromDatabaseEntity(entity).searchable.also {
+                            cache[entity.key] = entity.serializedSearchable to it
+                        }
+                    }
+                    if (searchable != null) result[entity.key] = searchable
+                }
+                cache.keys.retainAll(entities.map { it.key }.toSet())
+                result
+            }
+            .distinctUntilChanged()
+        emitAll(entities)
+    }
+
+    private fun getEntitiesByKeys(keys: List<String>): Flow<List<SavedSearchableEntity>> {
+        val dao = database.searchableDao()
+        if (keys.isEmpty()) return flowOf(emptyList())
+        if (keys.size > 999) {
+            return combine(keys.chunked(999).map { dao.getByKeys(it) }) { results ->
+                results.flatMap { it }
+            }
+        }
+        return dao.getByKeys(keys)
+    }
+
+    override fun isBackupEntry(name: String): Boolean {
+        return name.startsWith("favorites.")
+    }
+
+    override suspend fun backup(writer: BackupWriter) = withContext(Dispatchers.IO) {
         val dao = database.backupDao()
         var page = 0
-        do {
-            val favorites = dao.exportFavorites(limit = 100, offset = page * 100)
+        var favorites = dao.exportFavorites(limit = BACKUP_PAGE_SIZE)
+        while (favorites.isNotEmpty()) {
             val jsonArray = JSONArray()
             for (fav in favorites) {
                 jsonArray.put(
@@ -465,45 +519,43 @@ internal class SavableSearchableRepositoryImpl(
                 )
             }
 
-            val file = File(toDir, "favorites.${page.toString().padStart(4, '0')}")
-            file.bufferedWriter().use {
-                it.write(jsonArray.toString())
+            writer.writeEntry("favorites.${page.toString().padStart(4, '0')}") {
+                it.write(jsonArray.toString().toByteArray())
             }
             page++
-        } while (favorites.size == 100)
+            if (favorites.size < BACKUP_PAGE_SIZE) break
+            favorites = dao.exportFavoritesAfter(afterKey = favorites.last().key, limit = BACKUP_PAGE_SIZE)
+        }
     }
 
-    override suspend fun restore(fromDir: File) = withContext(Dispatchers.IO) {
+    override suspend fun beginRestore() = withContext(Dispatchers.IO) {
+        database.backupDao().wipeFavorites()
+    }
+
+    override suspend fun restoreEntry(name: String, input: InputStream) = withContext(Dispatchers.IO) {
         val dao = database.backupDao()
-        dao.wipeFavorites()
-
-        val files =
-            fromDir.listFiles { _, name -> name.startsWith("favorites.") } ?: return@withContext
-
-        for (file in files) {
-            val favorites = mutableListOf<SavedSearchableEntity>()
-            try {
-                val jsonArray = JSONArray(file.inputStream().reader().readText())
-
-                for (i in 0 until jsonArray.length()) {
-                    val json = jsonArray.getJSONObject(i)
-                    val entity = SavedSearchableEntity(
-                        key = json.getString("key"),
-                        type = json.optString("type").takeIf { it.isNotEmpty() } ?: continue,
-                        serializedSearchable = json.getString("searchable"),
-                        launchCount = json.getInt("launchCount"),
-                        visibility = json.optInt("visibility", 0),
-                        pinPosition = json.getInt("pinPosition"),
-                        weight = json.optDouble("weight").takeIf { !it.isNaN() } ?: 0.0
-                    )
-                    favorites.add(entity)
-                }
+        val favorites = mutableListOf<SavedSearchableEntity>()
+        try {
+            val jsonArray = JSONArray(input.reader().readText())
+
+            for (i in 0 until jsonArray.length()) {
+                val json = jsonArray.getJSONObject(i)
+                val entity = SavedSearchableEntity(
+                    key = json.getString("key"),
+                    type = json.optString("type").takeIf { it.isNotEmpty() } ?: continue,
+                    serializedSearchable = json.getString("searchable"),
+                    launchCount = json.getInt("launchCount"),
+                    visibility = json.optInt("visibility", 0),
+                    pinPosition = json.getInt("pinPosition"),
+                    weight = json.optDouble("weight").takeIf { !it.isNaN() } ?: 0.0
+                )
+                favorites.add(entity)
+            }
 
-                dao.importFavorites(favorites)
+            dao.importFavorites(favorites)
 
-            } catch (e: JSONException) {
-                CrashReporter.logException(e)
-            }
+        } catch (e: JSONException) {
+            CrashReporter.logException(e)
         }
     }
 
@@ -511,9 +563,8 @@ internal class SavableSearchableRepositoryImpl(
         var removed = 0
         val job = scope.launch {
             val dao = database.backupDao()
-            var page = 0
-            do {
-                val favorites = dao.exportFavorites(limit = 100, offset = page * 100)
+            var favorites = dao.exportFavorites(limit = BACKUP_PAGE_SIZE)
+            while (favorites.isNotEmpty()) {
                 for (fav in favorites) {
                     val item = fromDatabaseEntity(fav)
                     if (item.searchable == null || item.searchable.key != item.key) {
@@ -525,8 +576,9 @@ internal class SavableSearchableRepositoryImpl(
                         )
                     }
                 }
-                page++
-            } while (favorites.size == 100)
+                if (favorites.size < BACKUP_PAGE_SIZE) break
+                favorites = dao.exportFavoritesAfter(afterKey = favorites.last().key, limit = BACKUP_PAGE_SIZE)
+            }
         }
         job.join()
         return removed
@@ -536,5 +588,7 @@ internal class SavableSearchableRepositoryImpl(
         private const val WEIGHT_FACTOR_LOW = 0.01
         private const val WEIGHT_FACTOR_MEDIUM = 0.03
         private const val WEIGHT_FACTOR_HIGH = 0.1
+
+        private const val BACKUP_PAGE_SIZE = 100
     }
 }
\ No newline at end of file
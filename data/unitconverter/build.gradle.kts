@@ -37,6 +37,10 @@ android {
             jvmTarget.set(JvmTarget.JVM_11)
         }
     }
+    testOptions {
+        unitTests.isIncludeAndroidResources = true
+    }
+
     namespace = "de.mm20.launcher2.unitconverter"
 }
 
@@ -54,4 +58,7 @@ dependencies {
     implementation(project(":core:base"))
     implementation(project(":core:i18n"))
 
+    testImplementation(libs.bundles.tests)
+    testImplementation(libs.androidx.test.core)
+    testImplementation(libs.robolectric)
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package de.mm20.launcher2.unitconverter
+
+/**
+ * A tokenized unit converter query, e.g. `5 km >> mi`.
+ */
+internal data class UnitConverterQuery(
+    val value: Double,
+    val inputUnit: String,
+    val outputUnit: String?,
+) {
+    companion object {
+        private val Tokenizer = Regex("""([+\-]?[\d+\-e,.]+|[^\d>\-]+)""")
+
+        /**
+         * @return the tokenized query, or null if the query is not of the form
+         * `<value> <unit> [[>>|->] <unit>]`
+         */
+        fun parse(query: String): UnitConverterQuery? {
+            val matches = Tokenizer.findAll(query)
+
+            var inputValue: Double? = null
+            var inputUnit: String? = null
+            var outputUnit: String? = null
+
+            for ((i, match) in matches.withIndex()) {
+                when (i) {
+                    0 -> {
+                        val inputStr = match.value.trim()
+                        inputValue = inputStr.toDoubleOrNull()
+                            ?: inputStr.replace(',', '.').toDoubleOrNull()
+                                    ?: return null
+                    }
+                    1 -> inputUnit = match.value.trim()
+                    2 -> {
+                        if (!match.value.contains("-") && !match.value.contains(">")) {
+                            outputUnit = match.value.trim()
+                        }
+                    }
+                    3 -> {
+                        if (outputUnit == null) {
+                            outputUnit = match.value.trim()
+                            break
+                        } else {
+                            return null
+                        }
+                    }
+                    else -> return null
+                }
+            }
+
+            if (inputValue == null || inputUnit == null) {
+                return null
+            }
+            return UnitConverterQuery(inputValue, inputUnit, outputUnit)
+        }
+    }
+}
@@ -18,11 +18,16 @@ import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.shareIn
 import kotlinx.coroutines.launch
 import org.koin.core.component.KoinComponent
 
@@ -49,80 +54,68 @@ internal class UnitConverterRepositoryImpl(
         }
     }
 
+    private val currencyUnits: Flow<CurrencyUnits> = combine(
+        settings.preferredCurrencies,
+        currencyRepository.getKnownCurrencies(),
+    ) { preferredCurrencies, currencies ->
+        CurrencyUnits(
+            converter = CurrencyConverter(currencyRepository, preferredCurrencies),
+            repository = currencyRepository,
+            currencies = currencies,
+        )
+    }.shareIn(scope, SharingStarted.WhileSubscribed(), 1)
+
+    @Volatile
+    private var unitIndex: UnitIndex? = null
+
     override fun search(query: String): Flow<UnitConverter?> {
         if (query.isBlank()) return flowOf(null)
-        return settings.distinctUntilChanged().map {
-            if (!it.enabled) null
-            else queryUnitConverter(query, it.currencies)
+        val parsed = UnitConverterQuery.parse(query) ?: return flowOf(null)
+        return settings.distinctUntilChanged().flatMapLatest {
+            when {
+                !it.enabled -> flowOf(null)
+                !it.currencies -> flow { emit(queryUnitConverter(parsed, null)) }
+                else -> currencyUnits.map { currencies -> queryUnitConverter(parsed, currencies) }
+            }
         }
     }
 
     override suspend fun getAvailableConverters(includeCurrencies: Boolean): List<Converter> {
-        val converters = mutableListOf(
-            MassConverter(context),
-            LengthConverter(context),
-            DataConverter(context),
-            TimeConverter(context),
-            VelocityConverter(context),
-            AreaConverter(context),
-            TemperatureConverter(context),
-            VolumeConverter(context),
-        )
+        val converters = getUnitIndex().converters.toMutableList()
         if (includeCurrencies) converters.add(CurrencyConverter(currencyRepository, settings.preferredCurrencies.first()))
 
         return converters
     }
 
+    /**
+     * Get the index of all non-currency units, rebuilding it if the locale has changed since.
+     */
+    private suspend fun getUnitIndex(): UnitIndex {
+        val locales = context.resources.configuration.locales
+        unitIndex?.takeIf { it.locales == locales }?.let { return it }
+        val index = UnitIndex.build(
+            locales,
+            listOf(
+                MassConverter(context),
+                LengthConverter(context),
+                DataConverter(context),
+                TimeConverter(context),
+                VelocityConverter(context),
+                AreaConverter(context),
+                TemperatureConverter(context),
+                VolumeConverter(context),
+            )
+        )
+        unitIndex = index
+        return index
+    }
+
     private suspend fun queryUnitConverter(
-        query: String,
-        includeCurrencies: Boolean
+        query: UnitConverterQuery,
+        currencies: CurrencyUnits?,
     ): UnitConverter? {
-        val regex = Regex("""([+\-]?[\d+\-e,.]+|[^\d>\-]+)""")
-
-        val matches = regex.findAll(query)
-
-        var inputStr: String? = null
-        var inputValue: Double? = null
-        var inputUnit: String? = null
-        var outputUnit: String? = null
-
-        for ((i, match) in matches.withIndex()) {
-            when (i) {
-                0 -> {
-                    inputStr = match.value.trim()
-                    inputValue = inputStr.toDoubleOrNull()
-                        ?: inputStr.replace(',', '.').toDoubleOrNull()
-                                ?: return null
-                }
-                1 -> inputUnit = match.value.trim()
-                2 -> {
-                    if (!match.value.contains("-") && !match.value.contains(">")) {
-                        outputUnit = match.value.trim()
-                    }
-                }
-                3 -> {
-                    if (outputUnit == null) {
-                        outputUnit = match.value.trim()
-                        break
-                    } else {
-                        return null
-                    }
-                }
-                else -> return null
-            }
-        }
-
-        if (inputValue == null || inputUnit == null) {
-            return null
-        }
-
-        val converters = getAvailableConverters(includeCurrencies)
-
-        for (converter in converters) {
-            if (!converter.isValidUnit(inputUnit)) continue
-            if (outputUnit != null && !converter.isValidUnit(outputUnit)) continue
-            return converter.convert(context, inputUnit, inputValue, outputUnit)
-        }
-        return null
+        val converter = getUnitIndex().find(query.inputUnit, query.outputUnit, currencies)
+            ?: return null
+        return converter.convert(context, query.inputUnit, query.value, query.outputUnit)
     }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package de.mm20.launcher2.unitconverter
+
+import android.os.LocaleList
+import de.mm20.launcher2.currencies.CurrencyRepository
+import de.mm20.launcher2.unitconverter.converters.Converter
+import de.mm20.launcher2.unitconverter.converters.CurrencyConverter
+
+/**
+ * Lookup table from unit symbols to the converters that support them, so that a query can be
+ * resolved with a single lookup per unit instead of asking each converter.
+ *
+ * Unit symbols are localized, so an index is only valid for the [locales] it was built with.
+ */
+internal class UnitIndex private constructor(
+    val locales: LocaleList,
+    /**
+     * All converters of this index, in order of precedence.
+     */
+    val converters: List<Converter>,
+    private val symbols: Map<String, List<Converter>>,
+) {
+
+    /**
+     * Find the first converter that supports both units.
+     * @param currencies the currencies to fall back to if no other converter supports the units
+     */
+    fun find(inputUnit: String, outputUnit: String?, currencies: CurrencyUnits?): Converter? {
+        val candidates = symbols[inputUnit]
+        if (candidates != null) {
+            val outputCandidates = outputUnit?.let { symbols[it] }
+            for (converter in candidates) {
+                if (outputUnit == null || outputCandidates?.contains(converter) == true) {
+                    return converter
+                }
+            }
+        }
+        if (currencies != null && currencies.isValid(inputUnit) &&
+            (outputUnit == null || currencies.isValid(outputUnit))
+        ) {
+            return currencies.converter
+        }
+        return null
+    }
+
+    companion object {
+        suspend fun build(locales: LocaleList, converters: List<Converter>): UnitIndex {
+            val symbols = mutableMapOf<String, MutableList<Converter>>()
+            for (converter in converters) {
+                for (unit in converter.getSupportedUnits()) {
+                    val list = symbols.getOrPut(unit.symbol) { mutableListOf() }
+                    if (converter !in list) list.add(converter)
+                }
+            }
+            return UnitIndex(locales, converters, symbols)
+        }
+    }
+}
+
+/**
+ * Snapshot of the currencies that exchange rates are known for, so that currency symbols can be
+ * validated without a database query.
+ */
+internal class CurrencyUnits(
+    val converter: CurrencyConverter,
+    private val repository: CurrencyRepository,
+    private val currencies: Set<String>,
+) {
+    fun isValid(symbol: String): Boolean {
+        return repository.resolveAlias(symbol) in currencies
+    }
+}
@@ -0,0 +1,18 @@
+package de.mm20.launcher2.unitconverter
+
+import org.junit.Assert
+import org.junit.Test
+
+class UnitConverterQueryTest {
+
+    @Test
+    fun parsesQueries() {
+        Assert.assertEquals(UnitConverterQuery(5.0, "km", null), UnitConverterQuery.parse("5 km"))
+        Assert.assertEquals(UnitConverterQuery(5.0, "km", "mi"), UnitConverterQuery.parse("5 km >> mi"))
+        Assert.assertEquals(UnitConverterQuery(5.0, "km", "mi"), UnitConverterQuery.parse("5km->mi"))
+        Assert.assertEquals(UnitConverterQuery(2.5, "l", null), UnitConverterQuery.parse("2,5 l"))
+        Assert.assertEquals(UnitConverterQuery(-40.0, "°C", null), UnitConverterQuery.parse("-40 °C"))
+        Assert.assertNull(UnitConverterQuery.parse("calendar"))
+        Assert.assertNull(UnitConverterQuery.parse("12345"))
+    }
+}
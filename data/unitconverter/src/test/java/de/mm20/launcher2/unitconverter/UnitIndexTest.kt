@@ -0,0 +1,135 @@
+package de.mm20.launcher2.unitconverter
+
+import android.content.Context
+import android.os.LocaleList
+import androidx.test.core.app.ApplicationProvider
+import de.mm20.launcher2.search.data.UnitConverter
+import de.mm20.launcher2.unitconverter.converters.AreaConverter
+import de.mm20.launcher2.unitconverter.converters.Converter
+import de.mm20.launcher2.unitconverter.converters.DataConverter
+import de.mm20.launcher2.unitconverter.converters.LengthConverter
+import de.mm20.launcher2.unitconverter.converters.MassConverter
+import de.mm20.launcher2.unitconverter.converters.TemperatureConverter
+import de.mm20.launcher2.unitconverter.converters.TimeConverter
+import de.mm20.launcher2.unitconverter.converters.VelocityConverter
+import de.mm20.launcher2.unitconverter.converters.VolumeConverter
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Checks that [UnitIndex] resolves the same converters as asking each converter in order of
+ * precedence, which is what the unit converter did before the index was introduced.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(qualifiers = "en-rUS")
+class UnitIndexTest {
+
+    private val context = ApplicationProvider.getApplicationContext<Context>()
+
+    private class FakeConverter(
+        override val dimension: Dimension,
+        private val symbols: List<String>,
+    ) : Converter {
+        override suspend fun isValidUnit(symbol: String): Boolean = symbol in symbols
+
+        override suspend fun convert(
+            context: Context,
+            fromUnit: String,
+            value: Double,
+            toUnit: String?
+        ): UnitConverter = throw UnsupportedOperationException()
+
+        override suspend fun getSupportedUnits(): List<MeasureUnit> = symbols.map {
+            object : MeasureUnit {
+                override val symbol: String = it
+                override fun formatName(context: Context, value: Double): String = it
+            }
+        }
+    }
+
+    private fun createConverters(): List<Converter> = listOf(
+        MassConverter(context),
+        LengthConverter(context),
+        DataConverter(context),
+        TimeConverter(context),
+        VelocityConverter(context),
+        AreaConverter(context),
+        TemperatureConverter(context),
+        VolumeConverter(context),
+    )
+
+    private suspend fun probe(
+        converters: List<Converter>,
+        inputUnit: String,
+        outputUnit: String?
+    ): Converter? {
+        for (converter in converters) {
+            if (!converter.isValidUnit(inputUnit)) continue
+            if (outputUnit != null && !converter.isValidUnit(outputUnit)) continue
+            return converter
+        }
+        return null
+    }
+
+    @Test
+    fun prefersFirstConverter() = runBlocking {
+        val first = FakeConverter(Dimension.Length, listOf("a", "b"))
+        val second = FakeConverter(Dimension.Mass, listOf("a", "c"))
+        val index = UnitIndex.build(LocaleList.getEmptyLocaleList(), listOf(first, second))
+
+        Assert.assertSame(first, index.find("a", null, null))
+        Assert.assertSame(first, index.find("a", "b", null))
+        Assert.assertSame(first, index.find("b", "a", null))
+        Assert.assertSame(second, index.find("c", null, null))
+    }
+
+    @Test
+    fun requiresBothUnitsInSameConverter() = runBlocking {
+        val first = FakeConverter(Dimension.Length, listOf("a", "b"))
+        val second = FakeConverter(Dimension.Mass, listOf("a", "c"))
+        val index = UnitIndex.build(LocaleList.getEmptyLocaleList(), listOf(first, second))
+
+        Assert.assertSame(second, index.find("a", "c", null))
+        Assert.assertSame(second, index.find("c", "a", null))
+        Assert.assertNull(index.find("b", "c", null))
+        Assert.assertNull(index.find("a", "x", null))
+        Assert.assertNull(index.find("x", null, null))
+        Assert.assertNull(index.find("x", "a", null))
+    }
+
+    @Test
+    fun matchesSymbolsExactly() = runBlocking {
+        val converter = FakeConverter(Dimension.Length, listOf("m", "M", "m²"))
+        val index = UnitIndex.build(LocaleList.getEmptyLocaleList(), listOf(converter))
+
+        Assert.assertSame(converter, index.find("M", "m²", null))
+        Assert.assertNull(index.find("m ", null, null))
+        Assert.assertNull(index.find("m2", null, null))
+        Assert.assertNull(index.find("", null, null))
+    }
+
+    @Test
+    fun resolvesSameConvertersAsProbing() = runBlocking {
+        val converters = createConverters()
+        val index = UnitIndex.build(context.resources.configuration.locales, converters)
+        val symbols = converters.flatMap { c -> c.getSupportedUnits().map { it.symbol } }.distinct()
+        Assert.assertTrue(symbols.isNotEmpty())
+
+        for (input in symbols + listOf("foo", "", "kmh")) {
+            Assert.assertSame(input, probe(converters, input, null), index.find(input, null, null))
+            for (output in symbols + listOf("foo")) {
+                Assert.assertSame(
+                    "$input >> $output",
+                    probe(converters, input, output),
+                    index.find(input, output, null),
+                )
+            }
+        }
+        Assert.assertEquals(Dimension.Length, index.find("km", "mi", null)?.dimension)
+        Assert.assertNull(index.find("km", "kg", null))
+    }
+}
@@ -1,13 +1,73 @@
 package de.mm20.launcher2.weather
 
+import de.mm20.launcher2.database.entities.DailyForecastEntity
+import java.util.Calendar
+
 data class DailyForecast(
+    /** Timestamp of the first forecast of this day **/
     val timestamp: Long,
+    /** Timestamp of the last forecast of this day **/
+    val endTimestamp: Long,
     val minTemp: Double,
     val maxTemp: Double,
-    val hourlyForecasts: List<Forecast>,
-    val icon: Int = getAverageIcon(hourlyForecasts)
+    val icon: Int,
 ) {
+    fun toDatabaseEntity(): DailyForecastEntity {
+        return DailyForecastEntity(
+            timestamp = timestamp,
+            endTimestamp = endTimestamp,
+            minTemp = minTemp,
+            maxTemp = maxTemp,
+            icon = icon,
+        )
+    }
+
+    constructor(entity: DailyForecastEntity) : this(
+        timestamp = entity.timestamp,
+        endTimestamp = entity.endTimestamp,
+        minTemp = entity.minTemp,
+        maxTemp = entity.maxTemp,
+        icon = entity.icon,
+    )
+
     companion object {
+        /**
+         * Groups forecasts by day and aggregates each day.
+         * @param forecasts forecasts, sorted by timestamp
+         */
+        fun fromForecasts(forecasts: List<Forecast>): List<DailyForecast> {
+            val dailyForecasts = mutableListOf<DailyForecast>()
+            val calendar = Calendar.getInstance()
+            var currentDay = -1
+            var currentDayForecasts = mutableListOf<Forecast>()
+            for (fc in forecasts) {
+                calendar.timeInMillis = fc.timestamp
+                val day = calendar.get(Calendar.DAY_OF_YEAR)
+                if (currentDay != day) {
+                    if (currentDayForecasts.isNotEmpty()) {
+                        dailyForecasts.add(aggregate(currentDayForecasts))
+                        currentDayForecasts = mutableListOf()
+                    }
+                    currentDay = day
+                }
+                currentDayForecasts.add(fc)
+            }
+            if (currentDayForecasts.isNotEmpty()) {
+                dailyForecasts.add(aggregate(currentDayForecasts))
+            }
+            return dailyForecasts
+        }
+
+        private fun aggregate(forecasts: List<Forecast>): DailyForecast {
+            return DailyForecast(
+                timestamp = forecasts.first().timestamp,
+                endTimestamp = forecasts.last().timestamp,
+                minTemp = forecasts.minOf { it.temperature },
+                maxTemp = forecasts.maxOf { it.temperature },
+                icon = getAverageIcon(forecasts),
+            )
+        }
+
         private fun getAverageIcon(forecasts: List<Forecast>): Int {
             if (forecasts.size == 1) {
                 return forecasts[0].icon
@@ -4,6 +4,7 @@ import android.content.Context
 import android.util.Log
 import androidx.work.*
 import de.mm20.launcher2.database.AppDatabase
+import de.mm20.launcher2.database.WeatherDao
 import de.mm20.launcher2.devicepose.DevicePoseProvider
 import de.mm20.launcher2.ktx.or
 import de.mm20.launcher2.permissions.PermissionGroup
@@ -32,8 +33,23 @@ interface WeatherRepository {
     fun searchLocations(query: String): Flow<List<WeatherLocation>>
 
     fun getForecasts(limit: Int? = null): Flow<List<Forecast>>
+
+    /**
+     * Get all forecasts of the given day
+     */
+    fun getForecasts(day: DailyForecast): Flow<List<Forecast>>
+
+    /**
+     * Get the daily aggregates of all forecasts. The aggregates are precomputed when forecasts are
+     * stored, so this doesn't need to load the forecasts.
+     */
     fun getDailyForecasts(): Flow<List<DailyForecast>>
 
+    /**
+     * Get the location of the stored forecasts, or null if there are no forecasts.
+     */
+    fun getForecastLocation(): Flow<String?>
+
     fun deleteForecasts()
 }
 
@@ -55,12 +71,18 @@ internal class WeatherRepositoryImpl(
             .map { it.map { Forecast(it) } }
     }
 
-    override fun getDailyForecasts(): Flow<List<DailyForecast>> {
-        return database.weatherDao().getForecasts()
+    override fun getForecasts(day: DailyForecast): Flow<List<Forecast>> {
+        return database.weatherDao().getForecasts(day.timestamp, day.endTimestamp)
             .map { it.map { Forecast(it) } }
-            .map {
-                groupForecastsPerDay(it)
-            }
+    }
+
+    override fun getDailyForecasts(): Flow<List<DailyForecast>> {
+        return database.weatherDao().getDailyForecasts()
+            .map { it.map { DailyForecast(it) } }
+    }
+
+    override fun getForecastLocation(): Flow<String?> {
+        return database.weatherDao().getLocation()
     }
 
     override fun searchLocations(query: String): Flow<List<WeatherLocation>> {
@@ -71,7 +93,14 @@ internal class WeatherRepositoryImpl(
     }
 
     init {
-
+        scope.launch(Dispatchers.IO) {
+            // Forecasts that were stored before daily aggregates were introduced
+            val dao = database.weatherDao()
+            if (dao.countDailyForecasts() == 0) {
+                val forecasts = dao.getForecasts().first().map { Forecast(it) }
+                if (forecasts.isNotEmpty()) dao.replaceAll(forecasts)
+            }
+        }
         scope.launch {
             hasLocationPermission.collectLatest {
                 if (it) requestUpdate()
@@ -92,47 +121,6 @@ internal class WeatherRepositoryImpl(
         }
     }
 
-    private fun groupForecastsPerDay(forecasts: List<Forecast>): List<DailyForecast> {
-        val dailyForecasts = mutableListOf<DailyForecast>()
-        val calendar = Calendar.getInstance()
-        var currentDay = 0
-        var currentDayForecasts: MutableList<Forecast> = mutableListOf()
-        for (fc in forecasts) {
-            calendar.timeInMillis = fc.timestamp
-            if (currentDay != calendar.get(Calendar.DAY_OF_YEAR)) {
-                if (currentDayForecasts.isNotEmpty()) {
-                    dailyForecasts.add(
-                        DailyForecast(
-                            timestamp = currentDayForecasts.first().timestamp,
-                            minTemp = currentDayForecasts.minByOrNull { it.temperature }?.temperature
-                                ?: 0.0,
-                            maxTemp = currentDayForecasts.maxByOrNull { it.temperature }?.temperature
-                                ?: 0.0,
-                            hourlyForecasts = currentDayForecasts
-                        )
-                    )
-                    currentDayForecasts = mutableListOf()
-                }
-                currentDay = calendar.get(Calendar.DAY_OF_YEAR)
-            }
-            currentDayForecasts.add(fc)
-        }
-        if (currentDayForecasts.isNotEmpty()) {
-            dailyForecasts.add(
-                DailyForecast(
-                    timestamp = currentDayForecasts.first().timestamp,
-                    minTemp = currentDayForecasts.minByOrNull { it.temperature }?.temperature
-                        ?: 0.0,
-                    maxTemp = currentDayForecasts.maxByOrNull { it.temperature }?.temperature
-                        ?: 0.0,
-                    hourlyForecasts = currentDayForecasts
-                )
-            )
-        }
-        return dailyForecasts
-    }
-
-
     private fun requestUpdate() {
         val weatherRequest = OneTimeWorkRequestBuilder<WeatherUpdateWorker>()
             .addTag("weather")
@@ -246,7 +234,7 @@ class WeatherUpdateWorker(
             Log.i("WeatherUpdateWorker", "Weather update succeeded")
             val in7Days = System.currentTimeMillis() + Duration.ofDays(7).toMillis()
             appDatabase.weatherDao()
-                .replaceAll(weatherData.takeWhile { it.timestamp < in7Days  }.map { it.toDatabaseEntity() })
+                .replaceAll(weatherData.takeWhile { it.timestamp < in7Days  })
             settings.setLastUpdate(System.currentTimeMillis())
             Result.success()
         }
@@ -258,4 +246,15 @@ class WeatherUpdateWorker(
         .firstOrNull()
         .or { locationProvider.lastCachedLocation }
         ?.let { LatLon(it.latitude, it.longitude) }
-}
\ No newline at end of file
+}
+
+/**
+ * Replaces all stored forecasts, and precomputes the daily aggregates of the new forecasts.
+ * @param forecasts forecasts, sorted by timestamp
+ */
+internal fun WeatherDao.replaceAll(forecasts: List<Forecast>) {
+    replaceAll(
+        forecasts.map { it.toDatabaseEntity() },
+        DailyForecast.fromForecasts(forecasts).map { it.toDatabaseEntity() },
+    )
+}
@@ -8,6 +8,7 @@ import de.mm20.launcher2.weather.Forecast
 import de.mm20.launcher2.weather.R
 import de.mm20.launcher2.weather.WeatherIcon
 import de.mm20.launcher2.weather.WeatherProvider
+import de.mm20.launcher2.weather.replaceAll
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import org.koin.core.component.KoinComponent
@@ -95,7 +96,7 @@ class BreezyWeatherProvider(
         withContext(Dispatchers.IO) {
             val in7Days = System.currentTimeMillis() + Duration.ofDays(7).toMillis()
             database.weatherDao()
-                .replaceAll(result.takeWhile { it.timestamp < in7Days  }.map { it.toDatabaseEntity() })
+                .replaceAll(result.takeWhile { it.timestamp < in7Days  })
         }
     }
 
@@ -100,6 +100,10 @@ export const DeveloperGuideSidebar: DefaultTheme.SidebarItem[] = [
       {
         text: 'SDK Changelogs',
         items: [
+          {
+            text: 'v2.4.0',
+            link: '/docs/developer-guide/plugins/changelogs/v2.4.0',
+          },
           {
             text: 'v2.3.0',
             link: '/docs/developer-guide/plugins/changelogs/v2.3.0',
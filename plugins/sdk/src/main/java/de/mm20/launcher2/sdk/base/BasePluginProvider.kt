@@ -5,16 +5,39 @@ import android.content.ContentProvider
 import android.content.Context
 import android.content.pm.PackageManager
 import android.os.Bundle
+import android.os.CancellationSignal
+import android.util.Log
 import de.mm20.launcher2.plugin.PluginType
 import de.mm20.launcher2.plugin.contracts.PluginContract
 import de.mm20.launcher2.sdk.PluginState
 import de.mm20.launcher2.sdk.permissions.PluginPermissionManager
-import de.mm20.launcher2.sdk.permissions.permissionsDataStore
+import de.mm20.launcher2.sdk.utils.launchWithCancellationSignal
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
+import kotlin.time.Duration.Companion.nanoseconds
 
 abstract class BasePluginProvider : ContentProvider() {
 
+    /**
+     * Scope that requests from the launcher are executed in. It lives as long as the provider.
+     * Plugins often do blocking I/O (network requests, file or database access) in their request
+     * handlers, so requests are executed on [Dispatchers.IO].
+     */
+    internal val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    /**
+     * Packages that have been granted permission to use this plugin, kept up to date with the
+     * permissions data store. Null until the first permission check.
+     */
+    @Volatile
+    private var grantedPackages: Set<String>? = null
+    private val grantedPackagesLock = Any()
+
     override fun call(method: String, arg: String?, extras: Bundle?): Bundle? {
         val context = context ?: return null
         return when (method) {
@@ -24,7 +47,7 @@ abstract class BasePluginProvider : ContentProvider() {
 
             PluginContract.Methods.GetState -> {
                 checkPermissionOrThrow(context)
-                val state = runBlocking {
+                val state = runRequest("getPluginState", null) {
                     getPluginState()
                 }
 
@@ -50,18 +73,87 @@ abstract class BasePluginProvider : ContentProvider() {
         return PluginState.Ready()
     }
 
+    /**
+     * Called after the plugin has handled a request from the launcher, for example to log or to
+     * track how long the plugin takes to respond. This is called on the thread that handled the
+     * request, so it should return quickly.
+     */
+    open fun onRequestCompleted(stats: RequestStats) {}
+
+    /**
+     * Runs [block] in the provider [scope], blocking the calling thread until it has completed,
+     * and reports the request to [onRequestCompleted].
+     */
+    internal fun <T> runRequest(
+        method: String,
+        cancellationSignal: CancellationSignal?,
+        block: suspend CoroutineScope.() -> T
+    ): T {
+        val start = System.nanoTime()
+        var cancelled = false
+        var error: Throwable? = null
+        try {
+            return scope.launchWithCancellationSignal(cancellationSignal, block)
+        } catch (e: CancellationException) {
+            cancelled = true
+            throw e
+        } catch (e: Throwable) {
+            error = e
+            throw e
+        } finally {
+            reportRequest(method, start, cancelled, error)
+        }
+    }
+
+    internal fun reportRequest(
+        method: String,
+        startNanos: Long,
+        cancelled: Boolean = false,
+        error: Throwable? = null
+    ) {
+        val stats = RequestStats(
+            method = method,
+            duration = (System.nanoTime() - startNanos).nanoseconds,
+            cancelled = cancelled,
+            error = error,
+        )
+        try {
+            onRequestCompleted(stats)
+        } catch (e: Exception) {
+            Log.e("MM20", "onRequestCompleted threw exception", e)
+        }
+    }
+
     internal fun checkPermissionOrThrow(context: Context) {
         val callingPackage = callingPackage ?: throw IllegalArgumentException("No calling package")
-        val permissionManager = PluginPermissionManager(context)
-        val hasPermission = runBlocking {
-            permissionManager.hasPermission(callingPackage).first()
+        if (callingPackage in getGrantedPackages(context)) {
+            return
         }
-        if (hasPermission) {
+        // The cached set might not contain a permission that has just been granted
+        val granted = runBlocking {
+            PluginPermissionManager(context).getGrantedPackages().first()
+        }
+        grantedPackages = granted
+        if (callingPackage in granted) {
             return
         }
         throw SecurityException("Caller does not have permission to use plugins")
     }
 
+    private fun getGrantedPackages(context: Context): Set<String> {
+        grantedPackages?.let { return it }
+        synchronized(grantedPackagesLock) {
+            grantedPackages?.let { return it }
+            val packages = PluginPermissionManager(context).getGrantedPackages()
+            val granted = runBlocking { packages.first() }
+            grantedPackages = granted
+            scope.launch {
+                packages.collect { grantedPackages = it }
+            }
+            return granted
+        }
+    }
+
     private fun PluginState.toBundle(): Bundle {
         when (this) {
             is PluginState.Ready -> {
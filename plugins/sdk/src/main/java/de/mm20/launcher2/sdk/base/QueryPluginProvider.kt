@@ -1,18 +1,37 @@
 package de.mm20.launcher2.sdk.base
 
 import android.content.ContentValues
+import android.content.Context
 import android.database.Cursor
 import android.net.Uri
 import android.os.Bundle
 import android.os.CancellationSignal
+import android.util.Log
 import de.mm20.launcher2.plugin.config.QueryPluginConfig
 import de.mm20.launcher2.plugin.contracts.SearchPluginContract
 import de.mm20.launcher2.sdk.config.toBundle
 import de.mm20.launcher2.sdk.utils.launchWithCancellationSignal
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.takeWhile
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.launch
+import java.util.concurrent.ConcurrentHashMap
 
 data class SearchParams(
     val allowNetwork: Boolean,
     val lang: String?,
+    /**
+     * The maximum number of results that the launcher is going to use, or null if there is no
+     * limit. Launchers before plugin SDK 2.4.0 don't pass a limit.
+     */
+    val limit: Int? = null,
 )
 
 data class GetParams(
@@ -39,6 +58,18 @@ abstract class QueryPluginProvider<TQuery, TResult>(
 
     abstract suspend fun search(query: TQuery, params: SearchParams): List<TResult>
 
+    /**
+     * Search for items, and emit them in pages as soon as they are available (for example, one page
+     * per remote service that is queried). Each page only contains new results.
+     * The launcher shows each page as soon as it arrives, so that a slow remote service doesn't hold
+     * back all other results. Older launchers receive all pages at once.
+     * If you override this method, [search] should still return all results.
+     * By default, this method emits the results of [search] as a single page.
+     */
+    open fun searchPages(query: TQuery, params: SearchParams): Flow<List<TResult>> = flow {
+        emit(search(query, params))
+    }
+
     /**
      * Get an item by its id.
      * This only needs to be implemented if `config.storageStrategy` is set to `StoreReference`
@@ -78,6 +109,10 @@ abstract class QueryPluginProvider<TQuery, TResult>(
             uri.pathSegments.size == 1 && uri.pathSegments.first() == SearchPluginContract.Paths.Search -> {
                 val query = getQuery(uri) ?: return null
                 val params = getSearchParams(uri)
+                val session = uri.getQueryParameter(SearchPluginContract.Params.Session)
+                if (session != null) {
+                    return getSearchPage(context, uri.authority, session, query, params, cancellationSignal)
+                }
                 val results = search(query, params, cancellationSignal)
                 return results.toCursor()
             }
@@ -111,6 +146,16 @@ abstract class QueryPluginProvider<TQuery, TResult>(
         return null
     }
 
+    override fun call(method: String, arg: String?, extras: Bundle?): Bundle? {
+        if (method == SearchPluginContract.Methods.CancelSearch) {
+            val context = context ?: return null
+            checkPermissionOrThrow(context)
+            if (arg != null) endSession(arg)?.job?.cancel()
+            return null
+        }
+        return super.call(method, arg, extras)
+    }
+
     override fun getType(uri: Uri): String? =
         throw UnsupportedOperationException("This operation is not supported")
 
@@ -132,17 +177,134 @@ abstract class QueryPluginProvider<TQuery, TResult>(
         params: SearchParams,
         cancellationSignal: CancellationSignal?
     ): List<TResult> {
-        return launchWithCancellationSignal(cancellationSignal) {
+        return runRequest("search", cancellationSignal) {
             search(query, params)
         }
     }
 
+    private class SearchState<TResult>(
+        val results: List<TResult>,
+        val done: Boolean,
+    )
+
+    private class SearchSession<TResult>(
+        val state: MutableStateFlow<SearchState<TResult>>,
+        val job: Job,
+    ) {
+        /**
+         * The time when the launcher last requested a page of this session.
+         */
+        @Volatile
+        var lastAccess: Long = System.currentTimeMillis()
+    }
+
+    private val sessions = ConcurrentHashMap<String, SearchSession<TResult>>()
+
+    /**
+     * Ids of sessions that are done, cancelled or expired, and the time when they ended.
+     * The launcher tracks how many results of a session it has already received, so a session must
+     * never be restarted under the same id.
+     */
+    private val endedSessions = ConcurrentHashMap<String, Long>()
+
+    /**
+     * Returns the results of a paged search so far, starting the search if this is the first
+     * request of the session. Blocks until the first page is available, so that searches which
+     * complete quickly only take a single round trip.
+     * Sessions that have already ended return no results.
+     */
+    private fun getSearchPage(
+        context: Context,
+        authority: String?,
+        session: String,
+        query: TQuery,
+        params: SearchParams,
+        cancellationSignal: CancellationSignal?
+    ): Cursor {
+        val now = System.currentTimeMillis()
+        endedSessions.entries.removeAll { now - it.value > EndedSessionRetention }
+        for ((id, searchSession) in sessions) {
+            if (now - searchSession.lastAccess > SessionTimeout) {
+                endSession(id)?.job?.cancel()
+            }
+        }
+        val searchSession = sessions.computeIfAbsent(session) {
+            if (endedSessions.containsKey(session)) {
+                // Checked in here, so that a session that ends concurrently isn't restarted
+                SearchSession(MutableStateFlow(SearchState(emptyList(), true)), Job().apply { complete() })
+            } else {
+                startSession(context, authority, session, query, params)
+            }
+        }
+        searchSession.lastAccess = now
+        val state = scope.launchWithCancellationSignal(cancellationSignal) {
+            searchSession.state.first { it.results.isNotEmpty() || it.done }
+        }
+        searchSession.lastAccess = System.currentTimeMillis()
+        if (state.done) endSession(session)
+        return state.results.toCursor().apply {
+            extras = Bundle().apply {
+                putBoolean(SearchPluginContract.Extras.Loading, !state.done)
+            }
+        }
+    }
+
+    private fun startSession(
+        context: Context,
+        authority: String?,
+        session: String,
+        query: TQuery,
+        params: SearchParams,
+    ): SearchSession<TResult> {
+        val sessionUri = Uri.Builder()
+            .scheme("content")
+            .authority(authority)
+            .path(SearchPluginContract.Paths.Search)
+            .appendPath(session)
+            .build()
+        val state = MutableStateFlow(SearchState<TResult>(emptyList(), false))
+        val job = scope.launch {
+            val start = System.nanoTime()
+            var error: Throwable? = null
+            var cancelled = false
+            try {
+                searchPages(query, params)
+                    .onEach { page ->
+                        if (page.isEmpty()) return@onEach
+                        state.update { SearchState(it.results + page, false) }
+                        context.contentResolver.notifyChange(sessionUri, null)
+                    }
+                    .takeWhile { params.limit == null || state.value.results.size < params.limit }
+                    .collect()
+            } catch (e: CancellationException) {
+                cancelled = true
+                throw e
+            } catch (e: Exception) {
+                error = e
+                Log.e("MM20", "Paged search threw exception", e)
+            } finally {
+                state.update { SearchState(it.results, true) }
+                context.contentResolver.notifyChange(sessionUri, null)
+                reportRequest("searchPages", start, cancelled, error)
+            }
+        }
+        return SearchSession(state, job)
+    }
+
+    /**
+     * Remove a session, and remember its id, so that it isn't started again.
+     */
+    private fun endSession(session: String): SearchSession<TResult>? {
+        endedSessions[session] = System.currentTimeMillis()
+        return sessions.remove(session)
+    }
+
     private fun refresh(
         item: TResult,
         params: RefreshParams,
         cancellationSignal: CancellationSignal?
     ): TResult? {
-        return launchWithCancellationSignal(cancellationSignal) {
+        return runRequest("refresh", cancellationSignal) {
             refresh(item, params)
         }
     }
@@ -152,7 +314,7 @@ abstract class QueryPluginProvider<TQuery, TResult>(
         params: GetParams,
         cancellationSignal: CancellationSignal?
     ): TResult? {
-        return launchWithCancellationSignal(cancellationSignal) {
+        return runRequest("get", cancellationSignal) {
             get(id, params)
         }
     }
@@ -169,9 +331,11 @@ abstract class QueryPluginProvider<TQuery, TResult>(
             uri.getQueryParameter(SearchPluginContract.Params.AllowNetwork)?.toBoolean()
                 ?: false
         val lang = uri.getQueryParameter(SearchPluginContract.Params.Lang)
+        val limit = uri.getQueryParameter(SearchPluginContract.Params.Limit)?.toIntOrNull()
         return SearchParams(
             allowNetwork = allowNetwork,
             lang = lang,
+            limit = limit,
         )
     }
 
@@ -192,4 +356,17 @@ abstract class QueryPluginProvider<TQuery, TResult>(
     final override fun getPluginConfig(): Bundle {
         return config.toBundle()
     }
+
+    companion object {
+        /**
+         * Paged searches that the launcher has abandoned, i.e. hasn't requested a page of for this
+         * time, are cancelled.
+         */
+        private const val SessionTimeout = 60_000L
+
+        /**
+         * How long the ids of ended sessions are kept.
+         */
+        private const val EndedSessionRetention = 10 * 60_000L
+    }
 }
\ No newline at end of file
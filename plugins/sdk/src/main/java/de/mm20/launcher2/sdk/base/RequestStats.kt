@@ -0,0 +1,26 @@
+package de.mm20.launcher2.sdk.base
+
+import kotlin.time.Duration
+
+/**
+ * Statistics of a request from the launcher, see [BasePluginProvider.onRequestCompleted].
+ */
+data class RequestStats(
+    /**
+     * The plugin method that handled the request, for example `search`, `get`, `refresh`,
+     * `getCalendarLists`, `getWeatherData`, `findLocations` or `getPluginState`.
+     */
+    val method: String,
+    /**
+     * The time it took the plugin to handle the request.
+     */
+    val duration: Duration,
+    /**
+     * Whether the request was cancelled by the launcher before it completed.
+     */
+    val cancelled: Boolean = false,
+    /**
+     * The exception that was thrown while handling the request, if any.
+     */
+    val error: Throwable? = null,
+)
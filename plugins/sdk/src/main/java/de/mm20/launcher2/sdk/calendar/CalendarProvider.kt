@@ -13,7 +13,6 @@ import de.mm20.launcher2.plugin.contracts.SearchPluginContract
 import de.mm20.launcher2.plugin.data.buildCursor
 import de.mm20.launcher2.plugin.data.get
 import de.mm20.launcher2.sdk.base.QueryPluginProvider
-import de.mm20.launcher2.sdk.utils.launchWithCancellationSignal
 import de.mm20.launcher2.search.calendar.CalendarQuery
 import java.time.Instant
 import java.time.ZoneId
@@ -41,7 +40,7 @@ abstract class CalendarProvider(
     }
 
     private fun getCalendarLists(cancellationSignal: CancellationSignal?): List<CalendarList> {
-        return launchWithCancellationSignal(cancellationSignal) {
+        return runRequest("getCalendarLists", cancellationSignal) {
             getCalendarLists()
         }
     }
@@ -14,6 +14,10 @@ class PluginPermissionManager(
         return dataStore.data.map { it.granted.contains(pluginPackage) }
     }
 
+    internal fun getGrantedPackages(): Flow<Set<String>> {
+        return dataStore.data.map { it.granted }
+    }
+
     fun grantPermission(pluginPackage: String) {
         runBlocking {
             dataStore.updateData {
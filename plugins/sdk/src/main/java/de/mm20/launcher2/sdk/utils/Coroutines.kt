@@ -5,15 +5,18 @@ import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.async
 import kotlinx.coroutines.runBlocking
 
-internal fun <T> launchWithCancellationSignal(
+/**
+ * Runs [block] in this scope and blocks the calling thread until it has completed.
+ */
+internal fun <T> CoroutineScope.launchWithCancellationSignal(
     cancellationSignal: CancellationSignal?,
     block: suspend CoroutineScope.() -> T
 ): T {
+    val deferred = async(block = block)
+    cancellationSignal?.setOnCancelListener {
+        deferred.cancel()
+    }
     return runBlocking {
-        val deferred = async(block = block)
-        cancellationSignal?.setOnCancelListener {
-            deferred.cancel()
-        }
         deferred.await()
     }
 }
@@ -16,7 +16,6 @@ import de.mm20.launcher2.plugin.data.buildCursor
 import de.mm20.launcher2.sdk.base.BasePluginProvider
 import de.mm20.launcher2.sdk.config.toBundle
 import de.mm20.launcher2.sdk.ktx.formatToString
-import de.mm20.launcher2.sdk.utils.launchWithCancellationSignal
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import java.io.IOException
@@ -70,7 +69,7 @@ abstract class WeatherProvider(
                 val lang = uri.getQueryParameter(WeatherPluginContract.ForecastParams.Language)
                     ?: Locale.getDefault().language
 
-                val forecasts = launchWithCancellationSignal(cancellationSignal) {
+                val forecasts = runRequest("getWeatherData", cancellationSignal) {
                     getWeatherData(lat, lon, id, name, lang)
                 } ?: return null
                 return buildCursor(ForecastColumns, forecasts) {
@@ -102,9 +101,7 @@ abstract class WeatherProvider(
                 val lang = uri.getQueryParameter(WeatherPluginContract.LocationParams.Language)
                     ?: Locale.getDefault().language
 
-                val locations = launchWithCancellationSignal(
-                    cancellationSignal
-                ) {
+                val locations = runRequest("findLocations", cancellationSignal) {
                     findLocations(query, lang)
                 }
                 return buildCursor(LocationColumns, locations) {
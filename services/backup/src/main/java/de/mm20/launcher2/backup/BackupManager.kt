@@ -4,8 +4,9 @@ import android.content.Context
 import android.net.Uri
 import android.os.Build
 import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import java.io.ByteArrayOutputStream
 import java.io.File
-import java.io.InputStream
 import java.io.OutputStream
 import java.util.zip.ZipEntry
 import java.util.zip.ZipInputStream
@@ -19,7 +20,11 @@ class BackupManager(
 
     /**
      * Create a backup
-     * @return Uri to the created backup archive
+     *
+     * Components write their entries directly to the archive. [StreamingBackupable]s are
+     * serialized in parallel and their entries are passed to a single writer through a bounded
+     * channel. Other components still write to a temporary directory first.
+     * @param uri the Uri to write the backup archive to
      */
     suspend fun backup(
         uri: Uri
@@ -35,26 +40,60 @@ class BackupManager(
         )
 
         withContext(Dispatchers.IO) {
-            val outputStream = context.contentResolver.openOutputStream(uri) ?: return@withContext null
+            val outputStream = context.contentResolver.openOutputStream(uri) ?: return@withContext
             val backupDir = File(context.cacheDir, "backup")
             if (backupDir.exists()) {
                 backupDir.deleteRecursively()
             }
-            backupDir.mkdirs()
 
-            val metaFile = File(backupDir, "meta")
-            meta.writeToFile(metaFile)
+            ZipOutputStream(outputStream.buffered()).use { zipStream ->
+                zipStream.putNextEntry(ZipEntry("meta"))
+                meta.writeTo(zipStream)
+                zipStream.closeEntry()
 
-            for (component in components) {
-                component.backup(backupDir)
+                coroutineScope {
+                    val entries = Channel<Pair<String, (OutputStream) -> Unit>>(EntryBufferSize)
+                    launch {
+                        for ((name, write) in entries) {
+                            zipStream.putNextEntry(ZipEntry(name))
+                            write(zipStream)
+                            zipStream.closeEntry()
+                        }
+                    }
+                    components.mapIndexed { i, component ->
+                        launch {
+                            if (component is StreamingBackupable) {
+                                component.backup(BackupWriter { name, write ->
+                                    val bytes = ByteArrayOutputStream().also(write).toByteArray()
+                                    entries.send(name to { out: OutputStream -> out.write(bytes) })
+                                })
+                            } else {
+                                val componentDir = File(backupDir, i.toString())
+                                componentDir.mkdirs()
+                                component.backup(componentDir)
+                                val files = componentDir.listFiles { file -> file.isFile }
+                                    ?: return@launch
+                                for (file in files) {
+                                    entries.send(file.name to { out: OutputStream ->
+                                        file.inputStream().use { it.copyTo(out) }
+                                    })
+                                }
+                            }
+                        }
+                    }.joinAll()
+                    entries.close()
+                }
             }
-
-            createArchive(backupDir, outputStream)
-            outputStream.close()
-
+            backupDir.deleteRecursively()
         }
     }
 
+    /**
+     * Restore a backup
+     *
+     * Entries of [StreamingBackupable]s are passed to their component while the archive is read.
+     * All other entries are extracted to a temporary directory and restored afterwards.
+     */
     suspend fun restore(
         uri: Uri,
     ) {
@@ -66,17 +105,47 @@ class BackupManager(
                     restoreDir.deleteRecursively()
                 }
                 restoreDir.mkdirs()
-                extractArchive(inputStream, restoreDir)
-                inputStream.close()
+
+                val streamingComponents = components.filterIsInstance<StreamingBackupable>()
+                for (component in streamingComponents) {
+                    component.beginRestore()
+                }
+
+                ZipInputStream(inputStream.buffered()).use { zipStream ->
+                    var entry = zipStream.nextEntry
+                    while (entry != null) {
+                        val name = entry.name
+                        val component = streamingComponents.find { it.isBackupEntry(name) }
+                        if (component != null) {
+                            component.restoreEntry(name, zipStream)
+                        } else if (!entry.isDirectory && isPlainFileName(name)) {
+                            File(restoreDir, name).outputStream().use {
+                                zipStream.copyTo(it)
+                            }
+                        }
+                        zipStream.closeEntry()
+
+                        entry = zipStream.nextEntry
+                    }
+                }
 
                 for (component in components) {
-                    component.restore(restoreDir)
+                    if (component !is StreamingBackupable) component.restore(restoreDir)
                 }
+                restoreDir.deleteRecursively()
             }
         }
         job.join()
     }
 
+    /**
+     * Whether [name] can be extracted to the restore directory as is, i.e. it doesn't contain any
+     * path separators and doesn't refer to the directory itself or its parent.
+     */
+    private fun isPlainFileName(name: String): Boolean {
+        return name.isNotEmpty() && name != "." && name != ".." && File(name).name == name
+    }
+
     suspend fun readBackupMeta(uri: Uri): BackupMetadata? {
         return withContext(Dispatchers.IO) {
             val inputStream = context.contentResolver.openInputStream(uri) ?: return@withContext null
@@ -97,35 +166,6 @@ class BackupManager(
         }
     }
 
-    private suspend fun createArchive(dir: File, outputStream: OutputStream) = withContext(Dispatchers.IO){
-        val zipStream = ZipOutputStream(outputStream)
-
-        val fileList = dir.listFiles()
-
-        for (file in fileList) {
-            zipStream.putNextEntry(ZipEntry(file.name))
-            file.inputStream().use {
-                it.copyTo(zipStream)
-            }
-            zipStream.closeEntry()
-        }
-        zipStream.close()
-    }
-
-    private suspend fun extractArchive(inputStream: InputStream, outDir: File) = withContext(Dispatchers.IO) {
-        val zipStream = ZipInputStream(inputStream)
-        var entry = zipStream.nextEntry
-        while(entry != null) {
-            val file = File(outDir, entry.name)
-            file.outputStream().use {
-                zipStream.copyTo(it)
-            }
-            zipStream.closeEntry()
-
-            entry = zipStream.nextEntry
-        }
-    }
-
     fun checkCompatibility(meta: BackupMetadata): BackupCompatibility {
         val format = meta.format.split(".")
         val x = format.getOrNull(0)?.toIntOrNull() ?: return BackupCompatibility.Incompatible
@@ -145,6 +185,11 @@ class BackupManager(
         private const val BackupFormatMajor = 1
         private const val BackupFormatMinor = 9
         internal const val BackupFormat = "$BackupFormatMajor.$BackupFormatMinor"
+
+        /**
+         * Maximum number of entries that have been serialized, but not yet written to the archive.
+         */
+        private const val EntryBufferSize = 16
     }
 }
 
@@ -6,8 +6,8 @@ import kotlinx.coroutines.withContext
 import org.json.JSONArray
 import org.json.JSONException
 import org.json.JSONObject
-import java.io.File
 import java.io.InputStream
+import java.io.OutputStream
 
 data class BackupMetadata(
     val deviceName: String,
@@ -19,7 +19,10 @@ data class BackupMetadata(
     val format: String,
 ) {
 
-    internal suspend fun writeToFile(file: File) {
+    /**
+     * Write the metadata to [outputStream], without closing it.
+     */
+    internal fun writeTo(outputStream: OutputStream) {
         val json = jsonObjectOf(
             "device" to deviceName,
             "timestamp" to timestamp,
@@ -27,11 +30,7 @@ data class BackupMetadata(
             "versionName" to appVersionName,
             "components" to JSONArray()
         )
-        withContext(Dispatchers.IO) {
-            file.outputStream().bufferedWriter().use {
-                it.write(json.toString())
-            }
-        }
+        outputStream.write(json.toString().toByteArray())
     }
 
     companion object {
@@ -0,0 +1,289 @@
+package de.mm20.launcher2.backup
+
+import android.content.Context
+import android.net.Uri
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert
+import org.junit.Ignore
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.InputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipInputStream
+import java.util.zip.ZipOutputStream
+
+/**
+ * Backs up and restores a mix of [StreamingBackupable] and file-based components through
+ * [BackupManager], and restores archives that were written before components could stream their
+ * entries.
+ * [benchmark] prints how long a backup of 10k favorites and 10k custom attributes takes with
+ * streaming and with file-based components. It is ignored by default, because the timings depend
+ * on the host machine.
+ */
+@RunWith(RobolectricTestRunner::class)
+class BackupManagerTest {
+
+    private val context = ApplicationProvider.getApplicationContext<Context>()
+
+    private val uri = Uri.parse("content://de.mm20.launcher2.test/backup.kvaesitso")
+
+    private class StreamingComponent(
+        private val prefix: String,
+        var entries: Map<String, String> = emptyMap(),
+    ) : StreamingBackupable {
+        var restoreBegun = false
+
+        override fun isBackupEntry(name: String): Boolean = name.startsWith("$prefix.")
+
+        override suspend fun backup(writer: BackupWriter) {
+            for ((name, content) in entries) {
+                writer.writeEntry(name) { it.write(content.toByteArray()) }
+            }
+        }
+
+        override suspend fun beginRestore() {
+            restoreBegun = true
+            entries = emptyMap()
+        }
+
+        override suspend fun restoreEntry(name: String, input: InputStream) {
+            entries = entries + (name to input.readBytes().decodeToString())
+        }
+    }
+
+    private class FileComponent(
+        private val prefix: String,
+        var entries: Map<String, String> = emptyMap(),
+    ) : Backupable {
+        var restoredFiles: List<String> = emptyList()
+
+        override suspend fun backup(toDir: File) {
+            for ((name, content) in entries) {
+                File(toDir, name).writeText(content)
+            }
+        }
+
+        override suspend fun restore(fromDir: File) {
+            restoredFiles = fromDir.list()?.sorted() ?: emptyList()
+            entries = fromDir.listFiles { _, name -> name.startsWith("$prefix.") }!!
+                .sortedBy { it.name }
+                .associate { it.name to it.readText() }
+        }
+    }
+
+    /**
+     * More entries than the channel between the components and the archive writer can hold, some
+     * of them larger than the zip stream's buffers.
+     */
+    private fun streamingEntries(prefix: String, count: Int) = (0 until count).associate {
+        "$prefix.$it" to "[" + List(it * 50) { i -> "{\"key\":\"$prefix$it-$i\"}" }.joinToString(",") + "]"
+    }
+
+    private fun fileEntries(prefix: String, count: Int) = (0 until count).associate {
+        "$prefix.$it" to "{\"value\":\"$prefix $it\"}"
+    }
+
+    private fun createComponents(): List<Backupable> = listOf(
+        StreamingComponent("favorites"),
+        FileComponent("settings"),
+        StreamingComponent("customizations"),
+        FileComponent("widgets"),
+        StreamingComponent("empty"),
+    )
+
+    private fun createFilledComponents(): List<Backupable> = listOf(
+        StreamingComponent("favorites", streamingEntries("favorites", 60)),
+        FileComponent("settings", fileEntries("settings", 3)),
+        StreamingComponent("customizations", streamingEntries("customizations", 20)),
+        FileComponent("widgets", fileEntries("widgets", 1)),
+        StreamingComponent("empty"),
+    )
+
+    private fun entriesOf(component: Backupable): Map<String, String> = when (component) {
+        is StreamingComponent -> component.entries
+        is FileComponent -> component.entries
+        else -> throw IllegalArgumentException()
+    }
+
+    private fun backup(components: List<Backupable>): ByteArray {
+        val output = ByteArrayOutputStream()
+        shadowOf(context.contentResolver).registerOutputStream(uri, output)
+        runBlocking { BackupManager(context, components).backup(uri) }
+        return output.toByteArray()
+    }
+
+    private fun restore(archive: ByteArray, components: List<Backupable>) {
+        shadowOf(context.contentResolver).registerInputStream(uri, ByteArrayInputStream(archive))
+        runBlocking { BackupManager(context, components).restore(uri) }
+    }
+
+    private fun entryNames(archive: ByteArray): List<String> {
+        val names = mutableListOf<String>()
+        ZipInputStream(ByteArrayInputStream(archive)).use { zip ->
+            var entry = zip.nextEntry
+            while (entry != null) {
+                names += entry.name
+                entry = zip.nextEntry
+            }
+        }
+        return names
+    }
+
+    private fun zip(entries: List<Pair<String, ByteArray>>): ByteArray {
+        val output = ByteArrayOutputStream()
+        ZipOutputStream(output).use { zip ->
+            for ((name, content) in entries) {
+                zip.putNextEntry(ZipEntry(name))
+                zip.write(content)
+                zip.closeEntry()
+            }
+        }
+        return output.toByteArray()
+    }
+
+    private fun meta(): ByteArray {
+        val output = ByteArrayOutputStream()
+        BackupMetadata(
+            deviceName = "Test",
+            timestamp = 0L,
+            appVersionName = "1.0",
+            format = BackupManager.BackupFormat,
+        ).writeTo(output)
+        return output.toByteArray()
+    }
+
+    @Test
+    fun restoresBackup() {
+        val original = createFilledComponents()
+        val archive = backup(original)
+
+        val names = entryNames(archive)
+        Assert.assertEquals("meta", names.first())
+        Assert.assertEquals(names.toSet().size, names.size)
+        Assert.assertEquals(
+            original.flatMap { entriesOf(it).keys }.toSet() + "meta",
+            names.toSet(),
+        )
+        // Each streaming component's entries are written in order
+        for (component in original.filterIsInstance<StreamingComponent>()) {
+            Assert.assertEquals(
+                component.entries.keys.toList(),
+                names.filter { component.isBackupEntry(it) },
+            )
+        }
+
+        val restored = createComponents()
+        restored.filterIsInstance<StreamingComponent>().forEach {
+            it.entries = mapOf("stale.0" to "[]")
+        }
+        restore(archive, restored)
+        for ((o, r) in original.zip(restored)) {
+            Assert.assertEquals(entriesOf(o), entriesOf(r))
+            Assert.assertEquals(entriesOf(o).keys.toList(), entriesOf(r).keys.toList())
+        }
+        for (component in restored.filterIsInstance<StreamingComponent>()) {
+            Assert.assertTrue(component.restoreBegun)
+        }
+        Assert.assertFalse(File(context.cacheDir, "backup").exists())
+        Assert.assertFalse(File(context.cacheDir, "restore").exists())
+    }
+
+    /**
+     * Before components could stream their entries, all components wrote files to a directory,
+     * which was then zipped as is.
+     */
+    @Test
+    fun restoresLegacyBackup() {
+        val original = createFilledComponents()
+        val dir = File(context.cacheDir, "legacy")
+        dir.mkdirs()
+        File(dir, "meta").writeBytes(meta())
+        runBlocking {
+            for (component in original) {
+                // StreamingBackupable.backup(File) writes the same files as the previous implementations
+                component.backup(dir)
+            }
+        }
+        val archive = zip(dir.listFiles()!!.map { it.name to it.readBytes() })
+        dir.deleteRecursively()
+
+        val restored = createComponents()
+        restore(archive, restored)
+        for ((o, r) in original.zip(restored)) {
+            Assert.assertEquals(entriesOf(o), entriesOf(r))
+        }
+    }
+
+    @Test
+    fun ignoresEntriesOutsideRestoreDirectory() {
+        val evilNames = listOf(
+            "../evil", "../../evil", "sub/evil", "sub/../../evil", "/evil", "./evil", "..", ".",
+            "sub/",
+        )
+        val archive = zip(
+            listOf("meta" to meta(), "settings.0" to "{}".toByteArray()) +
+                    evilNames.map { it to "evil".toByteArray() } +
+                    listOf("favorites.0" to "[]".toByteArray())
+        )
+
+        val restored = createComponents()
+        restore(archive, restored)
+
+        Assert.assertEquals(mapOf("settings.0" to "{}"), entriesOf(restored[1]))
+        Assert.assertEquals(mapOf("favorites.0" to "[]"), entriesOf(restored[0]))
+        Assert.assertEquals(listOf("meta", "settings.0"), (restored[1] as FileComponent).restoredFiles)
+        Assert.assertFalse(File(context.cacheDir, "evil").exists())
+        Assert.assertFalse(File(context.cacheDir.parentFile, "evil").exists())
+        Assert.assertFalse(File(context.cacheDir, "sub").exists())
+        Assert.assertFalse(File(context.cacheDir, "restore").exists())
+    }
+
+    /**
+     * [ItemCount] items as JSON arrays of 100 items, like the repositories write them.
+     */
+    private fun pages(prefix: String, item: (Int) -> String) = (0 until ItemCount).chunked(100)
+        .withIndex()
+        .associate { (page, items) ->
+            "$prefix.${page.toString().padStart(4, '0')}" to items.joinToString(",", "[", "]", transform = item)
+        }
+
+    @Test
+    @Ignore("Benchmark, run manually")
+    fun benchmark() {
+        val favorites = pages("favorites") {
+            """{"key":"app://com.example.app$it:com.example.app$it.MainActivity","type":"app","visibility":0,"launchCount":${it % 50},"pinPosition":${if (it % 100 == 0) it / 100 else 0},"searchable":"{\"package\":\"com.example.app$it\",\"activity\":\"com.example.app$it.MainActivity\",\"user\":0}","weight":${(it % 1000) / 1000.0}}"""
+        }
+        val customizations = pages("customizations") {
+            """{"key":"app://com.example.app$it:com.example.app$it.MainActivity","value":"Value $it","type":"${if (it % 2 == 0) "tag" else "label"}"}"""
+        }
+
+        fun measure(name: String, createComponents: () -> List<Backupable>) {
+            var sink = 0
+            repeat(WarmupRounds) { sink += backup(createComponents()).size }
+            val start = System.nanoTime()
+            repeat(Rounds) { sink += backup(createComponents()).size }
+            val elapsed = System.nanoTime() - start
+            Assert.assertTrue(sink > 0)
+            println("$name: ${elapsed / Rounds / 1_000_000} ms/backup")
+        }
+
+        measure("File-based, staged") {
+            listOf(FileComponent("favorites", favorites), FileComponent("customizations", customizations))
+        }
+        measure("Streaming") {
+            listOf(StreamingComponent("favorites", favorites), StreamingComponent("customizations", customizations))
+        }
+    }
+
+    companion object {
+        private const val ItemCount = 10_000
+        private const val WarmupRounds = 3
+        private const val Rounds = 10
+    }
+}
@@ -5,6 +5,7 @@ import de.mm20.launcher2.badges.providers.AppShortcutBadgeProvider
 import de.mm20.launcher2.badges.providers.BadgeProvider
 import de.mm20.launcher2.badges.providers.CloudBadgeProvider
 import de.mm20.launcher2.badges.providers.HiddenItemBadgeProvider
+import de.mm20.launcher2.badges.providers.KeyedBadgeProvider
 import de.mm20.launcher2.badges.providers.NotificationBadgeProvider
 import de.mm20.launcher2.badges.providers.PluginBadgeProvider
 import de.mm20.launcher2.badges.providers.SuspendedAppsBadgeProvider
@@ -14,20 +15,34 @@ import de.mm20.launcher2.search.Searchable
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.filterNotNull
 import kotlinx.coroutines.flow.flatMapLatest
 import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.onCompletion
+import kotlinx.coroutines.flow.onStart
+import kotlinx.coroutines.flow.stateIn
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
 import org.koin.core.component.KoinComponent
 
 interface BadgeService {
     fun getBadge(searchable: Searchable): Flow<Badge?>
+
+    /**
+     * Number of flows returned by [getBadge] that are currently being collected.
+     */
+    val activeSubscriptions: StateFlow<Int>
 }
 
 internal class BadgeServiceImpl(
@@ -36,7 +51,20 @@ internal class BadgeServiceImpl(
 ) : BadgeService, KoinComponent {
 
     private val scope = CoroutineScope(Job() + Dispatchers.Default)
-    private val badgeProviders = MutableStateFlow<List<BadgeProvider>>(emptyList())
+    private val badgeProviders = MutableStateFlow<ActiveProviders?>(null)
+
+    private val _activeSubscriptions = MutableStateFlow(0)
+    override val activeSubscriptions: StateFlow<Int> = _activeSubscriptions
+
+    /**
+     * @param keyedBadges the badges of all [keyed] providers, in the same order. This is shared
+     * between all items, so that there is only one upstream subscription per provider.
+     */
+    private class ActiveProviders(
+        val keyed: List<KeyedBadgeProvider<*>>,
+        val other: List<BadgeProvider>,
+        val keyedBadges: Flow<List<Map<out Any, Badge>>>,
+    )
 
     init {
         scope.launch {
@@ -59,18 +87,50 @@ internal class BadgeServiceImpl(
                 if (it.plugins) {
                     providers += PluginBadgeProvider(context)
                 }
-                badgeProviders.value = providers
+                // Cancelled when the settings change, which stops the shared keyedBadges flow
+                coroutineScope {
+                    val keyed = providers.filterIsInstance<KeyedBadgeProvider<*>>()
+                    val keyedBadges = if (keyed.isEmpty()) {
+                        flowOf(emptyList())
+                    } else {
+                        combine(keyed.map { it.badges }) { it.toList() }
+                            .stateIn(this, SharingStarted.WhileSubscribed(), null)
+                            .filterNotNull()
+                    }
+                    badgeProviders.value = ActiveProviders(
+                        keyed = keyed,
+                        other = providers.filter { it !is KeyedBadgeProvider<*> },
+                        keyedBadges = keyedBadges,
+                    )
+                    awaitCancellation()
+                }
             }
         }
     }
 
     override fun getBadge(searchable: Searchable): Flow<Badge?> {
-        return badgeProviders.flatMapLatest { providers ->
-            if (providers.isEmpty()) return@flatMapLatest flowOf(null)
-            combine(providers.map { it.getBadge(searchable) }) { it.filterNotNull() }
-                .map { it.combine() }
-                .flowOn(Dispatchers.Default)
+        return badgeProviders.filterNotNull().flatMapLatest { providers ->
+            val keys = providers.keyed.map { it.getKey(searchable) }
+            val keyedBadges = if (keys.all { it == null }) {
+                flowOf(emptyList())
+            } else {
+                providers.keyedBadges.map { badges ->
+                    keys.mapIndexedNotNull { i, key -> key?.let { badges[i][it] } }
+                }.distinctUntilChanged()
+            }
+            val otherBadges = if (providers.other.isEmpty()) {
+                flowOf(emptyList())
+            } else {
+                combine(providers.other.map { it.getBadge(searchable) }) { it.filterNotNull() }
+            }
+            combine(keyedBadges, otherBadges) { keyed, other ->
+                (keyed + other).combine()
+            }
         }
+            .distinctUntilChanged()
+            .flowOn(Dispatchers.Default)
+            .onStart { _activeSubscriptions.update { it + 1 } }
+            .onCompletion { _activeSubscriptions.update { it - 1 } }
     }
 
 }
\ No newline at end of file
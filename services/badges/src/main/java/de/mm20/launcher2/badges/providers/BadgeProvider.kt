@@ -3,6 +3,9 @@ package de.mm20.launcher2.badges.providers
 import de.mm20.launcher2.badges.Badge
 import de.mm20.launcher2.search.Searchable
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.map
 
 interface BadgeProvider {
     /**
@@ -11,4 +14,28 @@ interface BadgeProvider {
      * null must be emitted if no badge should be shown.
      */
     fun getBadge(searchable: Searchable): Flow<Badge?>
-}
\ No newline at end of file
+}
+
+/**
+ * A badge provider whose badges are all derived from the same upstream flow. Instead of
+ * subscribing to the upstream flow for every item, the [de.mm20.launcher2.badges.BadgeService]
+ * subscribes to [badges] once and looks up each item's badge by its key.
+ */
+interface KeyedBadgeProvider<K : Any> : BadgeProvider {
+    /**
+     * The key of the searchable's badge in [badges], or null if this provider never shows a
+     * badge for this searchable.
+     */
+    fun getKey(searchable: Searchable): K?
+
+    /**
+     * All current badges of this provider, by key. Keys without a badge should be omitted.
+     * This must emit a value as soon as possible.
+     */
+    val badges: Flow<Map<K, Badge>>
+
+    override fun getBadge(searchable: Searchable): Flow<Badge?> {
+        val key = getKey(searchable) ?: return flowOf(null)
+        return badges.map { it[key] }.distinctUntilChanged()
+    }
+}
@@ -1,5 +1,6 @@
 package de.mm20.launcher2.badges.providers
 
+import android.os.UserHandle
 import de.mm20.launcher2.badges.Badge
 import de.mm20.launcher2.badges.BadgeIcon
 import de.mm20.launcher2.badges.R
@@ -9,34 +10,29 @@ import de.mm20.launcher2.search.AppShortcut
 import de.mm20.launcher2.search.Application
 import de.mm20.launcher2.search.Searchable
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.emitAll
-import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.map
 import org.koin.core.component.KoinComponent
 import org.koin.core.component.inject
 
-class ProfileBadgeProvider : BadgeProvider, KoinComponent {
+class ProfileBadgeProvider : KeyedBadgeProvider<UserHandle>, KoinComponent {
     private val profileManager: ProfileManager by inject()
 
-    override fun getBadge(searchable: Searchable): Flow<Badge?> = flow {
-        val userHandle = when (searchable) {
+    override fun getKey(searchable: Searchable): UserHandle? {
+        return when (searchable) {
             is Application -> searchable.user
             is AppShortcut -> searchable.user
             else -> null
         }
-        if (userHandle != null) {
-            emitAll(
-                profileManager.getProfileByUserHandle(userHandle).map {
-                    when (it?.type) {
-                        Profile.Type.Work -> WorkProfile
-                        Profile.Type.Private -> PrivateProfile
-                        else -> null
-                    }
-                }
-            )
-        } else {
-            emit(null)
-        }
+    }
+
+    override val badges: Flow<Map<UserHandle, Badge>> = profileManager.profiles.map { profiles ->
+        profiles.mapNotNull {
+            when (it.type) {
+                Profile.Type.Work -> it.userHandle to WorkProfile
+                Profile.Type.Private -> it.userHandle to PrivateProfile
+                else -> null
+            }
+        }.toMap()
     }
 
     companion object {
@@ -48,4 +44,4 @@ class ProfileBadgeProvider : BadgeProvider, KoinComponent {
             icon = BadgeIcon(R.drawable.encrypted_20px)
         )
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,276 @@
+package de.mm20.launcher2.icons
+
+import android.content.Context
+import android.content.pm.PackageManager
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Canvas
+import android.graphics.Rect
+import android.graphics.drawable.BitmapDrawable
+import android.graphics.drawable.Drawable
+import android.util.Log
+import androidx.core.graphics.withScale
+import de.mm20.launcher2.crashreporter.CrashReporter
+import de.mm20.launcher2.data.customattrs.CustomIcon
+import de.mm20.launcher2.search.Application
+import de.mm20.launcher2.search.SavableSearchable
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Persistent cache of rasterized icons, so that icons can be drawn right after a cold start
+ * without going through icon pack lookups, drawable inflation and icon transformations.
+ *
+ * Only icons of apps are cached, and only if they are static icons whose layers can be rasterized
+ * (i.e. no clock or calendar icons). App shortcuts are not cached, because apps can change their
+ * icons at runtime without updating the package. Entries are stored per package and keyed by the
+ * searchable key, the icon configuration (see [IconService]), the custom icon, the icon size and
+ * the last update time of the package.
+ *
+ * Entries of old package versions, icon sizes and configurations are not looked up anymore; they
+ * are removed by [trim] once the cache grows beyond [MaxCacheSize].
+ */
+internal class IconDiskCache(
+    private val context: Context,
+) {
+    private val cacheDir = File(context.cacheDir, "icons-v$FormatVersion")
+
+    private val packageVersions = ConcurrentHashMap<String, Long>()
+
+    /**
+     * Number of entries written since the last [trim].
+     */
+    private val writesSinceTrim = AtomicInteger(TrimInterval)
+
+    suspend fun get(
+        configKey: String,
+        searchable: SavableSearchable,
+        customIcon: CustomIcon?,
+        size: Int,
+    ): StaticLauncherIcon? = withContext(Dispatchers.IO) {
+        val packageName = getPackageName(searchable) ?: return@withContext null
+        val key = getKey(configKey, searchable, customIcon, size, packageName)
+            ?: return@withContext null
+        val file = getFile(packageName, key)
+        if (!file.exists()) return@withContext null
+        try {
+            val icon = DataInputStream(file.inputStream().buffered()).use {
+                if (it.readInt() != FormatVersion) return@use null
+                if (it.readUTF() != key) return@use null
+                StaticLauncherIcon(
+                    foregroundLayer = readLayer(it) ?: return@use null,
+                    backgroundLayer = readLayer(it) ?: return@use null,
+                )
+            }
+            // Keep recently used entries when the cache is trimmed
+            if (icon != null) file.setLastModified(System.currentTimeMillis())
+            icon
+        } catch (e: IOException) {
+            Log.w("MM20", "Could not read cached icon for ${searchable.key}", e)
+            file.delete()
+            null
+        }
+    }
+
+    suspend fun put(
+        configKey: String,
+        searchable: SavableSearchable,
+        customIcon: CustomIcon?,
+        size: Int,
+        icon: LauncherIcon,
+    ) = withContext(Dispatchers.IO) {
+        if (icon !is StaticLauncherIcon) return@withContext
+        if (!isCacheable(icon.foregroundLayer) || !isCacheable(icon.backgroundLayer)) return@withContext
+        val packageName = getPackageName(searchable) ?: return@withContext
+        val key = getKey(configKey, searchable, customIcon, size, packageName)
+            ?: return@withContext
+        val file = getFile(packageName, key)
+        var tmpFile: File? = null
+        try {
+            file.parentFile?.mkdirs()
+            // Unique temp file, so that concurrent writes of the same entry don't interfere
+            tmpFile = File.createTempFile(file.name, ".tmp", file.parentFile)
+            DataOutputStream(tmpFile.outputStream().buffered()).use {
+                it.writeInt(FormatVersion)
+                it.writeUTF(key)
+                writeLayer(it, icon.foregroundLayer, size)
+                writeLayer(it, icon.backgroundLayer, size)
+            }
+            if (!tmpFile.renameTo(file)) tmpFile.delete()
+        } catch (e: IOException) {
+            CrashReporter.logException(e)
+            tmpFile?.delete()
+        }
+        if (writesSinceTrim.incrementAndGet() >= TrimInterval) {
+            writesSinceTrim.set(0)
+            trim()
+        }
+    }
+
+    /**
+     * Delete the least recently used entries until the cache is smaller than [MaxCacheSize].
+     */
+    private fun trim() {
+        val files = cacheDir.walkTopDown().filter { it.isFile }.toList()
+        var size = files.sumOf { it.length() }
+        if (size <= MaxCacheSize) return
+        for (file in files.sortedBy { it.lastModified() }) {
+            size -= file.length()
+            file.delete()
+            if (size <= MaxCacheSize * 3 / 4) break
+        }
+        cacheDir.listFiles()?.forEach { dir ->
+            if (dir.isDirectory && dir.list()?.isEmpty() == true) dir.delete()
+        }
+    }
+
+    /**
+     * Remove all cached icons of the given package.
+     */
+    fun invalidate(packageName: String) {
+        packageVersions.remove(packageName)
+        File(cacheDir, packageName).deleteRecursively()
+    }
+
+    fun clear() {
+        packageVersions.clear()
+        cacheDir.deleteRecursively()
+    }
+
+    private fun isCacheable(layer: LauncherIconLayer): Boolean {
+        return layer is StaticIconLayer || layer is TintedIconLayer || layer is ColorLayer || layer is TransparentLayer
+    }
+
+    private fun writeLayer(out: DataOutputStream, layer: LauncherIconLayer, size: Int) {
+        when (layer) {
+            is TransparentLayer -> out.writeByte(LayerTransparent)
+            is ColorLayer -> {
+                out.writeByte(LayerColor)
+                out.writeInt(layer.color)
+            }
+
+            is StaticIconLayer -> {
+                out.writeByte(LayerStatic)
+                writeBitmap(out, rasterize(layer.icon, layer.scale, size))
+            }
+
+            is TintedIconLayer -> {
+                out.writeByte(LayerTinted)
+                out.writeInt(layer.color)
+                writeBitmap(out, rasterize(layer.icon, layer.scale, size))
+            }
+
+            else -> throw IllegalArgumentException("Layer type can not be cached: $layer")
+        }
+    }
+
+    private fun readLayer(input: DataInputStream): LauncherIconLayer? {
+        return when (input.readByte().toInt()) {
+            LayerTransparent -> TransparentLayer
+            LayerColor -> ColorLayer(input.readInt())
+            LayerStatic -> StaticIconLayer(
+                icon = readBitmap(input) ?: return null,
+                scale = 1f,
+            )
+
+            LayerTinted -> {
+                val color = input.readInt()
+                TintedIconLayer(
+                    icon = readBitmap(input) ?: return null,
+                    scale = 1f,
+                    color = color,
+                )
+            }
+
+            else -> null
+        }
+    }
+
+    /**
+     * Draw a layer drawable to a bitmap, the same way [StaticLauncherIcon.render] does.
+     */
+    private fun rasterize(drawable: Drawable, scale: Float, size: Int): Bitmap {
+        val bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888)
+        val canvas = Canvas(bitmap)
+        canvas.withScale(scale, scale, size / 2f, size / 2f) {
+            drawable.bounds = Rect(0, 0, size, size)
+            drawable.draw(canvas)
+        }
+        return bitmap
+    }
+
+    private fun writeBitmap(out: DataOutputStream, bitmap: Bitmap) {
+        val bytes = ByteArrayOutputStream()
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, bytes)
+        out.writeInt(bytes.size())
+        bytes.writeTo(out)
+    }
+
+    private fun readBitmap(input: DataInputStream): Drawable? {
+        val bytes = ByteArray(input.readInt())
+        input.readFully(bytes)
+        val bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.size) ?: return null
+        return BitmapDrawable(context.resources, bitmap)
+    }
+
+    private fun getPackageName(searchable: SavableSearchable): String? {
+        return when (searchable) {
+            is Application -> searchable.componentName.packageName
+            else -> null
+        }
+    }
+
+    private fun getKey(
+        configKey: String,
+        searchable: SavableSearchable,
+        customIcon: CustomIcon?,
+        size: Int,
+        packageName: String,
+    ): String? {
+        var packageVersion = packageVersions[packageName]
+        if (packageVersion == null) {
+            packageVersion = try {
+                context.packageManager.getPackageInfo(packageName, 0).lastUpdateTime
+            } catch (e: PackageManager.NameNotFoundException) {
+                return null
+            }
+            packageVersions[packageName] = packageVersion
+        }
+        val customIconValue = customIcon?.toDatabaseEntity(searchable.key)?.value
+        return "${searchable.key}|$configKey|$customIconValue|$size|$packageVersion"
+    }
+
+    private fun getFile(packageName: String, key: String): File {
+        val digest = MessageDigest.getInstance("SHA-1").digest(key.toByteArray())
+        val name = digest.joinToString("") { "%02x".format(it) }
+        return File(File(cacheDir, packageName), name)
+    }
+
+    companion object {
+        /**
+         * Increment this whenever the file format or the rendering of cached icons changes.
+         */
+        private const val FormatVersion = 1
+
+        private const val MaxCacheSize = 20L * 1024 * 1024
+
+        /**
+         * Check the size of the cache every [TrimInterval] writes. The first write after startup
+         * always checks it.
+         */
+        private const val TrimInterval = 100
+
+        private const val LayerTransparent = 0
+        private const val LayerColor = 1
+        private const val LayerStatic = 2
+        private const val LayerTinted = 3
+    }
+}
@@ -23,13 +23,20 @@ import de.mm20.launcher2.icons.compat.AdaptiveIconDrawableCompat
 import de.mm20.launcher2.icons.compat.toLauncherIcon
 import de.mm20.launcher2.icons.loaders.AppFilterIconPackInstaller
 import de.mm20.launcher2.icons.loaders.GrayscaleMapIconPackInstaller
+import de.mm20.launcher2.icons.loaders.IconPackInstaller
 import de.mm20.launcher2.ktx.isAtLeastApiLevel
 import de.mm20.launcher2.ktx.randomElementOrNull
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.roundToInt
 
 
@@ -51,30 +58,75 @@ class IconPackManager(
         }
     }
 
+    /**
+     * Resources of icon pack apps, to avoid calling [PackageManager.getResourcesForApplication]
+     * for every single icon. Cleared whenever icon packs are updated.
+     */
+    private val resourcesCache = ConcurrentHashMap<String, Resources>()
+
     private var updateIconPacksMutex = Mutex()
+
+    private val installProgress = MutableStateFlow<List<IconPackInstallProgress>>(emptyList())
+
+    /**
+     * Icon packs that are currently being installed.
+     */
+    fun getInstallProgress(): Flow<List<IconPackInstallProgress>> = installProgress
+
     suspend fun updateIconPacks(forceReinstall: Boolean = false): Boolean {
-        var iconsHaveBeenUpdated = false
-        updateIconPacksMutex.lock()
-        val installers = listOf(
-            AppFilterIconPackInstaller(context, appDatabase),
-            GrayscaleMapIconPackInstaller(context, appDatabase),
-        )
-        val installedPacks = mutableListOf<IconPack>()
-        for (installer in installers) {
-            val iconPacks = installer.getInstalledIconPacks()
-            for (pack in iconPacks) {
-                if (forceReinstall || !installer.isInstalledAndUpToDate(pack)) {
-                    installer.install(pack)
-                    iconsHaveBeenUpdated = true
-                } else {
-                    Log.d("MM20", "Icon pack ${pack.packageName} is up to date")
+        updateIconPacksMutex.withLock {
+            resourcesCache.clear()
+            val installers = listOf(
+                AppFilterIconPackInstaller(context, appDatabase),
+                GrayscaleMapIconPackInstaller(context, appDatabase),
+            )
+            val installedPacks = mutableListOf<IconPack>()
+            val pendingInstalls = mutableListOf<Pair<IconPackInstaller, IconPack>>()
+            for (installer in installers) {
+                val iconPacks = installer.getInstalledIconPacks()
+                for (pack in iconPacks) {
+                    if (forceReinstall || !installer.isInstalledAndUpToDate(pack)) {
+                        pendingInstalls.add(installer to pack)
+                    } else {
+                        Log.d("MM20", "Icon pack ${pack.packageName} is up to date")
+                    }
+                }
+                installedPacks.addAll(iconPacks)
+            }
+
+            // Different packages are installed in parallel. If a package is handled by multiple
+            // installers, these installations need to run sequentially, in the order of installers.
+            coroutineScope {
+                for ((_, installs) in pendingInstalls.groupBy { it.second.packageName }) {
+                    launch {
+                        for ((installer, pack) in installs) {
+                            install(installer, pack)
+                        }
+                    }
+                }
+            }
+
+            uninstallAllIconPacksExcept(installedPacks)
+            return pendingInstalls.isNotEmpty()
+        }
+    }
+
+    private suspend fun install(installer: IconPackInstaller, pack: IconPack) {
+        installProgress.update { it + IconPackInstallProgress(pack, 0) }
+        try {
+            installer.install(pack) { count ->
+                installProgress.update { list ->
+                    list.map {
+                        if (it.iconPack.packageName == pack.packageName) it.copy(installedIcons = count)
+                        else it
+                    }
                 }
             }
-            installedPacks.addAll(iconPacks)
+        } finally {
+            installProgress.update { list ->
+                list.filter { it.iconPack.packageName != pack.packageName }
+            }
         }
-        uninstallAllIconPacksExcept(installedPacks)
-        updateIconPacksMutex.unlock()
-        return iconsHaveBeenUpdated
     }
 
     private suspend fun uninstallAllIconPacksExcept(keep: List<IconPack>) {
@@ -91,12 +143,7 @@ class IconPackManager(
         activityName: String?,
         allowThemed: Boolean = true
     ): LauncherIcon? = withContext(Dispatchers.IO) {
-        val res = try {
-            context.packageManager.getResourcesForApplication(iconPack)
-        } catch (e: PackageManager.NameNotFoundException) {
-            Log.e("MM20", "Icon pack package $iconPack not found!")
-            return@withContext null
-        }
+        val res = getResources(iconPack) ?: return@withContext null
         val activity = activityName?.let { ComponentName(packageName, it) }?.shortClassName
         val iconDao = appDatabase.iconDao()
         val icon = iconDao.getIcon(packageName, activity, iconPack)?.let { IconPackAppIcon(it) }
@@ -112,17 +159,48 @@ class IconPackManager(
         return@withContext null
     }
 
+    /**
+     * Batch version of [getIcon]. Looks up the icons for all given components with a single query.
+     * @return a map of the components to their icons. Components that don't have an icon in this
+     * icon pack are not included.
+     */
+    suspend fun getIcons(
+        iconPack: String,
+        components: List<ComponentName>,
+        allowThemed: Boolean = true
+    ): Map<ComponentName, LauncherIcon> = withContext(Dispatchers.IO) {
+        if (components.isEmpty()) return@withContext emptyMap()
+        val res = getResources(iconPack) ?: return@withContext emptyMap()
+        val iconDao = appDatabase.iconDao()
+        val entities = components.map { it.packageName }.distinct().chunked(999)
+            .flatMap { iconDao.getIcons(it, iconPack) }
+            .groupBy { it.packageName }
+
+        val icons = mutableMapOf<ComponentName, LauncherIcon>()
+        for (component in components) {
+            val activity = component.shortClassName
+            // Same precedence as iconDao.getIcon: matching activity or package-wide icon, ORDER BY type DESC
+            val entity = entities[component.packageName]
+                ?.filter { it.activityName == activity || it.activityName == null }
+                ?.maxByOrNull { it.type }
+                ?: continue
+            val icon = when (val packIcon = IconPackAppIcon(entity)) {
+                is CalendarIcon -> getIconPackCalendarIcon(packIcon, res, allowThemed)
+                is AppIcon -> getIconPackStaticIcon(packIcon, res, allowThemed)
+                is ClockIcon -> getIconPackClockIcon(packIcon, res, allowThemed)
+                else -> null
+            }
+            if (icon != null) icons[component] = icon
+        }
+        icons
+    }
+
     suspend fun getIcon(
         iconPack: String,
         icon: IconPackAppIcon,
         allowThemed: Boolean,
     ): LauncherIcon? = withContext(Dispatchers.IO) {
-        val res = try {
-            context.packageManager.getResourcesForApplication(iconPack)
-        } catch (e: PackageManager.NameNotFoundException) {
-            Log.e("MM20", "Icon pack package $iconPack not found!")
-            return@withContext null
-        }
+        val res = getResources(iconPack) ?: return@withContext null
         if (icon is CalendarIcon) {
             return@withContext getIconPackCalendarIcon(icon, res, allowThemed)
         } else if (icon is AppIcon) {
@@ -233,6 +311,18 @@ class IconPackManager(
         )
     }
 
+    private fun getResources(iconPack: String): Resources? {
+        resourcesCache[iconPack]?.let { return it }
+        val res = try {
+            context.packageManager.getResourcesForApplication(iconPack)
+        } catch (e: PackageManager.NameNotFoundException) {
+            Log.e("MM20", "Icon pack package $iconPack not found!")
+            return null
+        }
+        resourcesCache[iconPack] = res
+        return res
+    }
+
     suspend fun getAllIconPackIcons(componentName: ComponentName): List<IconPackAppIcon> {
         val iconDao = appDatabase.iconDao()
         return iconDao.getIconsFromAllPacks(componentName.packageName, componentName.shortClassName)
@@ -479,3 +569,10 @@ class IconPackManager(
 
 }
 
+data class IconPackInstallProgress(
+    val iconPack: IconPack,
+    /**
+     * Number of icons that have been written to the database so far
+     */
+    val installedIcons: Int,
+)
@@ -5,6 +5,7 @@ import android.content.Context
 import android.content.Intent
 import android.content.IntentFilter
 import android.graphics.Color
+import android.os.Build
 import android.util.Log
 import android.util.LruCache
 import de.mm20.launcher2.data.customattrs.AdaptifiedLegacyIcon
@@ -30,6 +31,7 @@ import de.mm20.launcher2.icons.providers.PlaceholderIconProvider
 import de.mm20.launcher2.icons.providers.SystemIconProvider
 import de.mm20.launcher2.icons.providers.ThemedPlaceholderIconProvider
 import de.mm20.launcher2.icons.providers.getFirstIcon
+import de.mm20.launcher2.icons.providers.getFirstIcons
 import de.mm20.launcher2.icons.transformations.ForceThemedIconTransformation
 import de.mm20.launcher2.icons.transformations.LauncherIconTransformation
 import de.mm20.launcher2.icons.transformations.LegacyToAdaptiveTransformation
@@ -46,15 +48,18 @@ import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.filterNotNull
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.flatMap
 import kotlinx.coroutines.flow.flatMapLatest
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.shareIn
 import kotlinx.coroutines.launch
 
 class IconService(
@@ -66,6 +71,9 @@ class IconService(
 
     private val appReceiver = object : BroadcastReceiver() {
         override fun onReceive(context: Context?, intent: Intent?) {
+            intent?.data?.schemeSpecificPart?.let {
+                diskCache.invalidate(it)
+            }
             requestIconPackListUpdate()
         }
     }
@@ -74,17 +82,23 @@ class IconService(
 
     private val cache = LruCache<String, LauncherIcon>(200)
 
-    private val iconProviders: MutableStateFlow<List<IconProvider>> = MutableStateFlow(listOf())
+    private val diskCache = IconDiskCache(context)
+
+    /**
+     * Current icon providers and transformations. Null until the settings and the icon pack have
+     * been loaded.
+     */
+    private val iconConfig = MutableStateFlow<IconConfig?>(null)
+
+    private val iconProviders: Flow<List<IconProvider>> = iconConfig.filterNotNull().map { it.providers }
 
     /**
      * Signal that installed icon packs have been updated. Force a reload of all icons.
      */
     private val iconPacksUpdated = MutableSharedFlow<Unit>(1)
 
-    private val transformations: MutableStateFlow<List<LauncherIconTransformation>> =
-        MutableStateFlow(
-            listOf()
-        )
+    private val transformations: Flow<List<LauncherIconTransformation>> =
+        iconConfig.filterNotNull().map { it.transformations }
 
     init {
         requestIconPackListUpdate()
@@ -109,8 +123,9 @@ class IconService(
                     }
                     val providers = mutableListOf<IconProvider>()
 
+                    var pack: IconPack? = null
                     if (!settings.iconPack.isNullOrBlank()) {
-                        val pack = iconPackManager.getIconPack(settings.iconPack!!)
+                        pack = iconPackManager.getIconPack(settings.iconPack!!)
                         if (pack != null) {
                             providers.add(
                                 IconPackIconProvider(
@@ -140,15 +155,27 @@ class IconService(
                         ForceThemedIconTransformation()
                     )
 
-                    iconProviders.value = providers
-                    this@IconService.transformations.value = transformations
+                    iconConfig.value = IconConfig(
+                        providers = providers,
+                        transformations = transformations,
+                        cacheKey = "${pack?.packageName}:${pack?.version}|${settings.themedIcons}|" +
+                                "${settings.adaptify}|${settings.forceThemed}|" +
+                                "${Build.VERSION.SDK_INT}|${context.resources.displayMetrics.densityDpi}",
+                    )
                 }
             }
         }
     }
 
+    /**
+     * All custom icons, shared between all [getIcon] subscribers, so that a grid of icons needs a
+     * single database subscription instead of one per item.
+     */
+    private val customIcons = customAttributesRepository.getAllCustomIcons()
+        .shareIn(scope, SharingStarted.WhileSubscribed(5000), 1)
+
     fun getCustomIcon(searchable: SavableSearchable) : Flow<CustomIcon?> {
-        return customAttributesRepository.getCustomIcon(searchable)
+        return customIcons.map { it[searchable.key] }.distinctUntilChanged()
     }
 
 
@@ -166,25 +193,104 @@ class IconService(
         }
     }
 
-    fun resolveCustomIcon(searchable: SavableSearchable, size: Int, customIcon: CustomIcon?): Flow<LauncherIcon?> {
-        return combine(iconProviders, transformations) { providers, transformations ->
-            var icon: LauncherIcon? = cache.get(searchable.key + customIcon.hashCode() + providers.hashCode() + transformations.hashCode())
-            if (icon != null) {
-                return@combine icon
+    /**
+     * Batch version of [getIcon], for grids and lists that display many items at once.
+     * Custom icons are loaded with a single query, and icon providers resolve all items that
+     * don't have a custom icon in one go (i.e. one query per icon pack instead of one per item).
+     * @return a map of searchable keys to icons
+     */
+    fun getIcons(searchables: List<SavableSearchable>, size: Int): Flow<Map<String, LauncherIcon?>> {
+        if (searchables.isEmpty()) return flowOf(emptyMap())
+        return combine(
+            customAttributesRepository.getCustomIcons(searchables),
+            iconConfig.filterNotNull(),
+        ) { customIcons, config ->
+            val providers = config.providers
+            val transformations = config.transformations
+            val icons = mutableMapOf<String, LauncherIcon?>()
+            val uncached = mutableListOf<SavableSearchable>()
+            for (searchable in searchables) {
+                if (searchable.key in icons) continue
+                if (searchable is Application && searchable.isPrivate) {
+                    icons[searchable.key] = searchable.getPlaceholderIcon(context).transform(transformations)
+                    continue
+                }
+                val customIcon = customIcons[searchable.key]
+                val cached = cache.get(getCacheKey(searchable, customIcon, providers, transformations))
+                if (cached != null) {
+                    icons[searchable.key] = cached
+                } else if (customIcon != null) {
+                    icons[searchable.key] = resolveIcon(searchable, size, customIcon, config)
+                } else {
+                    val diskCached = diskCache.get(config.cacheKey, searchable, null, size)
+                    if (diskCached != null) {
+                        cache.put(getCacheKey(searchable, null, providers, transformations), diskCached)
+                        icons[searchable.key] = diskCached
+                    } else {
+                        uncached.add(searchable)
+                    }
+                }
+            }
+
+            val resolved = providers.getFirstIcons(uncached, size)
+            for (searchable in uncached) {
+                val icon = resolved[searchable.key]?.transform(transformations)
+                if (icon != null) {
+                    cache.put(getCacheKey(searchable, null, providers, transformations), icon)
+                    scope.launch {
+                        diskCache.put(config.cacheKey, searchable, null, size, icon)
+                    }
+                }
+                icons[searchable.key] = icon
             }
+            icons
+        }
+    }
+
+    fun resolveCustomIcon(searchable: SavableSearchable, size: Int, customIcon: CustomIcon?): Flow<LauncherIcon?> {
+        return iconConfig.filterNotNull().map { config ->
+            cache.get(getCacheKey(searchable, customIcon, config.providers, config.transformations))
+                ?: resolveIcon(searchable, size, customIcon, config)
+        }
+    }
 
-            val provs = if (customIcon != null) getProviders(customIcon) + providers else providers
-            val transforms = getTransformations(customIcon) ?: transformations
+    private suspend fun resolveIcon(
+        searchable: SavableSearchable,
+        size: Int,
+        customIcon: CustomIcon?,
+        config: IconConfig,
+    ): LauncherIcon? {
+        val providers = config.providers
+        val transformations = config.transformations
+        val cacheKey = getCacheKey(searchable, customIcon, providers, transformations)
+
+        val diskCached = diskCache.get(config.cacheKey, searchable, customIcon, size)
+        if (diskCached != null) {
+            cache.put(cacheKey, diskCached)
+            return diskCached
+        }
 
-            icon = provs.getFirstIcon(searchable, size)
+        val provs = if (customIcon != null) getProviders(customIcon) + providers else providers
+        val transforms = getTransformations(customIcon) ?: transformations
 
-            if (icon != null) {
-                icon = icon.transform(transforms)
+        val icon = provs.getFirstIcon(searchable, size)?.transform(transforms)
 
-                cache.put(searchable.key + customIcon.hashCode() + providers.hashCode() + transformations.hashCode(), icon)
+        if (icon != null) {
+            cache.put(cacheKey, icon)
+            scope.launch {
+                diskCache.put(config.cacheKey, searchable, customIcon, size, icon)
             }
-            return@combine icon
         }
+        return icon
+    }
+
+    private fun getCacheKey(
+        searchable: SavableSearchable,
+        customIcon: CustomIcon?,
+        providers: List<IconProvider>,
+        transformations: List<LauncherIconTransformation>,
+    ): String {
+        return searchable.key + customIcon.hashCode() + providers.hashCode() + transformations.hashCode()
     }
 
     private fun getProviders(customIcon: CustomIcon?): List<IconProvider> {
@@ -218,7 +324,7 @@ class IconService(
             )
         }
         if (customIcon is DefaultPlaceholderIcon) {
-            return iconProviders.value.lastOrNull()?.let { listOf(it) } ?: emptyList()
+            return iconConfig.value?.providers?.lastOrNull()?.let { listOf(it) } ?: emptyList()
         }
         if (customIcon is CustomTextIcon) {
             return listOf(CustomTextIconProvider(customIcon))
@@ -251,7 +357,10 @@ class IconService(
     fun requestIconPackListUpdate() {
         scope.launch {
             iconPackManager.updateIconPacks().also {
-                if (it)iconPacksUpdated.tryEmit(Unit)
+                if (it) {
+                    diskCache.clear()
+                    iconPacksUpdated.tryEmit(Unit)
+                }
             }
         }
     }
@@ -259,6 +368,7 @@ class IconService(
     fun reinstallAllIconPacks() {
         scope.launch {
             iconPackManager.updateIconPacks(forceReinstall = true)
+            diskCache.clear()
             iconPacksUpdated.tryEmit(Unit)
         }
     }
@@ -267,6 +377,10 @@ class IconService(
         return iconPackManager.getInstalledIconPacks()
     }
 
+    fun getIconPackInstallProgress(): Flow<List<IconPackInstallProgress>> {
+        return iconPackManager.getInstallProgress()
+    }
+
     suspend fun getCustomIconSuggestions(
         searchable: SavableSearchable,
         size: Int
@@ -443,6 +557,16 @@ class IconService(
 
 }
 
+private data class IconConfig(
+    val providers: List<IconProvider>,
+    val transformations: List<LauncherIconTransformation>,
+    /**
+     * Stable identifier of the providers and transformations, used in [IconDiskCache] keys.
+     * In contrast to [providers]'s hashCode, this is the same across process restarts.
+     */
+    val cacheKey: String,
+)
+
 data class CustomIconWithPreview(
     val preview: LauncherIcon,
     val customIcon: CustomIcon?,
@@ -2,36 +2,87 @@ package de.mm20.launcher2.icons.loaders
 
 import androidx.room.withTransaction
 import de.mm20.launcher2.database.AppDatabase
-import de.mm20.launcher2.icons.BuildConfig
+import de.mm20.launcher2.database.entities.IconEntity
 import de.mm20.launcher2.icons.IconPack
 import de.mm20.launcher2.icons.IconPackComponent
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 abstract class IconPackInstaller(
     private val database: AppDatabase,
 ) {
-    suspend fun install(iconPack: IconPack) {
-        var pack = iconPack
+    /**
+     * Install or update the given icon pack.
+     *
+     * The icon pack is parsed on a separate coroutine, and parsed icons are streamed to the
+     * database in batches. New icons are written under a temporary icon pack name, and swapped in
+     * with a single short transaction once parsing has completed. If the installation fails or is
+     * cancelled, the previously installed version of the icon pack is left intact.
+     *
+     * @param onProgress called with the number of icons that have been written so far
+     */
+    suspend fun install(iconPack: IconPack, onProgress: (Int) -> Unit = {}) {
         val dao = database.iconDao()
-        database.withTransaction {
-            dao.deleteIconPack(iconPack.toDatabaseEntity())
-            dao.deleteIcons(iconPack.packageName)
-            val icons = mutableListOf<IconPackComponent>()
-            val installerScope = object: IconPackInstallerScope {
-                override suspend fun addIcon(icon: IconPackComponent) {
-                    icons.add(icon)
-                    if (icons.size >= 100) {
-                        dao.insertAll(icons.map { it.toDatabaseEntity() })
-                        icons.clear()
+        val stagingName = iconPack.packageName + StagingSuffix
+        var committed = false
+        try {
+            // Leftovers of an installation that has been interrupted by process death
+            dao.deleteIcons(stagingName)
+
+            var pack = iconPack
+            coroutineScope {
+                val icons = Channel<IconPackComponent>(BatchSize)
+                launch {
+                    try {
+                        val installerScope = object : IconPackInstallerScope {
+                            override suspend fun addIcon(icon: IconPackComponent) {
+                                icons.send(icon)
+                            }
+
+                            override suspend fun updatePackInfo(update: (IconPack) -> IconPack) {
+                                pack = update(pack)
+                            }
+                        }
+                        installerScope.buildIconPack(iconPack)
+                    } finally {
+                        icons.close()
+                    }
+                }
+
+                var count = 0
+                val batch = ArrayList<IconEntity>(BatchSize)
+                for (icon in icons) {
+                    batch.add(icon.toDatabaseEntity().copy(iconPack = stagingName))
+                    if (batch.size >= BatchSize) {
+                        dao.insertAll(batch)
+                        count += batch.size
+                        batch.clear()
+                        onProgress(count)
                     }
                 }
+                if (batch.isNotEmpty()) {
+                    dao.insertAll(batch)
+                    count += batch.size
+                    onProgress(count)
+                }
+            }
 
-                override suspend fun updatePackInfo(update: (IconPack) -> IconPack) {
-                    pack = update(iconPack)
+            database.withTransaction {
+                dao.deleteIconPack(iconPack.toDatabaseEntity())
+                dao.deleteIcons(iconPack.packageName)
+                dao.renameIcons(stagingName, iconPack.packageName)
+                dao.installIconPack(pack.toDatabaseEntity())
+            }
+            committed = true
+        } finally {
+            if (!committed) {
+                withContext(NonCancellable) {
+                    dao.deleteIcons(stagingName)
                 }
             }
-            installerScope.buildIconPack(iconPack)
-            if (icons.isNotEmpty()) dao.insertAll(icons.map { it.toDatabaseEntity() })
-            dao.installIconPack(pack.toDatabaseEntity())
         }
     }
 
@@ -44,9 +95,24 @@ abstract class IconPackInstaller(
         val installed = dao.getIconPack(iconPack.packageName)?.let { IconPack(it) } ?: return false
         return installed.version == iconPack.version
     }
+
+    companion object {
+        /**
+         * Number of icons that are inserted per database transaction
+         */
+        private const val BatchSize = 1000
+
+        /**
+         * Appended to the package name to get the temporary icon pack name that is used while
+         * an icon pack is being installed. Package names can't contain colons, so this can't
+         * collide with a real icon pack. Queries that span all icon packs in IconDao skip icons
+         * with this suffix.
+         */
+        private const val StagingSuffix = ":installing"
+    }
 }
 
 interface IconPackInstallerScope {
     suspend fun addIcon(icon: IconPackComponent)
     suspend fun updatePackInfo(update: (IconPack) -> IconPack)
-}
\ No newline at end of file
+}
@@ -34,4 +34,38 @@ class IconPackIconProvider(
                 size = size,
             )
     }
+
+    override suspend fun getIcons(
+        searchables: List<SavableSearchable>,
+        size: Int
+    ): Map<String, LauncherIcon> {
+        val apps = searchables.filterIsInstance<Application>()
+        val packIcons = iconPackManager.getIcons(
+            iconPack.packageName,
+            apps.map { it.componentName }.distinct(),
+            allowThemed,
+        )
+        val icons = mutableMapOf<String, LauncherIcon>()
+        for (app in apps) {
+            val packIcon = packIcons[app.componentName]
+            if (packIcon != null) {
+                icons[app.key] = packIcon
+                continue
+            }
+            val baseIcon = withContext(Dispatchers.IO) {
+                val ai = context.getSystemService<LauncherApps>()?.resolveActivity(
+                    Intent().setComponent(app.componentName),
+                    app.user
+                )
+                ai?.getIcon(context.resources.displayMetrics.densityDpi)
+            } ?: continue
+            icons[app.key] = iconPackManager.generateIcon(
+                context,
+                iconPack.packageName,
+                baseIcon = baseIcon,
+                size = size,
+            ) ?: continue
+        }
+        return icons
+    }
 }
\ No newline at end of file
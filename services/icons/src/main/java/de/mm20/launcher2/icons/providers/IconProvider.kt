@@ -5,6 +5,20 @@ import de.mm20.launcher2.search.SavableSearchable
 
 interface IconProvider {
     suspend fun getIcon(searchable: SavableSearchable, size: Int): LauncherIcon?
+
+    /**
+     * Get the icons for multiple searchables at once. Providers that can look up multiple icons
+     * more efficiently than one by one should override this.
+     * @return a map of searchable keys to icons. Searchables that this provider has no icon for
+     * are not included.
+     */
+    suspend fun getIcons(searchables: List<SavableSearchable>, size: Int): Map<String, LauncherIcon> {
+        val icons = mutableMapOf<String, LauncherIcon>()
+        for (searchable in searchables) {
+            getIcon(searchable, size)?.let { icons[searchable.key] = it }
+        }
+        return icons
+    }
 }
 
 internal suspend fun Iterable<IconProvider>.getFirstIcon(
@@ -18,4 +32,18 @@ internal suspend fun Iterable<IconProvider>.getFirstIcon(
         }
     }
     return null
+}
+
+internal suspend fun Iterable<IconProvider>.getFirstIcons(
+    searchables: List<SavableSearchable>,
+    size: Int
+): Map<String, LauncherIcon> {
+    val icons = mutableMapOf<String, LauncherIcon>()
+    var remaining = searchables
+    for (provider in this) {
+        if (remaining.isEmpty()) break
+        icons.putAll(provider.getIcons(remaining, size))
+        remaining = remaining.filter { it.key !in icons }
+    }
+    return icons
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package de.mm20.launcher2.music
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.os.Build
+import android.util.Log
+import android.util.LruCache
+import de.mm20.launcher2.crashreporter.CrashReporter
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.IOException
+
+/**
+ * Cache of album art that has already been scaled down to the size of the music widget.
+ *
+ * Album art is identified by a fingerprint of its source (see [getKey]), so that a track change
+ * can be checked against the cache before anything is decoded or resized. The most recently used
+ * images are kept in memory, and the last [MaxEntries] images are stored as WebP files, so that
+ * skipping back and forth between tracks, and cold starts, don't need to go through Coil at all.
+ */
+internal class AlbumArtCache(
+    context: Context,
+) {
+    private val cacheDir = File(context.filesDir, "album_art-v$FormatVersion")
+
+    private val memoryCache = LruCache<String, Bitmap>(MemoryEntries)
+
+    /**
+     * Fingerprint of a bitmap: its dimensions and a hash of a sparse grid of sampled pixels.
+     * This is much cheaper than hashing or comparing all pixels, and good enough to tell different
+     * album covers apart.
+     */
+    fun getKey(bitmap: Bitmap): String {
+        var hash = FnvOffset
+        hash = hash.mix(bitmap.width)
+        hash = hash.mix(bitmap.height)
+        try {
+            for (y in 0 until SampleGrid) {
+                val py = (y * 2 + 1) * bitmap.height / (SampleGrid * 2)
+                for (x in 0 until SampleGrid) {
+                    val px = (x * 2 + 1) * bitmap.width / (SampleGrid * 2)
+                    hash = hash.mix(bitmap.getPixel(px, py))
+                }
+            }
+        } catch (e: IllegalStateException) {
+            // Hardware bitmaps can't be sampled; fall back to the bitmap instance
+            hash = hash.mix(System.identityHashCode(bitmap))
+            hash = hash.mix(bitmap.generationId)
+        }
+        return "b${hash.toULong().toString(16)}"
+    }
+
+    /**
+     * Fingerprint of an image URI. Some players serve the art of the current track from a fixed
+     * URI, so the track that the art belongs to is part of the fingerprint, too.
+     */
+    fun getKey(uri: String, album: String?, artist: String?, title: String?): String {
+        var hash = FnvOffset
+        for (part in arrayOf(uri, album, artist, title)) {
+            for (c in part.orEmpty()) hash = hash.mix(c.code)
+            hash = hash.mix(0)
+        }
+        return "u${hash.toULong().toString(16)}"
+    }
+
+    suspend fun get(key: String): Bitmap? {
+        memoryCache.get(key)?.let { return it }
+        return withContext(Dispatchers.IO) {
+            val file = getFile(key)
+            if (!file.exists()) return@withContext null
+            val bitmap = BitmapFactory.decodeFile(file.absolutePath)
+            if (bitmap == null) {
+                Log.w("MM20", "Could not read cached album art $key")
+                file.delete()
+                return@withContext null
+            }
+            file.setLastModified(System.currentTimeMillis())
+            memoryCache.put(key, bitmap)
+            bitmap
+        }
+    }
+
+    suspend fun put(key: String, bitmap: Bitmap) {
+        memoryCache.put(key, bitmap)
+        withContext(Dispatchers.IO) {
+            val file = getFile(key)
+            val tmpFile = File(cacheDir, "$key.tmp")
+            try {
+                cacheDir.mkdirs()
+                tmpFile.outputStream().buffered().use {
+                    bitmap.compress(CompressFormat, Quality, it)
+                }
+                if (!tmpFile.renameTo(file)) tmpFile.delete()
+            } catch (e: IOException) {
+                CrashReporter.logException(e)
+                tmpFile.delete()
+            }
+            trim()
+        }
+    }
+
+    fun clear() {
+        memoryCache.evictAll()
+        cacheDir.deleteRecursively()
+    }
+
+    /**
+     * Removes the least recently used files if there are more than [MaxEntries].
+     */
+    private fun trim() {
+        val files = cacheDir.listFiles() ?: return
+        if (files.size <= MaxEntries) return
+        files.sortedByDescending { it.lastModified() }
+            .drop(MaxEntries)
+            .forEach { it.delete() }
+    }
+
+    private fun getFile(key: String): File {
+        return File(cacheDir, "$key.webp")
+    }
+
+    private fun Long.mix(value: Int): Long {
+        return (this xor value.toLong()) * FnvPrime
+    }
+
+    companion object {
+        /**
+         * Increment this whenever the file format or the size of cached album art changes.
+         */
+        private const val FormatVersion = 1
+
+        private const val MaxEntries = 8
+        private const val MemoryEntries = 4
+        private const val SampleGrid = 16
+        private const val Quality = 90
+
+        private const val FnvOffset = -0x340d631b7bdddcdbL
+        private const val FnvPrime = 0x100000001b3L
+
+        @Suppress("DEPRECATION")
+        private val CompressFormat = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bitmap.CompressFormat.WEBP_LOSSY
+        } else {
+            Bitmap.CompressFormat.WEBP
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package de.mm20.launcher2.music
 
 import android.app.PendingIntent
+import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
+import android.content.IntentFilter
 import android.content.SharedPreferences
 import android.content.pm.PackageManager
 import android.graphics.Bitmap
+import android.graphics.BitmapFactory
 import android.media.AudioManager
 import android.media.MediaMetadata
 import android.media.session.MediaController
@@ -28,14 +31,18 @@ import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.SharedFlow
 import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.callbackFlow
 import kotlinx.coroutines.flow.channelFlow
 import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.conflate
 import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.firstOrNull
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.shareIn
@@ -43,6 +50,7 @@ import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import org.koin.core.component.KoinComponent
+import java.io.File
 import java.io.IOException
 
 interface MusicService {
@@ -100,22 +108,54 @@ internal class MusicServiceImpl(
             field = value
         }
 
+    /**
+     * Packages of installed media players. The package manager is only queried again when a
+     * package is installed, removed, or changed.
+     */
+    private val installedPlayerPackages: SharedFlow<Set<String>> = callbackFlow {
+        val receiver = object : BroadcastReceiver() {
+            override fun onReceive(context: Context?, intent: Intent?) {
+                trySend(Unit)
+            }
+        }
+        context.registerReceiver(receiver, IntentFilter().apply {
+            addAction(Intent.ACTION_PACKAGE_REPLACED)
+            addAction(Intent.ACTION_PACKAGE_ADDED)
+            addAction(Intent.ACTION_PACKAGE_REMOVED)
+            addAction(Intent.ACTION_PACKAGE_CHANGED)
+            addDataScheme("package")
+        })
+        send(Unit)
+        awaitClose {
+            context.unregisterReceiver(receiver)
+        }
+    }
+        .conflate()
+        .map { queryInstalledPlayerPackages() }
+        .distinctUntilChanged()
+        .shareIn(scope, SharingStarted.WhileSubscribed(), 1)
+
+    /**
+     * Notifications that have a media session. Other notifications don't affect the
+     * media session selection.
+     */
+    private val mediaNotifications: Flow<List<Notification>> =
+        notificationRepository.notifications
+            .map { notifications -> notifications.filter { it.mediaSessionToken != null } }
+            .distinctUntilChanged()
+
     private val currentMediaController: SharedFlow<MediaController?> =
         combine(
-            notificationRepository.notifications,
+            mediaNotifications,
+            installedPlayerPackages,
             settings,
-        ) { notifications, settings ->
-            withContext(Dispatchers.Default) {
-                val musicApps = getEnabledPlayerPackages(
-                    settings.allowList,
-                    settings.denyList,
-                )
-                val sbn: Notification? = notifications.filter {
-                    it.mediaSessionToken != null && musicApps.contains(it.packageName)
-                }.maxByOrNull { it.postTime }
+        ) { notifications, installedPlayers, settings ->
+            val musicApps = installedPlayers.union(settings.allowList).subtract(settings.denyList)
+            val sbn: Notification? = notifications.filter {
+                musicApps.contains(it.packageName)
+            }.maxByOrNull { it.postTime }
 
-                return@withContext sbn?.mediaSessionToken
-            }
+            sbn?.mediaSessionToken
         }
             .distinctUntilChanged()
             .map { token ->
@@ -318,55 +358,70 @@ internal class MusicServiceImpl(
     }.shareIn(scope, SharingStarted.WhileSubscribed(), 1)
 
 
+    private val albumArtCache = AlbumArtCache(context)
+
     override val albumArt: Flow<Bitmap?> = channelFlow {
         val size = context.resources.getDimensionPixelSize(R.dimen.album_art_size)
-        var lastBitmap: Bitmap? = null
+        var lastKey: String? = null
+        var isFirst = true
         currentMetadata.collectLatest { metadata ->
             if (metadata == null) {
-                val isNull = preferences.getString(PREFS_KEY_ALBUM_ART, "null") == "null"
-                if (isNull) {
-                    send(null)
-                } else {
-                    val bmp: Bitmap? = withContext(Dispatchers.IO) {
-                        val file = java.io.File(context.filesDir, "album_art")
-                        val request = ImageRequest.Builder(context)
-                            .data(file)
-                            .size(size)
-                            .build()
-                        context.imageLoader.execute(request).drawable?.toBitmap()
-                    }
-                    send(bmp)
-                }
+                send(loadLastAlbumArt())
+                isFirst = true
                 return@collectLatest
             }
-            val bitmap =
-                metadata.getBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART)?.let { resize(it, size) }
-                    ?: metadata.getBitmap(MediaMetadata.METADATA_KEY_ART)?.let { resize(it, size) }
-                    ?: metadata.getString(MediaMetadata.METADATA_KEY_ALBUM_ART_URI)
-                        ?.let { loadBitmapFromUri(Uri.parse(it), size) }
-                    ?: metadata.getString(MediaMetadata.METADATA_KEY_ART_URI)
-                        ?.let { loadBitmapFromUri(Uri.parse(it), size) }
-
-            if (lastBitmap != null && lastBitmap!!.sameAs(bitmap))
-                return@collectLatest
-            withContext(Dispatchers.IO) {
-                if (bitmap == null) {
-                    preferences.edit {
-                        putString(PREFS_KEY_ALBUM_ART, "null")
-                    }
-                } else {
-                    val file = java.io.File(context.filesDir, "album_art")
-                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, file.outputStream())
-                    preferences.edit {
-                        putString(PREFS_KEY_ALBUM_ART, "notnull")
-                    }
+            val albumArt = metadata.getBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART)
+                ?: metadata.getBitmap(MediaMetadata.METADATA_KEY_ART)
+            val albumArtUri = metadata.getString(MediaMetadata.METADATA_KEY_ALBUM_ART_URI)
+                ?: metadata.getString(MediaMetadata.METADATA_KEY_ART_URI)
+            val key = when {
+                albumArt != null -> albumArtCache.getKey(albumArt)
+                albumArtUri != null -> albumArtCache.getKey(
+                    albumArtUri,
+                    album = metadata.getString(MediaMetadata.METADATA_KEY_ALBUM),
+                    artist = metadata.getString(MediaMetadata.METADATA_KEY_ARTIST),
+                    title = metadata.getString(MediaMetadata.METADATA_KEY_TITLE),
+                )
+                else -> null
+            }
+            if (!isFirst && key == lastKey) return@collectLatest
+
+            val bitmap = if (key != null) {
+                albumArtCache.get(key) ?: (
+                    albumArt?.let { resize(it, size) }
+                        ?: albumArtUri?.let { loadBitmapFromUri(Uri.parse(it), size) }
+                    )?.also { albumArtCache.put(key, it) }
+            } else null
+            val storedKey = if (bitmap == null) "null" else key
+            val previousKey = preferences.getString(PREFS_KEY_ALBUM_ART, "null")
+            if (previousKey != storedKey) {
+                if (previousKey == "notnull") {
+                    withContext(Dispatchers.IO) { File(context.filesDir, "album_art").delete() }
+                }
+                preferences.edit {
+                    putString(PREFS_KEY_ALBUM_ART, storedKey)
                 }
             }
             send(bitmap)
-            lastBitmap = bitmap
+            lastKey = key
+            isFirst = false
         }
     }.shareIn(scope, SharingStarted.WhileSubscribed(), 1)
 
+    /**
+     * Loads the album art of the last track from [albumArtCache], without going through Coil.
+     */
+    private suspend fun loadLastAlbumArt(): Bitmap? {
+        return when (val key = preferences.getString(PREFS_KEY_ALBUM_ART, "null")) {
+            "null", null -> null
+            // Album art that has been stored before the album art cache was introduced
+            "notnull" -> withContext(Dispatchers.IO) {
+                BitmapFactory.decodeFile(File(context.filesDir, "album_art").absolutePath)
+            }
+            else -> albumArtCache.get(key)
+        }
+    }
+
     private var lastDuration: Long? = null
         get() {
             if (field == null) {
@@ -571,6 +626,10 @@ internal class MusicServiceImpl(
     }
 
     override suspend fun getInstalledPlayerPackages(): Set<String> {
+        return installedPlayerPackages.first()
+    }
+
+    private suspend fun queryInstalledPlayerPackages(): Set<String> {
         val apps = mutableSetOf<String>()
         withContext(Dispatchers.IO) {
             var intent = Intent(Intent.ACTION_MAIN).apply { addCategory(Intent.CATEGORY_APP_MUSIC) }
@@ -583,19 +642,13 @@ internal class MusicServiceImpl(
         return apps
     }
 
-    private suspend fun getEnabledPlayerPackages(
-        allowList: Set<String>,
-        denyList: Set<String>
-    ): Set<String> {
-        val installed = getInstalledPlayerPackages()
-        return installed.union(allowList).subtract(denyList).toSet()
-    }
-
     override fun resetPlayer() {
         scope.launch {
             preferences.edit {
                 clear()
             }
+            albumArtCache.clear()
+            File(context.filesDir, "album_art").delete()
         }
     }
 
@@ -52,11 +52,30 @@ internal class SearchServiceImpl(
     private val profileManager: ProfileManager,
 ) : SearchService {
 
+    /**
+     * Query of the previous search, so that the repositories can refine it in the next search.
+     */
+    private class PreviousSearch(
+        val query: String,
+        val allowNetwork: Boolean,
+    )
+
+    @Volatile
+    private var previousSearch: PreviousSearch? = null
+
     override fun search(
         query: String,
         filters: SearchFilters,
         initialResults: SearchResults?,
     ): Flow<SearchResults> = flow {
+        // If the query extends the previous query, the repositories can refine the previous
+        // search instead of searching from scratch.
+        val previous = previousSearch?.takeIf {
+            it.allowNetwork == filters.allowNetwork && it.query.isNotEmpty() &&
+                    query.length > it.query.length && query.startsWith(it.query)
+        }
+        previousSearch = PreviousSearch(query, filters.allowNetwork)
+
         supervisorScope {
             val results = MutableStateFlow(
                 initialResults?.let {
@@ -125,7 +144,7 @@ internal class SearchServiceImpl(
             }
             if (filters.apps) {
                 launch {
-                    appRepository.search(query, filters.allowNetwork)
+                    appRepository.searchOrRefine(query, previous?.query, filters.allowNetwork)
                         .combine(customAttrResults) { apps, customAttrs ->
                             if (customAttrs.apps != null) apps + customAttrs.apps
                             else apps
@@ -155,7 +174,7 @@ internal class SearchServiceImpl(
             }
             if (filters.contacts) {
                 launch {
-                    contactRepository.search(query, filters.allowNetwork)
+                    contactRepository.searchOrRefine(query, previous?.query, filters.allowNetwork)
                         .combine(customAttrResults) { contacts, customAttrs ->
                             if (customAttrs.contacts != null) contacts + customAttrs.contacts
                             else contacts
@@ -271,6 +290,17 @@ internal class SearchServiceImpl(
         }
     }
 
+    private fun <T : Searchable> SearchableRepository<T>.searchOrRefine(
+        query: String,
+        previousQuery: String?,
+        allowNetwork: Boolean,
+    ): Flow<List<T>> {
+        if (previousQuery != null) {
+            refine(query, previousQuery, allowNetwork)?.let { return it }
+        }
+        return search(query, allowNetwork)
+    }
+
     override fun getAllApps(): Flow<AllAppsResults> {
         return profileManager.profiles.flatMapLatest { profiles ->
             val standardProfile = profiles.find { it.type == Profile.Type.Personal }